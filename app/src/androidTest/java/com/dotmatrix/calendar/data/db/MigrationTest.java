@@ -0,0 +1,228 @@
+package com.dotmatrix.calendar.data.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.Room;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.model.RuleType;
+import com.dotmatrix.calendar.data.model.WidgetType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String TEST_DB = "migration-test";
+    private static final int WIDGET_ID = 3201;
+    private static final long DAY_MS = 86_400_000L;
+    // 2024-03-10
+    private static final long EPOCH_DAY = 19_792L;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    private Context context;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+
+        // v2 as Room created it, from the checked-in schema
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 2)) {
+            db.insert("widget_configs", SQLiteDatabase.CONFLICT_ABORT, v2Config());
+
+            insertV2(db, 1, RuleType.SPECIFIC_DATE, EPOCH_DAY * DAY_MS, null, null);
+            // Picked in a zone ahead of UTC: not on midnight
+            insertV2(db, 2, RuleType.SPECIFIC_DATE, EPOCH_DAY * DAY_MS + 5 * 3_600_000L, null, null);
+            insertV2(db, 3, RuleType.DATE_RANGE, -DAY_MS, DAY_MS, null);
+            // Before 1970 truncation would round towards the epoch
+            insertV2(db, 4, RuleType.DATE_RANGE, -DAY_MS - 1, -1L, null);
+            insertV2(db, 5, RuleType.RECURRING_DAY, null, null, "1,3,5");
+            insertV2(db, 6, RuleType.RECURRING_DAY, null, null, "0, 6");
+            insertV2(db, 7, RuleType.RECURRING_DAY, null, null, "9,x");
+            insertV2(db, 8, RuleType.RECURRING_DAY, null, null, null);
+
+            ContentValues recurringDate = v2Row(9, RuleType.RECURRING_DATE, null, null, null);
+            recurringDate.put("dayOfMonth", 15);
+            recurringDate.put("monthOfYear", 12);
+            recurringDate.put("priority", 4);
+            recurringDate.put("enabled", 0);
+            recurringDate.put("label", "Payday");
+            db.insert("emoji_rules", SQLiteDatabase.CONFLICT_ABORT, recurringDate);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void backfillsEpochDaysWithFloorDivision() {
+        SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, 3, true, AppDatabase.MIGRATION_2_3);
+
+        Map<Long, Long[]> days = new HashMap<>();
+        try (Cursor cursor = db.query("SELECT `id`, `startDay`, `endDay` FROM `emoji_rules`")) {
+            while (cursor.moveToNext()) {
+                days.put(cursor.getLong(0), new Long[] {
+                        cursor.isNull(1) ? null : cursor.getLong(1),
+                        cursor.isNull(2) ? null : cursor.getLong(2)
+                });
+            }
+        }
+
+        assertEquals(9, days.size());
+        assertEquals(Long.valueOf(EPOCH_DAY), days.get(1L)[0]);
+        assertNull(days.get(1L)[1]);
+        assertEquals(Long.valueOf(EPOCH_DAY), days.get(2L)[0]);
+        assertEquals(Long.valueOf(-1), days.get(3L)[0]);
+        assertEquals(Long.valueOf(1), days.get(3L)[1]);
+        assertEquals(Long.valueOf(-2), days.get(4L)[0]);
+        assertEquals(Long.valueOf(-1), days.get(4L)[1]);
+        assertNull(days.get(5L)[0]);
+    }
+
+    @Test
+    public void parsesDayListsIntoMasks() {
+        SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, 3, true, AppDatabase.MIGRATION_2_3);
+
+        Map<Long, Integer> masks = new HashMap<>();
+        try (Cursor cursor = db.query("SELECT `id`, `daysOfWeek` FROM `emoji_rules`")) {
+            while (cursor.moveToNext()) {
+                masks.put(cursor.getLong(0), cursor.getInt(1));
+            }
+        }
+
+        assertEquals(Integer.valueOf(1 << 1 | 1 << 3 | 1 << 5), masks.get(5L));
+        assertEquals(Integer.valueOf(1 | 1 << 6), masks.get(6L));
+        assertEquals(Integer.valueOf(0), masks.get(7L));
+        assertEquals(Integer.valueOf(0), masks.get(8L));
+        assertEquals(Integer.valueOf(0), masks.get(1L));
+    }
+
+    @Test
+    public void roomOpensMigratedDatabase() {
+        AppDatabase database = Room.databaseBuilder(context, AppDatabase.class, TEST_DB)
+                .addMigrations(AppDatabase.MIGRATION_2_3, AppDatabase.MIGRATION_3_4)
+                .build();
+        try {
+            List<EmojiRule> rules = database.emojiRuleDao().getAllRulesForWidget(WIDGET_ID);
+            assertEquals(9, rules.size());
+
+            // Highest priority first
+            EmojiRule recurringDate = rules.get(0);
+            assertEquals(9, recurringDate.getId());
+            assertEquals(RuleType.RECURRING_DATE, recurringDate.getRuleType());
+            assertEquals(Integer.valueOf(15), recurringDate.getDayOfMonth());
+            assertEquals(Integer.valueOf(12), recurringDate.getMonthOfYear());
+            assertEquals("Payday", recurringDate.getLabel());
+            assertFalse(recurringDate.isEnabled());
+
+            for (EmojiRule rule : rules) {
+                if (rule.getId() == 4) {
+                    assertEquals(Integer.valueOf(-2), rule.getStartDay());
+                    assertEquals(Integer.valueOf(-1), rule.getEndDay());
+                }
+            }
+
+            // Cascade survives the rebuilt table
+            database.widgetConfigDao().deleteById(WIDGET_ID);
+            assertTrue(database.emojiRuleDao().getAllRulesForWidget(WIDGET_ID).isEmpty());
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void rulePagesReadInIndexOrder() {
+        SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, 4, true,
+                AppDatabase.MIGRATION_2_3, AppDatabase.MIGRATION_3_4);
+
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.query("EXPLAIN QUERY PLAN SELECT * FROM emoji_rules WHERE widgetId = ? "
+                + "AND (priority < ? OR (priority = ? AND id > ?)) "
+                + "ORDER BY priority DESC, id ASC LIMIT 50", new Object[] { WIDGET_ID, 4, 4, 9 })) {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append('\n');
+            }
+        }
+
+        assertTrue(plan.toString(), plan.indexOf("index_emoji_rules_widgetId_priority_id") >= 0);
+        // No sort of the widget's rules
+        assertFalse(plan.toString(), plan.indexOf("TEMP B-TREE") >= 0);
+    }
+
+    // ==================== Helpers ====================
+
+    private static void insertV2(SupportSQLiteDatabase db, long id, RuleType type, Long startDate, Long endDate,
+                                 String daysOfWeek) {
+        db.insert("emoji_rules", SQLiteDatabase.CONFLICT_ABORT, v2Row(id, type, startDate, endDate, daysOfWeek));
+    }
+
+    /**
+     * The widget the rules belong to, with every NOT NULL column of the v2 table set.
+     */
+    private static ContentValues v2Config() {
+        ContentValues values = new ContentValues();
+        values.put("widgetId", WIDGET_ID);
+        values.put("widgetType", WidgetType.YEAR.name());
+        values.put("dotSize", 5f);
+        values.put("dotSpacing", 3f);
+        values.put("dotOpacity", 1f);
+        values.put("dotColor", 0xFFFFFFFF);
+        values.put("backgroundColor", 0xFF000000);
+        values.put("accentColor", 0xFFFF5722);
+        values.put("backgroundOpacity", 1f);
+        values.put("hasBlur", 0);
+        values.put("blurRadius", 0f);
+        values.put("showMonthLabel", 1);
+        values.put("showWeekHeaders", 1);
+        values.put("weekStartDay", 1);
+        values.put("chameleonModeEnabled", 0);
+        values.put("chameleonIntensity", 0.5f);
+        values.put("chameleonAnimationEnabled", 0);
+        values.put("isChameleonGenerated", 0);
+        values.put("createdAt", 1_700_000_000_000L);
+        values.put("lastUpdated", 1_700_000_000_000L);
+        return values;
+    }
+
+    private static ContentValues v2Row(long id, RuleType type, Long startDate, Long endDate, String daysOfWeek) {
+        ContentValues values = new ContentValues();
+        values.put("id", id);
+        values.put("widgetId", WIDGET_ID);
+        values.put("emoji", "🎉");
+        values.put("ruleType", type.name());
+        values.put("startDate", startDate);
+        values.put("endDate", endDate);
+        values.put("daysOfWeek", daysOfWeek);
+        values.put("priority", 0);
+        values.put("enabled", 1);
+        values.put("createdAt", 1_700_000_000_000L);
+        return values;
+    }
+}
@@ -0,0 +1,208 @@
+package com.dotmatrix.calendar.data.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.dotmatrix.calendar.data.db.AppDatabase;
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.model.WidgetConfig;
+import com.dotmatrix.calendar.data.model.WidgetType;
+import com.dotmatrix.calendar.data.preferences.AppPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+public class WidgetRepositoryTest {
+
+    private static final int FIRST_WIDGET_ID = 3801;
+    // A Pro user's home screens
+    private static final int WIDGET_COUNT = 15;
+    // Longer than the write-behind debounce
+    private static final long IDLE_MS = 1_000;
+
+    private AppDatabase db;
+    private WidgetRepository repository;
+    // Every statement Room runs, in order
+    private final List<String> statements = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .setQueryCallback((sql, args) -> statements.add(sql), Runnable::run)
+                .build();
+        repository = new WidgetRepository(db, AppPreferences.getInstance(context));
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void renderBatchTakesOneQueryPerTable() {
+        int[] widgetIds = storeWidgets(WIDGET_COUNT);
+        statements.clear();
+
+        RenderBatch batch = repository.loadRenderBatch(widgetIds, WidgetType.YEAR);
+
+        assertEquals(1, selectsFrom("widget_configs"));
+        assertEquals(1, selectsFrom("emoji_rules"));
+        for (int widgetId : widgetIds) {
+            assertNotNull(batch.getSnapshot(widgetId));
+            // The disabled rule is left out
+            assertEquals(2, batch.getRules(widgetId).size());
+            assertEquals(widgetId, batch.getRules(widgetId).get(0).getWidgetId());
+        }
+    }
+
+    @Test
+    public void publishedConfigsAreNotQueriedAgain() {
+        int[] widgetIds = storeWidgets(WIDGET_COUNT);
+        repository.loadRenderBatch(widgetIds, WidgetType.YEAR);
+        statements.clear();
+
+        RenderBatch batch = repository.loadRenderBatch(widgetIds, WidgetType.YEAR);
+
+        assertEquals(0, selectsFrom("widget_configs"));
+        assertEquals(1, selectsFrom("emoji_rules"));
+        assertNotNull(batch.getSnapshot(widgetIds[WIDGET_COUNT - 1]));
+    }
+
+    @Test
+    public void missingConfigsAreCreatedInOneBatch() {
+        int[] stored = storeWidgets(WIDGET_COUNT);
+        int[] widgetIds = new int[WIDGET_COUNT + 3];
+        System.arraycopy(stored, 0, widgetIds, 0, WIDGET_COUNT);
+        for (int i = 0; i < 3; i++) {
+            widgetIds[WIDGET_COUNT + i] = FIRST_WIDGET_ID + WIDGET_COUNT + i;
+        }
+        statements.clear();
+
+        RenderBatch batch = repository.loadRenderBatch(widgetIds, WidgetType.MONTH);
+
+        assertEquals(1, selectsFrom("widget_configs"));
+        assertEquals(1, selectsFrom("emoji_rules"));
+        for (int i = WIDGET_COUNT; i < widgetIds.length; i++) {
+            assertEquals(WidgetType.MONTH, batch.getSnapshot(widgetIds[i]).getWidgetType());
+            assertTrue(batch.getRules(widgetIds[i]).isEmpty());
+            assertNotNull(db.widgetConfigDao().getConfig(widgetIds[i]));
+        }
+    }
+
+    @Test
+    public void sliderDragIsWrittenOnce() throws Exception {
+        WidgetConfig config = repository.getOrCreateConfig(FIRST_WIDGET_ID, WidgetType.YEAR);
+        statements.clear();
+
+        // Two seconds of drag events, 50 ms apart
+        for (int i = 1; i <= 40; i++) {
+            config.setDotSize(i / 40f);
+            repository.saveWidgetConfig(config);
+            Thread.sleep(50);
+        }
+        Thread.sleep(IDLE_MS);
+        repository.flushPendingWrites().get(1, TimeUnit.SECONDS);
+
+        assertEquals(1, writesTo("widget_configs"));
+        assertEquals(1f, db.widgetConfigDao().getConfig(FIRST_WIDGET_ID).getDotSize(), 0f);
+    }
+
+    @Test
+    public void pendingWritesAreBatched() throws Exception {
+        int[] widgetIds = storeWidgets(3);
+        statements.clear();
+
+        for (int widgetId : widgetIds) {
+            WidgetConfig config = repository.getWidgetConfig(widgetId);
+            config.setDotOpacity(0.5f);
+            repository.saveWidgetConfig(config);
+        }
+        Thread.sleep(IDLE_MS);
+        repository.flushPendingWrites().get(1, TimeUnit.SECONDS);
+
+        // One row each, from one flush
+        assertEquals(widgetIds.length, writesTo("widget_configs"));
+        for (int widgetId : widgetIds) {
+            assertEquals(0.5f, db.widgetConfigDao().getConfig(widgetId).getDotOpacity(), 0f);
+        }
+    }
+
+    @Test
+    public void flushPersistsBeforeTheDebounce() throws Exception {
+        WidgetConfig config = repository.getOrCreateConfig(FIRST_WIDGET_ID, WidgetType.YEAR);
+        config.setDotSpacing(0.25f);
+        repository.saveWidgetConfig(config);
+        statements.clear();
+
+        // What the editor does in onStop
+        repository.flushPendingWrites().get(1, TimeUnit.SECONDS);
+
+        assertEquals(1, writesTo("widget_configs"));
+        assertEquals(0.25f, db.widgetConfigDao().getConfig(FIRST_WIDGET_ID).getDotSpacing(), 0f);
+
+        // The debounced flush finds nothing left to write
+        Thread.sleep(IDLE_MS);
+        repository.flushPendingWrites().get(1, TimeUnit.SECONDS);
+        assertEquals(1, writesTo("widget_configs"));
+    }
+
+    // ==================== Helpers ====================
+
+    /**
+     * Store widgets with two enabled rules and one disabled rule each.
+     */
+    private int[] storeWidgets(int count) {
+        int[] widgetIds = new int[count];
+        List<WidgetConfig> configs = new ArrayList<>(count);
+        List<EmojiRule> rules = new ArrayList<>(count * 3);
+        for (int i = 0; i < count; i++) {
+            int widgetId = FIRST_WIDGET_ID + i;
+            widgetIds[i] = widgetId;
+            configs.add(WidgetConfig.createDefault(widgetId, WidgetType.YEAR));
+            rules.add(EmojiRule.createSpecificDate(widgetId, "🎂", 20_000 + i, "Birthday"));
+            rules.add(EmojiRule.createRecurringDay(widgetId, "🏋", 1 << 1 | 1 << 3, "Gym"));
+            EmojiRule disabled = EmojiRule.createRecurringDate(widgetId, "💸", 15, null, "Payday");
+            disabled.setEnabled(false);
+            rules.add(disabled);
+        }
+        db.widgetConfigDao().saveConfigs(configs);
+        db.emojiRuleDao().insertRules(rules);
+        return widgetIds;
+    }
+
+    private int selectsFrom(String table) {
+        return count("select", "from " + table);
+    }
+
+    private int writesTo(String table) {
+        return count("insert", "into `" + table + "`");
+    }
+
+    private int count(String verb, String fragment) {
+        int count = 0;
+        for (String sql : statements) {
+            String normalized = sql.trim().toLowerCase(Locale.ROOT);
+            if (normalized.startsWith(verb) && normalized.contains(fragment)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
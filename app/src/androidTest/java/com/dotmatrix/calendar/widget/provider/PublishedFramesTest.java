@@ -0,0 +1,173 @@
+package com.dotmatrix.calendar.widget.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.os.Bundle;
+import android.widget.RemoteViews;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.dotmatrix.calendar.R;
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.model.WidgetConfig;
+import com.dotmatrix.calendar.data.model.WidgetSnapshot;
+import com.dotmatrix.calendar.data.model.WidgetType;
+import com.dotmatrix.calendar.widget.cache.PublishedFrames;
+import com.dotmatrix.calendar.widget.cache.WidgetFrameStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+public class PublishedFramesTest {
+
+    // Not bound to a host, so the pushes go nowhere
+    private static final int WIDGET_ID = 4501;
+    private static final int LAYOUT = R.layout.widget_year;
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 14);
+
+    private Context context;
+    private AppWidgetManager appWidgetManager;
+    private PublishedFrames publishedFrames;
+    private Bundle options;
+    private WidgetSnapshot snapshot;
+    private final List<EmojiRule> rules = Collections.emptyList();
+
+    @Before
+    public void setUp() throws InterruptedException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        appWidgetManager = AppWidgetManager.getInstance(context);
+        publishedFrames = PublishedFrames.getInstance(context);
+        // After pushes left queued by an earlier test
+        awaitPushes();
+        publishedFrames.forget(WIDGET_ID);
+
+        options = new Bundle();
+        options.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, 250);
+        options.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT, 110);
+        options.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_WIDTH, 320);
+        options.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT, 160);
+
+        WidgetConfig config = WidgetConfig.createDefault(WIDGET_ID, WidgetType.YEAR);
+        config.setThemeId("glass_dark");
+        snapshot = WidgetSnapshot.of(config, 1);
+    }
+
+    @Test
+    public void repeatedUpdatesAreSkipped() throws InterruptedException {
+        long pushes = publishedFrames.getPushCount();
+        long skipped = publishedFrames.getSkippedCount();
+
+        // onUpdate after boot, then repeated DATE_CHANGED and launcher updates on one day
+        for (int i = 0; i < 5; i++) {
+            update(TODAY, 7);
+        }
+
+        assertEquals(1, publishedFrames.getPushCount() - pushes);
+        assertEquals(4, publishedFrames.getSkippedCount() - skipped);
+    }
+
+    @Test
+    public void wallpaperChangeRepublishesGlassWidget() throws InterruptedException {
+        long pushes = publishedFrames.getPushCount();
+        long skipped = publishedFrames.getSkippedCount();
+
+        update(TODAY, 7);
+        update(TODAY, 7);
+        // The blurred background shows the new wallpaper
+        update(TODAY, 8);
+        update(TODAY, 8);
+
+        assertEquals(2, publishedFrames.getPushCount() - pushes);
+        assertEquals(2, publishedFrames.getSkippedCount() - skipped);
+    }
+
+    @Test
+    public void dateChangeAndHostRestartRepublish() throws InterruptedException {
+        long pushes = publishedFrames.getPushCount();
+        long skipped = publishedFrames.getSkippedCount();
+
+        update(TODAY, 0);
+        update(TODAY.plusDays(1), 0);
+        update(TODAY.plusDays(1), 0);
+        // The host lost its views
+        publishedFrames.forgetAll();
+        update(TODAY.plusDays(1), 0);
+
+        assertEquals(3, publishedFrames.getPushCount() - pushes);
+        assertEquals(1, publishedFrames.getSkippedCount() - skipped);
+    }
+
+    @Test
+    public void identityIsRecordedOnceThePushIsOut() throws InterruptedException {
+        long identity = PublishedFrames.identity(LAYOUT, options, TODAY, snapshot, rules, 0);
+        CountDownLatch encoding = new CountDownLatch(1);
+        WidgetFrameStore.whenStored(() -> {
+            try {
+                encoding.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        push(identity);
+        // Still queued behind the encoder, so the next update must not be skipped
+        assertFalse(BaseWidgetProvider.isShown(context, WIDGET_ID, identity, true));
+
+        encoding.countDown();
+        awaitPushes();
+        assertTrue(BaseWidgetProvider.isShown(context, WIDGET_ID, identity, true));
+    }
+
+    @Test
+    public void identityCoversWallpaperAndSize() {
+        long identity = PublishedFrames.identity(LAYOUT, options, TODAY, snapshot, rules, 7);
+
+        assertEquals(identity, PublishedFrames.identity(LAYOUT, options, TODAY, snapshot, rules, 7));
+        assertNotEquals(identity, PublishedFrames.identity(LAYOUT, options, TODAY, snapshot, rules, 8));
+
+        Bundle resized = new Bundle(options);
+        resized.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT, 180);
+        assertNotEquals(identity, PublishedFrames.identity(LAYOUT, resized, TODAY, snapshot, rules, 7));
+    }
+
+    // ==================== Helpers ====================
+
+    /**
+     * One update through the provider's skip check and publish, as a native grid so no
+     * frames have to be stored.
+     */
+    private void update(LocalDate date, int wallpaperId) throws InterruptedException {
+        long identity = PublishedFrames.identity(LAYOUT, options, date, snapshot, rules, wallpaperId);
+        if (!BaseWidgetProvider.isShown(context, WIDGET_ID, identity, true)) {
+            push(identity);
+        }
+        awaitPushes();
+    }
+
+    private void push(long identity) {
+        BaseWidgetProvider.Publication publication = new BaseWidgetProvider.Publication();
+        publication.track(identity);
+        RemoteViews views = new RemoteViews(context.getPackageName(), LAYOUT);
+        BaseWidgetProvider.publish(context, appWidgetManager, WIDGET_ID, views, publication, false);
+    }
+
+    private static void awaitPushes() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        WidgetFrameStore.whenStored(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
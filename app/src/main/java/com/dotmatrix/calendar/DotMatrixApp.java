@@ -1,7 +1,12 @@
 package com.dotmatrix.calendar;
 
 import android.app.Application;
+import android.content.res.Configuration;
 
+import androidx.annotation.NonNull;
+
+import com.dotmatrix.calendar.data.repository.WidgetRepository;
+import com.dotmatrix.calendar.util.ColorExtractionCache;
 import com.dotmatrix.calendar.widget.cache.WidgetBitmapCache;
 
 /**
@@ -17,5 +22,24 @@ public class DotMatrixApp extends Application {
         // Initialize bitmap cache with context early
         // This allows proper adaptive sizing based on device RAM
         WidgetBitmapCache.getInstance(this);
+
+        // Load all widget configs in the background so renders read from memory
+        WidgetRepository.getInstance(this).warmUp();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // Backgrounded or about to be reclaimed: persist write-behind config saves
+        WidgetRepository.getInstance(this).flushPendingWrites();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+
+        // Material You palette changes arrive as a configuration change
+        ColorExtractionCache.getInstance(this).refreshSourceAsync();
     }
 }
@@ -1,22 +1,28 @@
 package com.dotmatrix.calendar.chameleon
 
-import android.appwidget.AppWidgetManager
 import android.content.BroadcastReceiver
-import android.content.ComponentName
 import android.content.Context
 import android.content.Intent
+import com.dotmatrix.calendar.data.model.WidgetConfig
+import com.dotmatrix.calendar.data.model.WidgetSnapshot
+import com.dotmatrix.calendar.data.model.WidgetType
 import com.dotmatrix.calendar.data.repository.WidgetRepository
+import com.dotmatrix.calendar.util.ColorExtractionCache
+import com.dotmatrix.calendar.widget.provider.BaseWidgetProvider
 import com.dotmatrix.calendar.widget.provider.YearViewWidgetProvider
 import com.dotmatrix.calendar.widget.provider.MonthViewWidgetProvider
 import com.dotmatrix.calendar.widget.provider.WeekViewWidgetProvider
+import com.dotmatrix.calendar.widget.cache.ConfigDiff
+import com.dotmatrix.calendar.widget.cache.InvalidationScope
 import com.dotmatrix.calendar.widget.cache.WidgetBitmapCache
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
-import com.dotmatrix.calendar.data.model.WidgetConfig
+import java.util.EnumSet
 
 /**
- * Listens for wallpaper changes and updates widgets with Chameleon Mode enabled.
+ * Listens for wallpaper changes and updates widgets with Chameleon Mode enabled, as well
+ * as glass-themed widgets whose blurred background shows the wallpaper.
  */
 class WallpaperChangeReceiver : BroadcastReceiver() {
     
@@ -37,9 +43,22 @@ class WallpaperChangeReceiver : BroadcastReceiver() {
         }
     }
     
-    private suspend fun handleWallpaperChange(context: Context) {
+    private fun handleWallpaperChange(context: Context) {
+        // Dynamic-color widgets cache colors per wallpaper; drop them if it really changed
+        ColorExtractionCache.getInstance(context).refreshSource()
+
         val repository = WidgetRepository.getInstance(context)
         
+        // Glass backgrounds blur the wallpaper itself: drop their cached blur, and the new
+        // wallpaper id makes their published frames stale so the update goes out
+        val glassConfigs = repository.getAllWidgetConfigs().filter { config ->
+            !config.isChameleonModeEnabled && config.themeId?.startsWith("glass_") == true
+        }
+        glassConfigs.forEach { config ->
+            WidgetBitmapCache.getInstance().invalidate(config.widgetId, EnumSet.of(InvalidationScope.BACKGROUND))
+        }
+        updateByType(context, glassConfigs)
+        
         // Get all widgets that have Chameleon enabled
         // Note: We need to expose this method in Repository first
         val chameleonConfigs = repository.getWidgetsWithChameleonEnabled()
@@ -59,6 +78,8 @@ class WallpaperChangeReceiver : BroadcastReceiver() {
         // Generate new theme generator
         val themeGenerator = AdaptiveThemeGenerator()
         
+        // Compute every new theme up front, then persist them in one transaction
+        val previous = chameleonConfigs.associate { it.widgetId to it.copy() }
         chameleonConfigs.forEach { config ->
             // Generate theme with user's intensity preference
             val newTheme = themeGenerator.generateTheme(
@@ -71,28 +92,44 @@ class WallpaperChangeReceiver : BroadcastReceiver() {
             config.setDotColor(newTheme.dotColor)
             config.setAccentColor(newTheme.accentColor)
             config.setChameleonGenerated(true)
-            
-            // Save to database
-            repository.saveWidgetConfigSync(config)
-            
-            // Clear cache for this widget
-            // Clear cache for this widget
-            // We need to construct cache key or just clear all for this ID? 
-            // Better to invalidate all for this ID
-            WidgetBitmapCache.getInstance().invalidate(config.widgetId)
-            
-            // Trigger update based on type
-            val appWidgetManager = AppWidgetManager.getInstance(context)
-            val ids = intArrayOf(config.getWidgetId())
-            
-            when (config.getWidgetType()) {
-                com.dotmatrix.calendar.data.model.WidgetType.YEAR -> 
-                    YearViewWidgetProvider.updateAllWidgets(context, YearViewWidgetProvider::class.java)
-                com.dotmatrix.calendar.data.model.WidgetType.MONTH -> 
-                     MonthViewWidgetProvider.updateAllWidgets(context, MonthViewWidgetProvider::class.java)
-                com.dotmatrix.calendar.data.model.WidgetType.WEEK -> 
-                     WeekViewWidgetProvider.updateAllWidgets(context, WeekViewWidgetProvider::class.java)
-                else -> {}
+        }
+        
+        repository.saveWidgetConfigsSync(chameleonConfigs)
+        
+        // Invalidate only what changed, and fade the changed widgets to their new colors
+        val bitmapCache = WidgetBitmapCache.getInstance()
+        val changed = chameleonConfigs.filter { config ->
+            val scopes = ConfigDiff.classify(previous[config.widgetId], config)
+            bitmapCache.invalidate(config.widgetId, scopes)
+            scopes.isNotEmpty()
+        }
+        // Transitions run on in the animator's scope once launched and end with a regular
+        // update; the broadcast is finished without waiting for them
+        val notAnimated = changed.filter { config ->
+            WidgetTransitions.animate(
+                context,
+                config.widgetId,
+                previous[config.widgetId]?.let { WidgetSnapshot.of(it, 0) },
+                repository.getWidgetSnapshot(config.widgetId)
+            ) == null
+        }
+        updateByType(context, notAnimated)
+    }
+    
+    /**
+     * One targeted broadcast per provider, carrying only the given widgets' IDs.
+     */
+    private fun updateByType(context: Context, configs: List<WidgetConfig>) {
+        val idsByType = configs.groupBy({ it.widgetType }, { it.widgetId })
+        idsByType.forEach { (type, ids) ->
+            val providerClass = when (type) {
+                WidgetType.YEAR -> YearViewWidgetProvider::class.java
+                WidgetType.MONTH -> MonthViewWidgetProvider::class.java
+                WidgetType.WEEK -> WeekViewWidgetProvider::class.java
+                else -> null
+            }
+            if (providerClass != null) {
+                BaseWidgetProvider.updateWidgets(context, providerClass, ids.toIntArray())
             }
         }
     }
@@ -7,13 +7,12 @@ import android.graphics.Bitmap
 import android.graphics.Color
 import android.os.Build
 import androidx.annotation.RequiresApi
-import androidx.palette.graphics.Palette
 import androidx.core.graphics.drawable.toBitmap
 
 /**
  * Extracts dominant colors from the system wallpaper.
  * Uses Android 8.1+ native WallpaperColors API when available,
- * falls back to Palette library for older versions.
+ * falls back to the in-house [WallpaperQuantizer] for older versions.
  */
 class WallpaperColorExtractor(private val context: Context) {
     
@@ -26,7 +25,7 @@ class WallpaperColorExtractor(private val context: Context) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
                 extractColorsNative()
             } else {
-                extractColorsPalette()
+                extractColorsQuantized()
             }
         } catch (e: Exception) {
             android.util.Log.e("WallpaperColorExtractor", "Wallpaper extraction failed", e)
@@ -52,41 +51,42 @@ class WallpaperColorExtractor(private val context: Context) {
         )
     }
     
-    private fun extractColorsPalette(): WallpaperThemeColors {
+    private fun extractColorsQuantized(): WallpaperThemeColors {
         val wallpaperManager = WallpaperManager.getInstance(context)
         val wallpaperDrawable = wallpaperManager.drawable 
             ?: return getDefaultColors()
         
-        // Scale down for performance (max 400px on longest side)
+        // A 64x64 thumbnail is plenty for a handful of swatches
+        val size = WallpaperQuantizer.THUMBNAIL_SIZE
         val bitmap = wallpaperDrawable.toBitmap(
-            width = 400,
-            height = 400,
+            width = size,
+            height = size,
             config = Bitmap.Config.ARGB_8888
         )
+        val pixels = IntArray(size * size)
+        bitmap.getPixels(pixels, 0, size, 0, 0, size, size)
+        bitmap.recycle()
         
-        val palette = Palette.from(bitmap).generate()
+        val palette = WallpaperQuantizer().quantize(pixels)
+        if (palette.isEmpty) {
+            return getDefaultColors()
+        }
         
-        // Prefer vibrant colors, fall back to muted/dominant
-        val primaryColor = palette.vibrantSwatch?.rgb
-            ?: palette.dominantSwatch?.rgb
-            ?: Color.BLACK
-            
-        val secondaryColor = palette.lightVibrantSwatch?.rgb
-            ?: palette.lightMutedSwatch?.rgb
+        val primaryColor = palette.primary
+        
+        val secondaryColor = palette.secondary
+            .takeIf { it != WallpaperQuantizer.NO_COLOR }
             ?: deriveSecondaryColor(primaryColor)
             
-        val tertiaryColor = palette.darkVibrantSwatch?.rgb
-            ?: palette.darkMutedSwatch?.rgb
+        val tertiaryColor = palette.tertiary
+            .takeIf { it != WallpaperQuantizer.NO_COLOR }
             ?: deriveTertiaryColor(primaryColor)
         
-        // Recycle bitmap to free memory doesn't seem necessary with KTX extension but good practice if managing manually
-        // bitmap.recycle() // KTX toBitmap creates new bitmap, safe to recycle if not used elsewhere? Yes.
-        
         return WallpaperThemeColors(
             primary = primaryColor,
             secondary = secondaryColor,
             tertiary = tertiaryColor,
-            isDark = calculateLuminance(primaryColor) < 0.5
+            isDark = palette.isDark
         )
     }
     
@@ -110,15 +110,6 @@ class WallpaperColorExtractor(private val context: Context) {
         )
     }
     
-    private fun calculateLuminance(color: Int): Double {
-        // Use standard relative luminance formula
-        val r = Color.red(color) / 255.0
-        val g = Color.green(color) / 255.0
-        val b = Color.blue(color) / 255.0
-        
-        return 0.2126 * r + 0.7152 * g + 0.0722 * b
-    }
-    
     private fun adjustLightness(color: Int, amount: Float): Int {
         val hsv = FloatArray(3)
         Color.colorToHSV(color, hsv)
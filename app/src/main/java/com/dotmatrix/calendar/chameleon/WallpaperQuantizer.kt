@@ -0,0 +1,341 @@
+package com.dotmatrix.calendar.chameleon
+
+import java.util.Arrays
+
+/**
+ * Median-cut color quantizer for wallpaper thumbnails.
+ * Works purely on packed ARGB ints and primitive arrays (no android.graphics),
+ * so the same pixels always produce the same swatches and it runs on the plain JVM.
+ *
+ * One pass over the pixels builds a 15-bit (5:5:5) population histogram and the
+ * average luminance; the histogram is then cut into at most [maxColors] boxes.
+ * Buffers are reused between calls, so an instance is not thread-safe.
+ */
+class WallpaperQuantizer(private val maxColors: Int = DEFAULT_MAX_COLORS) {
+
+    companion object {
+        /** Edge length of the thumbnail callers should downsample the wallpaper to. */
+        const val THUMBNAIL_SIZE = 64
+        const val DEFAULT_MAX_COLORS = 16
+
+        /** Marker for a swatch role that no box qualified for. Real colors are always opaque. */
+        const val NO_COLOR = 0
+
+        private const val QUANTIZE_BITS = 5
+        private const val QUANTIZE_MASK = (1 shl QUANTIZE_BITS) - 1
+        private const val HISTOGRAM_SIZE = 1 shl (QUANTIZE_BITS * 3)
+        private const val MIN_ALPHA = 128
+
+        private const val COMPONENT_RED = 0
+        private const val COMPONENT_GREEN = 1
+        private const val COMPONENT_BLUE = 2
+
+        // Swatch role targets (HSL lightness / saturation), loosely following Palette's defaults
+        private const val VIBRANT_MIN_SATURATION = 0.35f
+        private const val VIBRANT_MIN_LIGHTNESS = 0.3f
+        private const val VIBRANT_MAX_LIGHTNESS = 0.7f
+        private const val LIGHT_MIN_LIGHTNESS = 0.55f
+        private const val DARK_MAX_LIGHTNESS = 0.45f
+    }
+
+    private val histogram = IntArray(HISTOGRAM_SIZE)
+    private var distinct = IntArray(0)
+
+    // Box bounds into [distinct], indexed by box number
+    private val boxLower = IntArray(maxColors)
+    private val boxUpper = IntArray(maxColors)
+
+    /**
+     * Quantizes [count] pixels of [pixels] (packed ARGB, e.g. from Bitmap.getPixels).
+     * Pixels with alpha below 50% are ignored.
+     */
+    fun quantize(pixels: IntArray, count: Int = pixels.size): QuantizedPalette {
+        Arrays.fill(histogram, 0)
+
+        var total = 0
+        var luminanceSum = 0.0
+        for (i in 0 until count) {
+            val argb = pixels[i]
+            if ((argb ushr 24) < MIN_ALPHA) continue
+
+            val r = (argb shr 16) and 0xFF
+            val g = (argb shr 8) and 0xFF
+            val b = argb and 0xFF
+            histogram[quantize(r, g, b)]++
+            luminanceSum += 0.2126 * r + 0.7152 * g + 0.0722 * b
+            total++
+        }
+
+        if (total == 0) {
+            return QuantizedPalette.EMPTY
+        }
+
+        val distinctCount = collectDistinct()
+        val boxCount = splitBoxes(distinctCount)
+
+        val swatchColors = IntArray(boxCount)
+        val swatchPopulations = IntArray(boxCount)
+        for (box in 0 until boxCount) {
+            averageBox(box, swatchColors, swatchPopulations)
+        }
+        sortByPopulation(swatchColors, swatchPopulations)
+
+        val luminance = (luminanceSum / total / 255.0).toFloat()
+        return QuantizedPalette(
+            primary = pickPrimary(swatchColors),
+            secondary = pickByLightness(swatchColors, minLightness = LIGHT_MIN_LIGHTNESS, maxLightness = 1f),
+            tertiary = pickByLightness(swatchColors, minLightness = 0f, maxLightness = DARK_MAX_LIGHTNESS),
+            luminance = luminance,
+            isDark = luminance < 0.5f,
+            swatchColors = swatchColors,
+            swatchPopulations = swatchPopulations
+        )
+    }
+
+    // ==================== Histogram ====================
+
+    private fun collectDistinct(): Int {
+        var count = 0
+        for (color in histogram.indices) {
+            if (histogram[color] > 0) count++
+        }
+        if (distinct.size < count) {
+            distinct = IntArray(count)
+        }
+        var index = 0
+        for (color in histogram.indices) {
+            if (histogram[color] > 0) distinct[index++] = color
+        }
+        return count
+    }
+
+    // ==================== Median cut ====================
+
+    private fun splitBoxes(distinctCount: Int): Int {
+        boxLower[0] = 0
+        boxUpper[0] = distinctCount - 1
+        var boxCount = 1
+
+        while (boxCount < maxColors) {
+            // Always split the box with the widest component range; ties go to the lowest index
+            var widest = -1
+            var widestRange = 0
+            for (box in 0 until boxCount) {
+                if (boxUpper[box] <= boxLower[box]) continue
+                val range = longestRange(box)
+                if (range > widestRange) {
+                    widestRange = range
+                    widest = box
+                }
+            }
+            if (widest < 0) break
+
+            val splitPoint = findSplitPoint(widest)
+            boxLower[boxCount] = splitPoint + 1
+            boxUpper[boxCount] = boxUpper[widest]
+            boxUpper[widest] = splitPoint
+            boxCount++
+        }
+        return boxCount
+    }
+
+    private fun longestRange(box: Int): Int {
+        var minR = QUANTIZE_MASK; var maxR = 0
+        var minG = QUANTIZE_MASK; var maxG = 0
+        var minB = QUANTIZE_MASK; var maxB = 0
+        for (i in boxLower[box]..boxUpper[box]) {
+            val color = distinct[i]
+            val r = red(color); val g = green(color); val b = blue(color)
+            if (r < minR) minR = r
+            if (r > maxR) maxR = r
+            if (g < minG) minG = g
+            if (g > maxG) maxG = g
+            if (b < minB) minB = b
+            if (b > maxB) maxB = b
+        }
+        return maxOf(maxR - minR, maxG - minG, maxB - minB)
+    }
+
+    private fun findSplitPoint(box: Int): Int {
+        val lower = boxLower[box]
+        val upper = boxUpper[box]
+        val component = longestComponent(box)
+
+        // Sort the box by the chosen component: move it to the most significant position,
+        // sort the packed ints, then restore the original layout
+        swapSignificant(component, lower, upper)
+        Arrays.sort(distinct, lower, upper + 1)
+        swapSignificant(component, lower, upper)
+
+        var population = 0
+        for (i in lower..upper) population += histogram[distinct[i]]
+
+        val midpoint = population / 2
+        var running = 0
+        for (i in lower..upper) {
+            running += histogram[distinct[i]]
+            if (running >= midpoint) {
+                return minOf(upper - 1, i)
+            }
+        }
+        return lower
+    }
+
+    private fun longestComponent(box: Int): Int {
+        var minR = QUANTIZE_MASK; var maxR = 0
+        var minG = QUANTIZE_MASK; var maxG = 0
+        var minB = QUANTIZE_MASK; var maxB = 0
+        for (i in boxLower[box]..boxUpper[box]) {
+            val color = distinct[i]
+            val r = red(color); val g = green(color); val b = blue(color)
+            if (r < minR) minR = r
+            if (r > maxR) maxR = r
+            if (g < minG) minG = g
+            if (g > maxG) maxG = g
+            if (b < minB) minB = b
+            if (b > maxB) maxB = b
+        }
+        val rangeR = maxR - minR
+        val rangeG = maxG - minG
+        val rangeB = maxB - minB
+        return when {
+            rangeR >= rangeG && rangeR >= rangeB -> COMPONENT_RED
+            rangeG >= rangeR && rangeG >= rangeB -> COMPONENT_GREEN
+            else -> COMPONENT_BLUE
+        }
+    }
+
+    /**
+     * Swaps [component] with red in the packed 5:5:5 color. Applying it twice is a no-op.
+     */
+    private fun swapSignificant(component: Int, lower: Int, upper: Int) {
+        when (component) {
+            COMPONENT_GREEN -> for (i in lower..upper) {
+                val c = distinct[i]
+                distinct[i] = pack(green(c), red(c), blue(c))
+            }
+            COMPONENT_BLUE -> for (i in lower..upper) {
+                val c = distinct[i]
+                distinct[i] = pack(blue(c), green(c), red(c))
+            }
+        }
+    }
+
+    private fun averageBox(box: Int, colorsOut: IntArray, populationsOut: IntArray) {
+        var sumR = 0L; var sumG = 0L; var sumB = 0L
+        var population = 0
+        for (i in boxLower[box]..boxUpper[box]) {
+            val color = distinct[i]
+            val count = histogram[color]
+            sumR += red(color).toLong() * count
+            sumG += green(color).toLong() * count
+            sumB += blue(color).toLong() * count
+            population += count
+        }
+        val r = expand((sumR / population).toInt())
+        val g = expand((sumG / population).toInt())
+        val b = expand((sumB / population).toInt())
+        colorsOut[box] = (0xFF shl 24) or (r shl 16) or (g shl 8) or b
+        populationsOut[box] = population
+    }
+
+    /** Stable insertion sort, descending by population (box counts are tiny). */
+    private fun sortByPopulation(colors: IntArray, populations: IntArray) {
+        for (i in 1 until colors.size) {
+            val color = colors[i]
+            val population = populations[i]
+            var j = i - 1
+            while (j >= 0 && populations[j] < population) {
+                colors[j + 1] = colors[j]
+                populations[j + 1] = populations[j]
+                j--
+            }
+            colors[j + 1] = color
+            populations[j + 1] = population
+        }
+    }
+
+    // ==================== Swatch roles ====================
+
+    /** Most populous vibrant swatch, else the dominant one. Swatches are sorted by population. */
+    private fun pickPrimary(colors: IntArray): Int {
+        for (color in colors) {
+            val lightness = lightness(color)
+            if (saturation(color, lightness) >= VIBRANT_MIN_SATURATION &&
+                lightness in VIBRANT_MIN_LIGHTNESS..VIBRANT_MAX_LIGHTNESS) {
+                return color
+            }
+        }
+        return colors[0]
+    }
+
+    private fun pickByLightness(colors: IntArray, minLightness: Float, maxLightness: Float): Int {
+        val primary = pickPrimary(colors)
+        for (color in colors) {
+            if (color == primary) continue
+            if (lightness(color) in minLightness..maxLightness) {
+                return color
+            }
+        }
+        return NO_COLOR
+    }
+
+    // ==================== Packing helpers ====================
+
+    private fun quantize(r: Int, g: Int, b: Int): Int =
+        pack(r shr (8 - QUANTIZE_BITS), g shr (8 - QUANTIZE_BITS), b shr (8 - QUANTIZE_BITS))
+
+    private fun pack(r: Int, g: Int, b: Int): Int =
+        (r shl (QUANTIZE_BITS * 2)) or (g shl QUANTIZE_BITS) or b
+
+    private fun red(color: Int): Int = (color shr (QUANTIZE_BITS * 2)) and QUANTIZE_MASK
+    private fun green(color: Int): Int = (color shr QUANTIZE_BITS) and QUANTIZE_MASK
+    private fun blue(color: Int): Int = color and QUANTIZE_MASK
+
+    /** Expands a 5-bit component back to 8 bits. */
+    private fun expand(value: Int): Int = (value shl 3) or (value shr 2)
+
+    private fun lightness(argb: Int): Float {
+        val r = (argb shr 16) and 0xFF
+        val g = (argb shr 8) and 0xFF
+        val b = argb and 0xFF
+        return (maxOf(r, g, b) + minOf(r, g, b)) / 510f
+    }
+
+    private fun saturation(argb: Int, lightness: Float): Float {
+        val r = (argb shr 16) and 0xFF
+        val g = (argb shr 8) and 0xFF
+        val b = argb and 0xFF
+        val delta = (maxOf(r, g, b) - minOf(r, g, b)) / 255f
+        if (delta == 0f) return 0f
+        return delta / (1f - Math.abs(2f * lightness - 1f))
+    }
+}
+
+/**
+ * Result of [WallpaperQuantizer.quantize].
+ * Roles that no swatch qualified for are [WallpaperQuantizer.NO_COLOR].
+ */
+class QuantizedPalette(
+    val primary: Int,
+    val secondary: Int,
+    val tertiary: Int,
+    val luminance: Float,       // Population-weighted mean relative luminance (0.0-1.0)
+    val isDark: Boolean,
+    val swatchColors: IntArray, // Sorted by population, descending
+    val swatchPopulations: IntArray
+) {
+    companion object {
+        val EMPTY = QuantizedPalette(
+            primary = WallpaperQuantizer.NO_COLOR,
+            secondary = WallpaperQuantizer.NO_COLOR,
+            tertiary = WallpaperQuantizer.NO_COLOR,
+            luminance = 0f,
+            isDark = true,
+            swatchColors = IntArray(0),
+            swatchPopulations = IntArray(0)
+        )
+    }
+
+    val isEmpty: Boolean get() = swatchColors.isEmpty()
+}
@@ -3,24 +3,61 @@ package com.dotmatrix.calendar.chameleon
 import android.animation.ArgbEvaluator
 import android.animation.ValueAnimator
 import android.content.Context
+import android.graphics.Bitmap
+import android.os.SystemClock
 import android.view.animation.DecelerateInterpolator
 import com.dotmatrix.calendar.data.model.WidgetTheme
+import com.dotmatrix.calendar.widget.renderer.IndexedFrame
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Animates smooth color transitions when widget theme changes.
  * Uses ValueAnimator to interpolate between old and new colors.
+ *
+ * Home screen widgets go through the budgeted transition instead: RemoteViews
+ * pushes can't keep up with vsync, so a few keyframes are precomputed off the
+ * main thread and pushed at a capped rate.
  */
 class WidgetColorAnimator(private val context: Context) {
     
     companion object {
         private const val ANIMATION_DURATION_MS = 2000L // 2 seconds
+        
+        // Widget transitions: keyframes per transition and minimum gap between pushes
+        private const val WIDGET_KEYFRAME_COUNT = 6
+        private const val MIN_PUSH_INTERVAL_MS = 250L // At most 4 pushes/s to the AppWidget host
     }
     
+    /**
+     * Instrumentation for one budgeted widget transition, published when it ends.
+     * Nothing of a transition runs on the main thread, so there is no main-thread time;
+     * [pushMs] includes the wait behind frames queued for the launcher.
+     */
+    data class TransitionStats(
+        val keyframes: Int,
+        val pushes: Int,
+        val skippedFrames: Int,
+        val precomputeMs: Long,
+        val pushMs: Long,
+        val cancelled: Boolean
+    )
+    
     private val argbEvaluator = ArgbEvaluator()
     private val activeAnimators = mutableMapOf<Int, ValueAnimator>()
     
+    private val transitionScope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val activeTransitions = ConcurrentHashMap<Int, Job>()
+    private val lastTransitionStats = ConcurrentHashMap<Int, TransitionStats>()
+    
     /**
      * Animates theme transition for a widget.
      * @param widgetId Widget instance ID
@@ -67,12 +104,135 @@ class WidgetColorAnimator(private val context: Context) {
         animator.start()
     }
     
+    /**
+     * Budgeted widget transition over an indexed frame.
+     * Keyframes are LUT passes computed on a background thread; see [startBudgetedTransition].
+     * @param push Publishes one keyframe to the widget (called off the main thread), returning
+     *             once the keyframe is no longer needed
+     */
+    fun animateWidgetTransition(
+        widgetId: Int,
+        frame: IndexedFrame,
+        oldPalette: IntArray,
+        newPalette: IntArray,
+        push: suspend (Bitmap) -> Unit
+    ): Job {
+        val palette = IntArray(IndexedFrame.ROLE_COUNT)
+        val lut = IntArray(IndexedFrame.ROLE_COUNT * 256)
+        
+        return startBudgetedTransition(widgetId, push) { fraction ->
+            IndexedFrame.lerpPalette(oldPalette, newPalette, fraction, palette)
+            frame.toBitmap(IndexedFrame.buildLut(palette, lut))
+        }
+    }
+    
+    /**
+     * Budgeted widget transition for configs that can't be indexed (e.g. glass themes).
+     * @param renderKeyframe Full render for an interpolated theme (called off the main thread)
+     * @param push Publishes one keyframe to the widget (called off the main thread), returning
+     *             once the keyframe is no longer needed
+     */
+    fun animateWidgetThemeTransition(
+        widgetId: Int,
+        oldTheme: WidgetTheme,
+        newTheme: WidgetTheme,
+        renderKeyframe: (WidgetTheme) -> Bitmap?,
+        push: suspend (Bitmap) -> Unit
+    ): Job {
+        return startBudgetedTransition(widgetId, push) { fraction ->
+            renderKeyframe(interpolateThemes(oldTheme, newTheme, fraction))
+        }
+    }
+    
+    /**
+     * Gets instrumentation for the last finished or cancelled transition of a widget.
+     */
+    fun getLastTransitionStats(widgetId: Int): TransitionStats? = lastTransitionStats[widgetId]
+    
+    /**
+     * Precomputes [WIDGET_KEYFRAME_COUNT] keyframes, then pushes them paced by wall-clock time.
+     * A late push never queues: the next push jumps to whichever keyframe is due and the
+     * ones in between are dropped. A newer transition for the same widget cancels this one.
+     */
+    private fun startBudgetedTransition(
+        widgetId: Int,
+        push: suspend (Bitmap) -> Unit,
+        keyframeAt: (Float) -> Bitmap?
+    ): Job {
+        // Cancel any existing transition for this widget (its keyframes are simply dropped)
+        activeTransitions.remove(widgetId)?.cancel()
+        
+        val job = transitionScope.launch(start = CoroutineStart.LAZY) {
+            // Only this coroutine touches the counters; the stats are copied out at the end
+            var pushes = 0
+            var skippedFrames = 0
+            var precomputeMs = 0L
+            var pushMs = 0L
+            var finished = false
+            
+            // 1. Precompute keyframes (eased like the ValueAnimator path)
+            val keyframes = ArrayList<Bitmap>(WIDGET_KEYFRAME_COUNT)
+            try {
+                for (i in 1..WIDGET_KEYFRAME_COUNT) {
+                    ensureActive()
+                    val t = i.toFloat() / WIDGET_KEYFRAME_COUNT
+                    val keyframeStart = SystemClock.elapsedRealtime()
+                    keyframeAt(1f - (1f - t) * (1f - t))?.let { keyframes.add(it) }
+                    precomputeMs += SystemClock.elapsedRealtime() - keyframeStart
+                }
+                if (keyframes.isEmpty()) {
+                    finished = true
+                    return@launch
+                }
+            
+                // 2. Push at a capped rate, skipping keyframes that are already overdue
+                val pushInterval = maxOf(MIN_PUSH_INTERVAL_MS, ANIMATION_DURATION_MS / keyframes.size)
+                val startTime = SystemClock.elapsedRealtime()
+                var lastPushed = -1
+                while (lastPushed < keyframes.size - 1) {
+                    ensureActive()
+                    val elapsed = SystemClock.elapsedRealtime() - startTime
+                    val due = minOf(keyframes.size - 1, (elapsed / pushInterval).toInt())
+                    if (due > lastPushed) {
+                        skippedFrames += due - lastPushed - 1
+                    
+                        val pushStart = SystemClock.elapsedRealtime()
+                        push(keyframes[due])
+                        pushMs += SystemClock.elapsedRealtime() - pushStart
+                        pushes++
+                        lastPushed = due
+                    }
+                    if (lastPushed < keyframes.size - 1) {
+                        delay(pushInterval - (SystemClock.elapsedRealtime() - startTime) % pushInterval)
+                    }
+                }
+                finished = true
+            } finally {
+                // Every push has returned, so nothing references them anymore
+                keyframes.forEach { it.recycle() }
+                lastTransitionStats[widgetId] = TransitionStats(
+                    keyframes.size, pushes, skippedFrames, precomputeMs, pushMs,
+                    cancelled = !finished
+                )
+            }
+        }
+        
+        job.invokeOnCompletion {
+            activeTransitions.remove(widgetId, job)
+        }
+        
+        activeTransitions[widgetId] = job
+        job.start()
+        return job
+    }
+    
     /**
      * Cancels any active animation for a widget.
      */
     fun cancelAnimation(widgetId: Int) {
         activeAnimators[widgetId]?.cancel()
         activeAnimators.remove(widgetId)
+        activeTransitions.remove(widgetId)?.cancel()
     }
     
     /**
@@ -0,0 +1,214 @@
+package com.dotmatrix.calendar.chameleon
+
+import android.appwidget.AppWidgetManager
+import android.content.Context
+import android.graphics.Bitmap
+import android.os.SystemClock
+import android.widget.RemoteViews
+import com.dotmatrix.calendar.R
+import com.dotmatrix.calendar.data.model.EmojiRule
+import com.dotmatrix.calendar.data.model.WidgetConfig
+import com.dotmatrix.calendar.data.model.WidgetSnapshot
+import com.dotmatrix.calendar.data.model.WidgetTheme
+import com.dotmatrix.calendar.data.model.WidgetType
+import com.dotmatrix.calendar.data.repository.WidgetRepository
+import com.dotmatrix.calendar.widget.cache.ConfigDiff
+import com.dotmatrix.calendar.widget.cache.IndexedFrameCache
+import com.dotmatrix.calendar.widget.cache.InvalidationScope
+import com.dotmatrix.calendar.widget.cache.PublishedFrames
+import com.dotmatrix.calendar.widget.cache.WidgetFrameStore
+import com.dotmatrix.calendar.widget.optimization.PayloadMonitor
+import com.dotmatrix.calendar.widget.provider.BaseWidgetProvider
+import com.dotmatrix.calendar.widget.provider.MonthViewWidgetProvider
+import com.dotmatrix.calendar.widget.provider.WeekViewWidgetProvider
+import com.dotmatrix.calendar.widget.provider.YearViewWidgetProvider
+import com.dotmatrix.calendar.widget.renderer.DotRenderer
+import com.dotmatrix.calendar.widget.renderer.IndexedFrame
+import com.dotmatrix.calendar.widget.renderer.NativeGridRenderer
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.withContext
+import java.time.LocalDate
+
+/**
+ * Animates a home screen widget from one snapshot's colors to another's through
+ * [WidgetColorAnimator]'s budgeted transitions, then hands the final frame over to a
+ * regular provider update.
+ *
+ * Recolors of indexable widgets resolve the cached role map per keyframe; theme changes
+ * and glass themes render each keyframe in full. Layout changes aren't animated.
+ */
+object WidgetTransitions {
+
+    @Volatile
+    private var animator: WidgetColorAnimator? = null
+
+    private fun sharedAnimator(context: Context): WidgetColorAnimator {
+        return animator ?: synchronized(this) {
+            animator ?: WidgetColorAnimator(context.applicationContext).also { animator = it }
+        }
+    }
+
+    /**
+     * Start a transition for a published widget. Call off the main thread; the role map
+     * may have to be rendered first.
+     *
+     * @return The running transition, or null if the change can't be animated and the
+     *         caller should send a regular update instead
+     */
+    @JvmStatic
+    fun animate(context: Context, widgetId: Int, before: WidgetSnapshot?, after: WidgetSnapshot?): Job? {
+        if (before == null || after == null) {
+            return null
+        }
+        val appContext = context.applicationContext
+        val resolvedBefore = BaseWidgetProvider.resolveDynamicColors(appContext, before)
+        val resolvedAfter = BaseWidgetProvider.resolveDynamicColors(appContext, after)
+        val beforeConfig = resolvedBefore.toRenderConfig()
+        val afterConfig = resolvedAfter.toRenderConfig()
+
+        val scopes = ConfigDiff.classify(beforeConfig, afterConfig)
+        if (!scopes.contains(InvalidationScope.RECOLOR) || scopes.contains(InvalidationScope.LAYOUT)
+                || NativeGridRenderer.supports(beforeConfig) || NativeGridRenderer.supports(afterConfig)) {
+            return null
+        }
+        val layoutId = layoutFor(afterConfig.widgetType) ?: return null
+        val providerClass = providerFor(afterConfig.widgetType) ?: return null
+
+        val appWidgetManager = AppWidgetManager.getInstance(appContext)
+        val size = BaseWidgetProvider.widgetSize(appContext, appWidgetManager.getAppWidgetOptions(widgetId))
+        // Keyframes are inlined; shrink them to the transaction budget, the ImageView scales up
+        val scale = PayloadMonitor.getInstance(appContext)
+            .scaleFor(widgetId, size[0].toLong() * size[1] * 4)
+        if (scale == 0f) {
+            // Over budget even at the smallest scale; the regular update goes by URI
+            return null
+        }
+        val width = Math.round(size[0] * scale)
+        val height = Math.round(size[1] * scale)
+
+        val rules = WidgetRepository.getInstance(appContext).getEmojiRules(widgetId)
+        val today = LocalDate.now()
+        // Keyframes render on the animator's thread, so the transition has its own renderer
+        val renderer = DotRenderer()
+
+        val push: suspend (Bitmap) -> Unit = { bitmap ->
+            val views = RemoteViews(appContext.packageName, layoutId)
+            // Keyframes are composed frames
+            views.setImageViewResource(R.id.widget_background, 0)
+            views.setImageViewBitmap(R.id.widget_image, bitmap)
+            BaseWidgetProvider.attachEditorIntent(appContext, views, widgetId, afterConfig.widgetType)
+            // In order with the provider's pushes, behind the frames they wait for
+            val pushed = CompletableDeferred<Unit>()
+            WidgetFrameStore.whenStored {
+                try {
+                    val start = SystemClock.elapsedRealtime()
+                    appWidgetManager.updateAppWidget(widgetId, views)
+                    PayloadMonitor.getInstance(appContext).record(widgetId, views, bitmap.byteCount.toLong(),
+                        bitmap.width, bitmap.height, scale, SystemClock.elapsedRealtime() - start)
+                } finally {
+                    pushed.complete(Unit)
+                }
+            }
+            // The keyframe is recycled when the transition ends, so even a cancelled
+            // transition waits until it is parceled
+            withContext(NonCancellable) { pushed.await() }
+        }
+
+        val frame = if (ConfigDiff.isRecolorOnly(scopes)) {
+            indexedFrame(appContext, renderer, widgetId, width, height, resolvedBefore, beforeConfig, rules, today)
+        } else {
+            null
+        }
+        // Keyframes go out untracked; the final update has to push again
+        PublishedFrames.getInstance(appContext).forget(widgetId)
+        val job = if (frame != null) {
+            sharedAnimator(appContext).animateWidgetTransition(
+                widgetId, frame, renderer.resolvePalette(beforeConfig), renderer.resolvePalette(afterConfig), push)
+        } else {
+            sharedAnimator(appContext).animateWidgetThemeTransition(
+                widgetId, themeOf(resolvedBefore), themeOf(resolvedAfter),
+                { theme ->
+                    val keyframe = resolvedAfter.withResolvedColors(
+                        theme.backgroundColor, theme.dotColor, theme.accentColor)
+                    render(appContext, renderer, width, height, keyframe.toRenderConfig(), rules, today)
+                },
+                push)
+        }
+
+        job.invokeOnCompletion { cause ->
+            // A newer transition replaced this one and ends with its own update
+            if (cause == null) {
+                BaseWidgetProvider.updateWidgets(appContext, providerClass, intArrayOf(widgetId))
+            }
+        }
+        return job
+    }
+
+    /**
+     * Role map of the widget before the change, from the cache the provider fills, or
+     * null if it can't be indexed.
+     */
+    private fun indexedFrame(context: Context, renderer: DotRenderer, widgetId: Int, width: Int, height: Int,
+                             snapshot: WidgetSnapshot, config: WidgetConfig, rules: List<EmojiRule>,
+                             today: LocalDate): IndexedFrame? {
+        if (!DotRenderer.supportsIndexedFrame(config)) {
+            return null
+        }
+        val indexedFrames = IndexedFrameCache.getInstance()
+        val rolesKey = BaseWidgetProvider.rolesKey(widgetId, width, height, today, snapshot, rules)
+        indexedFrames.get(widgetId, rolesKey)?.let { return it }
+        if (indexedFrames.isUnindexable(widgetId, rolesKey)) {
+            return null
+        }
+        val frame = renderer.renderIndexedFrame(context, width, height, config, rules, today)
+        if (frame == null) {
+            indexedFrames.markUnindexable(widgetId, rolesKey)
+        } else {
+            indexedFrames.put(widgetId, rolesKey, frame)
+        }
+        return frame
+    }
+
+    private fun render(context: Context, renderer: DotRenderer, width: Int, height: Int, config: WidgetConfig,
+                       rules: List<EmojiRule>, today: LocalDate): Bitmap? {
+        return when (config.widgetType) {
+            WidgetType.MONTH -> renderer.renderMonthView(context, width, height, config, rules, today)
+            WidgetType.WEEK -> renderer.renderWeekView(context, width, height, config, rules, today)
+            else -> renderer.renderYearView(context, width, height, config, rules, today)
+        }
+    }
+
+    private fun themeOf(snapshot: WidgetSnapshot): WidgetTheme {
+        return WidgetTheme(
+            themeId = snapshot.themeId ?: "",
+            name = "",
+            backgroundColor = snapshot.backgroundColor,
+            dotColor = snapshot.dotColor,
+            accentColor = snapshot.accentColor,
+            dotColorCurrent = snapshot.accentColor,
+            dotColorFuture = snapshot.dotColor,
+            textPrimaryColor = snapshot.dotColor,
+            textSecondaryColor = snapshot.dotColor
+        )
+    }
+
+    private fun layoutFor(type: WidgetType): Int? {
+        return when (type) {
+            WidgetType.YEAR -> R.layout.widget_year
+            WidgetType.MONTH -> R.layout.widget_month
+            WidgetType.WEEK -> R.layout.widget_week
+            else -> null
+        }
+    }
+
+    private fun providerFor(type: WidgetType): Class<out BaseWidgetProvider>? {
+        return when (type) {
+            WidgetType.YEAR -> YearViewWidgetProvider::class.java
+            WidgetType.MONTH -> MonthViewWidgetProvider::class.java
+            WidgetType.WEEK -> WeekViewWidgetProvider::class.java
+            else -> null
+        }
+    }
+}
@@ -2,10 +2,17 @@ package com.dotmatrix.calendar.data.db;
 
 import android.content.Context;
 
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.dotmatrix.calendar.data.model.EmojiRule;
 import com.dotmatrix.calendar.data.model.WidgetConfig;
@@ -16,8 +23,8 @@ import com.dotmatrix.calendar.data.model.WidgetConfig;
  */
 @Database(
     entities = {WidgetConfig.class, EmojiRule.class},
-    version = 2,
-    exportSchema = false
+    version = 4,
+    exportSchema = true
 )
 @TypeConverters(Converters.class)
 public abstract class AppDatabase extends RoomDatabase {
@@ -28,6 +35,79 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract WidgetConfigDao widgetConfigDao();
     public abstract EmojiRuleDao emojiRuleDao();
 
+    /**
+     * v3: emoji rules store epoch days instead of epoch millis, a daysOfWeek bitmask instead of
+     * a comma-separated string, and a (widgetId, enabled, priority) index. Rows are converted in place.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `emoji_rules_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`widgetId` INTEGER NOT NULL, "
+                    + "`emoji` TEXT, "
+                    + "`ruleType` TEXT, "
+                    + "`startDay` INTEGER, "
+                    + "`endDay` INTEGER, "
+                    + "`dayOfMonth` INTEGER, "
+                    + "`monthOfYear` INTEGER, "
+                    + "`daysOfWeek` INTEGER NOT NULL, "
+                    + "`priority` INTEGER NOT NULL, "
+                    + "`enabled` INTEGER NOT NULL, "
+                    + "`label` TEXT, "
+                    + "`createdAt` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`widgetId`) REFERENCES `widget_configs`(`widgetId`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+
+            // Dates were UTC midnight millis from MaterialDatePicker; floor-divide to epoch days
+            db.execSQL("INSERT INTO `emoji_rules_new` (`id`, `widgetId`, `emoji`, `ruleType`, "
+                    + "`startDay`, `endDay`, `dayOfMonth`, `monthOfYear`, `daysOfWeek`, "
+                    + "`priority`, `enabled`, `label`, `createdAt`) "
+                    + "SELECT `id`, `widgetId`, `emoji`, `ruleType`, "
+                    + floorEpochDay("startDate") + ", " + floorEpochDay("endDate") + ", "
+                    + "`dayOfMonth`, `monthOfYear`, 0, `priority`, `enabled`, `label`, `createdAt` "
+                    + "FROM `emoji_rules`");
+
+            // Day lists need parsing, which SQLite can't do cleanly
+            try (Cursor cursor = db.query("SELECT `id`, `daysOfWeek` FROM `emoji_rules` "
+                    + "WHERE `daysOfWeek` IS NOT NULL AND `daysOfWeek` != ''")) {
+                ContentValues values = new ContentValues();
+                while (cursor.moveToNext()) {
+                    int mask = EmojiRule.parseDaysOfWeek(cursor.getString(1));
+                    if (mask == 0) {
+                        continue;
+                    }
+                    values.put("daysOfWeek", mask);
+                    db.update("emoji_rules_new", SQLiteDatabase.CONFLICT_NONE, values,
+                            "id = ?", new Object[] { cursor.getLong(0) });
+                }
+            }
+
+            db.execSQL("DROP TABLE `emoji_rules`");
+            db.execSQL("ALTER TABLE `emoji_rules_new` RENAME TO `emoji_rules`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_emoji_rules_widgetId_enabled_priority` "
+                    + "ON `emoji_rules` (`widgetId`, `enabled`, `priority`)");
+        }
+
+        private String floorEpochDay(String column) {
+            return "CASE WHEN `" + column + "` IS NULL THEN NULL "
+                    + "WHEN `" + column + "` >= 0 THEN `" + column + "` / 86400000 "
+                    + "ELSE (`" + column + "` - 86399999) / 86400000 END";
+        }
+    };
+
+    /**
+     * v4: a (widgetId, priority DESC, id) index, so keyset pages over a widget's rules read
+     * in index order instead of sorting all of them.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_emoji_rules_widgetId_priority_id` "
+                    + "ON `emoji_rules` (`widgetId` ASC, `priority` DESC, `id` ASC)");
+        }
+    };
+
     /**
      * Get singleton instance of the database.
      */
@@ -40,7 +120,9 @@ public abstract class AppDatabase extends RoomDatabase {
                             AppDatabase.class,
                             DATABASE_NAME
                     )
-                    .fallbackToDestructiveMigration()
+                    .addMigrations(MIGRATION_2_3, MIGRATION_3_4)
+                    // v1 predates any rules worth keeping
+                    .fallbackToDestructiveMigrationFrom(1)
                     .build();
                 }
             }
@@ -22,15 +22,44 @@ public interface EmojiRuleDao {
     @Query("SELECT * FROM emoji_rules WHERE widgetId = :widgetId ORDER BY priority DESC")
     List<EmojiRule> getAllRulesForWidget(int widgetId);
 
+    /**
+     * Enabled rules of several widgets, grouped by widget and in priority order within each.
+     */
+    @Query("SELECT * FROM emoji_rules WHERE widgetId IN (:widgetIds) AND enabled = 1 "
+            + "ORDER BY widgetId, priority DESC")
+    List<EmojiRule> getRulesForWidgets(List<Integer> widgetIds);
+
+    // Keyset pages over all rules of a widget, ordered (priority DESC, id ASC)
+
+    @Query("SELECT * FROM emoji_rules WHERE widgetId = :widgetId ORDER BY priority DESC, id ASC LIMIT :limit")
+    List<EmojiRule> getFirstRulesPage(int widgetId, int limit);
+
+    @Query("SELECT * FROM emoji_rules WHERE widgetId = :widgetId "
+            + "AND (priority < :priority OR (priority = :priority AND id > :id)) "
+            + "ORDER BY priority DESC, id ASC LIMIT :limit")
+    List<EmojiRule> getRulesPageAfter(int widgetId, int priority, long id, int limit);
+
+    // Returned in reverse display order (nearest row first)
+    @Query("SELECT * FROM emoji_rules WHERE widgetId = :widgetId "
+            + "AND (priority > :priority OR (priority = :priority AND id < :id)) "
+            + "ORDER BY priority ASC, id DESC LIMIT :limit")
+    List<EmojiRule> getRulesPageBefore(int widgetId, int priority, long id, int limit);
+
     @Query("SELECT * FROM emoji_rules WHERE id = :id")
     EmojiRule getRuleById(long id);
 
     @Query("SELECT COUNT(*) FROM emoji_rules WHERE widgetId = :widgetId")
     int getRuleCount(int widgetId);
 
+    @Query("SELECT widgetId, COUNT(*) AS count FROM emoji_rules GROUP BY widgetId")
+    List<WidgetRuleCount> getRuleCounts();
+
     @Insert
     long insertRule(EmojiRule rule);
 
+    @Insert
+    List<Long> insertRules(List<EmojiRule> rules);
+
     @Update
     void updateRule(EmojiRule rule);
 
@@ -48,4 +77,12 @@ public interface EmojiRuleDao {
 
     @Query("UPDATE emoji_rules SET enabled = :enabled WHERE id = :id")
     void setEnabled(long id, boolean enabled);
+
+    /**
+     * Number of rules stored for one widget.
+     */
+    class WidgetRuleCount {
+        public int widgetId;
+        public int count;
+    }
 }
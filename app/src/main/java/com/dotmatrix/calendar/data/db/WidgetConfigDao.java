@@ -29,6 +29,9 @@ public interface WidgetConfigDao {
     @Query("SELECT * FROM widget_configs WHERE widgetId = :widgetId")
     WidgetConfig getConfig(int widgetId);
 
+    @Query("SELECT * FROM widget_configs WHERE widgetId IN (:widgetIds)")
+    List<WidgetConfig> getConfigs(List<Integer> widgetIds);
+
     @Query("SELECT * FROM widget_configs")
     List<WidgetConfig> getAllConfigs();
 
@@ -38,6 +41,13 @@ public interface WidgetConfigDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void saveConfig(WidgetConfig config);
 
+    /**
+     * Save several configurations at once.
+     * Room wraps list inserts in a single transaction.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void saveConfigs(List<WidgetConfig> configs);
+
     @Update
     void updateConfig(WidgetConfig config);
 
@@ -0,0 +1,260 @@
+package com.dotmatrix.calendar.data.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Pull parser for iCalendar (RFC 5545) streams.
+ * Reads one unfolded content line at a time and hands out VEVENTs one by one,
+ * so memory use is bounded by a single event regardless of file size.
+ *
+ * Only the properties needed for emoji rules are kept: SUMMARY, DTSTART, DTEND and RRULE.
+ */
+class IcsEventReader {
+
+    // Longer content lines (e.g. embedded attachments) are truncated, never buffered whole
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    private final BufferedReader reader;
+    private final ZoneId localZone;
+    private final StringBuilder line = new StringBuilder();
+    private String lookahead;
+    private boolean eof;
+
+    /**
+     * One VEVENT. Dates are in the device's zone; {@link #end} is inclusive.
+     */
+    static class Event {
+        String summary;
+        LocalDate start;
+        LocalDate end;
+        String rrule;
+
+        void reset() {
+            summary = null;
+            start = null;
+            end = null;
+            rrule = null;
+        }
+    }
+
+    IcsEventReader(Reader source, ZoneId localZone) {
+        this.reader = source instanceof BufferedReader
+                ? (BufferedReader) source : new BufferedReader(source);
+        this.localZone = localZone;
+    }
+
+    /**
+     * Read the next VEVENT into {@code event}.
+     *
+     * @return false at end of stream
+     */
+    boolean next(Event event) throws IOException {
+        event.reset();
+        boolean inEvent = false;
+        int nestedDepth = 0; // VALARM etc. inside the event
+        boolean endExclusive = false;
+        boolean endIsMidnight = false;
+
+        String contentLine;
+        while ((contentLine = readContentLine()) != null) {
+            int colon = findValueSeparator(contentLine);
+            if (colon < 0) {
+                continue;
+            }
+            String nameAndParams = contentLine.substring(0, colon);
+            String value = contentLine.substring(colon + 1);
+            int semicolon = nameAndParams.indexOf(';');
+            String name = (semicolon < 0 ? nameAndParams : nameAndParams.substring(0, semicolon))
+                    .toUpperCase(java.util.Locale.ROOT);
+            String params = semicolon < 0 ? "" : nameAndParams.substring(semicolon + 1);
+
+            if (!inEvent) {
+                if (name.equals("BEGIN") && value.equalsIgnoreCase("VEVENT")) {
+                    inEvent = true;
+                }
+                continue;
+            }
+
+            if (name.equals("BEGIN")) {
+                nestedDepth++;
+                continue;
+            }
+            if (name.equals("END")) {
+                if (nestedDepth > 0) {
+                    nestedDepth--;
+                    continue;
+                }
+                if (event.start == null) {
+                    // Malformed event; keep looking
+                    event.reset();
+                    inEvent = false;
+                    continue;
+                }
+                event.end = resolveEnd(event.start, event.end, endExclusive, endIsMidnight);
+                return true;
+            }
+            if (nestedDepth > 0) {
+                continue;
+            }
+
+            switch (name) {
+                case "SUMMARY":
+                    event.summary = unescapeText(value);
+                    break;
+                case "DTSTART":
+                    event.start = parseDate(value, params, localZone);
+                    break;
+                case "DTEND":
+                    event.end = parseDate(value, params, localZone);
+                    // All-day ends are exclusive; timed ends at 00:00 also end the day before
+                    endExclusive = isDateOnly(value, params);
+                    endIsMidnight = !endExclusive && value.trim().length() >= 15
+                            && value.trim().substring(9, 15).equals("000000");
+                    break;
+                case "RRULE":
+                    event.rrule = value.trim();
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private static LocalDate resolveEnd(LocalDate start, LocalDate end, boolean exclusive, boolean midnight) {
+        if (end == null) {
+            return start;
+        }
+        if ((exclusive || midnight) && end.isAfter(start)) {
+            end = end.minusDays(1);
+        }
+        return end.isBefore(start) ? start : end;
+    }
+
+    // ==================== Content lines ====================
+
+    /**
+     * Next logical line with RFC 5545 folding undone, or null at end of stream.
+     */
+    private String readContentLine() throws IOException {
+        if (eof && lookahead == null) {
+            return null;
+        }
+        line.setLength(0);
+        if (lookahead != null) {
+            line.append(lookahead);
+            lookahead = null;
+        }
+
+        String physical;
+        while ((physical = reader.readLine()) != null) {
+            if (!physical.isEmpty() && (physical.charAt(0) == ' ' || physical.charAt(0) == '\t')) {
+                if (line.length() < MAX_LINE_LENGTH) {
+                    line.append(physical, 1, Math.min(physical.length(), 1 + MAX_LINE_LENGTH - line.length()));
+                }
+                continue;
+            }
+            if (line.length() == 0) {
+                line.append(physical, 0, Math.min(physical.length(), MAX_LINE_LENGTH));
+                continue;
+            }
+            lookahead = physical.length() > MAX_LINE_LENGTH ? physical.substring(0, MAX_LINE_LENGTH) : physical;
+            return line.toString();
+        }
+
+        eof = true;
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    /**
+     * Index of the colon separating name/params from the value, skipping quoted params.
+     */
+    private static int findValueSeparator(String contentLine) {
+        boolean quoted = false;
+        for (int i = 0; i < contentLine.length(); i++) {
+            char c = contentLine.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ':' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ==================== Values ====================
+
+    private static boolean isDateOnly(String value, String params) {
+        return params.toUpperCase(java.util.Locale.ROOT).contains("VALUE=DATE")
+                && !params.toUpperCase(java.util.Locale.ROOT).contains("VALUE=DATE-TIME")
+                || value.trim().length() == 8;
+    }
+
+    /**
+     * Parse a DATE or DATE-TIME value to the local calendar day it falls on.
+     * Returns null for values that can't be parsed.
+     */
+    static LocalDate parseDate(String value, String params, ZoneId localZone) {
+        String text = value.trim();
+        try {
+            if (text.length() == 8) {
+                return LocalDate.parse(text, DATE);
+            }
+            if (text.length() < 15) {
+                return null;
+            }
+            LocalDateTime dateTime = LocalDateTime.parse(text.substring(0, 15), DATE_TIME);
+            if (text.endsWith("Z")) {
+                return dateTime.atOffset(ZoneOffset.UTC).atZoneSameInstant(localZone).toLocalDate();
+            }
+            String tzid = param(params, "TZID");
+            if (tzid != null) {
+                return dateTime.atZone(ZoneId.of(tzid)).withZoneSameInstant(localZone).toLocalDate();
+            }
+            // Floating time
+            return dateTime.toLocalDate();
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static String param(String params, String key) {
+        for (String param : params.split(";")) {
+            int eq = param.indexOf('=');
+            if (eq > 0 && param.substring(0, eq).equalsIgnoreCase(key)) {
+                String value = param.substring(eq + 1);
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String unescapeText(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,367 @@
+package com.dotmatrix.calendar.data.importer;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.repository.WidgetRepository;
+import com.dotmatrix.calendar.widget.provider.BaseWidgetProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports calendar files (.ics) as emoji rules for a widget.
+ *
+ * The file is streamed event by event and rules are inserted in fixed-size batches,
+ * so a file with thousands of events never sits in memory at once. The widget is
+ * re-rendered once, after the last batch.
+ *
+ * Mapping:
+ * - Single events become SPECIFIC_DATE, multi-day events DATE_RANGE.
+ * - Open-ended DAILY/WEEKLY rules become RECURRING_DAY, MONTHLY/YEARLY become RECURRING_DATE,
+ *   applying from DTSTART on.
+ * - Bounded rules (COUNT/UNTIL) and intervals > 1 are expanded into dated rules.
+ * - Recurrences the rule types can't express (BYSETPOS, "2nd Sunday" etc.) import their first occurrence.
+ *
+ * Blocking; call from a background thread.
+ */
+public class IcsRuleImporter {
+
+    private static final String TAG = "IcsRuleImporter";
+
+    // Rows per @Insert(List) transaction
+    private static final int BATCH_SIZE = 500;
+    // Upper bound on rows generated from one expanded recurrence
+    private static final int MAX_OCCURRENCES_PER_EVENT = 366;
+    private static final int MAX_LABEL_LENGTH = 100;
+    private static final int ALL_DAYS = 0x7F;
+
+    private static final String[] RRULE_DAYS = {"SU", "MO", "TU", "WE", "TH", "FR", "SA"};
+
+    public interface ProgressListener {
+        void onProgress(int eventsRead, int rulesImported);
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static class Result {
+        public final int eventsRead;
+        public final int rulesImported;
+        public final int eventsSkipped;
+        public final boolean limitReached; // Stopped at the free tier rule limit
+
+        Result(int eventsRead, int rulesImported, int eventsSkipped, boolean limitReached) {
+            this.eventsRead = eventsRead;
+            this.rulesImported = rulesImported;
+            this.eventsSkipped = eventsSkipped;
+            this.limitReached = limitReached;
+        }
+    }
+
+    private final Context context;
+    private final WidgetRepository repository;
+    private final ZoneId zone;
+
+    public IcsRuleImporter(Context context) {
+        this.context = context.getApplicationContext();
+        this.repository = WidgetRepository.getInstance(context);
+        this.zone = ZoneId.systemDefault();
+    }
+
+    /**
+     * Import all events of an .ics stream as rules showing {@code emoji}.
+     * The widget's config must already be saved (rules reference it).
+     * The stream is closed when done.
+     */
+    public Result importRules(InputStream in, int widgetId, String emoji,
+                              ProgressListener listener) throws IOException {
+        long allowance = repository.isProUnlocked()
+                ? Long.MAX_VALUE
+                : Math.max(0, repository.getFreeEmojiRuleLimit() - repository.getEmojiRuleCount(widgetId));
+
+        List<EmojiRule> batch = new ArrayList<>(BATCH_SIZE);
+        IcsEventReader.Event event = new IcsEventReader.Event();
+        int eventsRead = 0;
+        int eventsSkipped = 0;
+        int imported = 0;
+        boolean limitReached = false;
+
+        try (InputStreamReader source = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            IcsEventReader reader = new IcsEventReader(source, zone);
+            while (reader.next(event)) {
+                eventsRead++;
+                int before = batch.size();
+                toRules(event, zone, widgetId, emoji, batch);
+                if (batch.size() == before) {
+                    eventsSkipped++;
+                }
+
+                if (imported + batch.size() > allowance) {
+                    // Trim to what the free tier still allows
+                    while (imported + batch.size() > allowance) {
+                        batch.remove(batch.size() - 1);
+                    }
+                    limitReached = true;
+                    break;
+                }
+                if (batch.size() >= BATCH_SIZE) {
+                    imported += flush(batch);
+                    if (listener != null) {
+                        listener.onProgress(eventsRead, imported);
+                    }
+                }
+            }
+            imported += flush(batch);
+        } finally {
+            if (imported > 0) {
+                BaseWidgetProvider.forceUpdate(context, widgetId);
+            }
+        }
+
+        if (listener != null) {
+            listener.onProgress(eventsRead, imported);
+        }
+        Log.d(TAG, "Imported " + imported + " rules from " + eventsRead + " events ("
+                + eventsSkipped + " skipped) for widget " + widgetId);
+        return new Result(eventsRead, imported, eventsSkipped, limitReached);
+    }
+
+    private int flush(List<EmojiRule> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        repository.addEmojiRulesSync(batch);
+        int count = batch.size();
+        batch.clear();
+        return count;
+    }
+
+    // ==================== Event mapping ====================
+
+    /**
+     * Append the rules for one event to {@code out}.
+     *
+     * @param zone Zone that UNTIL values in UTC are converted to, as the reader does for dates
+     */
+    static void toRules(IcsEventReader.Event event, ZoneId zone, int widgetId, String emoji,
+                        List<EmojiRule> out) {
+        String label = event.summary;
+        if (label != null && label.length() > MAX_LABEL_LENGTH) {
+            label = label.substring(0, MAX_LABEL_LENGTH);
+        }
+
+        Map<String, String> rrule = parseRRule(event.rrule);
+        if (rrule == null) {
+            out.add(dated(widgetId, emoji, event.start, event.end, label));
+            return;
+        }
+
+        String freq = rrule.get("FREQ");
+        int interval = parseInt(rrule.get("INTERVAL"), 1);
+        boolean bounded = rrule.containsKey("COUNT") || rrule.containsKey("UNTIL");
+        int dayMask = parseByDay(rrule.get("BYDAY"));
+        boolean supported = freq != null && interval >= 1 && dayMask >= 0 && onlyKeys(rrule,
+                "FREQ", "INTERVAL", "COUNT", "UNTIL", "BYDAY", "BYMONTHDAY", "BYMONTH", "WKST");
+        // BYDAY only narrows daily/weekly rules here; monthly/yearly BYDAY needs ordinals
+        if (supported && dayMask != 0 && !freq.equals("DAILY") && !freq.equals("WEEKLY")) {
+            supported = false;
+        }
+        int monthDay = parseInt(rrule.get("BYMONTHDAY"), event.start.getDayOfMonth());
+        int month = parseInt(rrule.get("BYMONTH"), event.start.getMonthValue());
+        if (monthDay < 1 || month < 1 || month > 12 || parseInt(rrule.get("COUNT"), 1) < 1) {
+            supported = false;
+        }
+
+        if (!supported) {
+            out.add(dated(widgetId, emoji, event.start, event.end, label));
+            return;
+        }
+
+        boolean singleDay = event.end.equals(event.start);
+        if (!bounded && interval == 1 && singleDay) {
+            EmojiRule recurring = null;
+            switch (freq) {
+                case "DAILY":
+                    recurring = EmojiRule.createRecurringDay(widgetId, emoji,
+                            dayMask != 0 ? dayMask : ALL_DAYS, label);
+                    break;
+                case "WEEKLY":
+                    recurring = EmojiRule.createRecurringDay(widgetId, emoji,
+                            dayMask != 0 ? dayMask : bit(event.start.getDayOfWeek()), label);
+                    break;
+                case "MONTHLY":
+                    recurring = EmojiRule.createRecurringDate(widgetId, emoji, monthDay, null, label);
+                    break;
+                case "YEARLY":
+                    recurring = EmojiRule.createRecurringDate(widgetId, emoji, monthDay, month, label);
+                    break;
+            }
+            if (recurring != null) {
+                // Nothing before DTSTART
+                recurring.setStartDay((int) event.start.toEpochDay());
+                out.add(recurring);
+                return;
+            }
+        }
+
+        expand(event, zone, freq, interval, dayMask, monthDay, month, rrule, widgetId, emoji, label, out);
+    }
+
+    /**
+     * Expand a recurrence into dated rules, starting at DTSTART.
+     */
+    private static void expand(IcsEventReader.Event event, ZoneId zone, String freq, int interval,
+                               int dayMask, int monthDay, int month, Map<String, String> rrule,
+                               int widgetId, String emoji, String label, List<EmojiRule> out) {
+        int count = parseInt(rrule.get("COUNT"), MAX_OCCURRENCES_PER_EVENT);
+        int limit = Math.min(count, MAX_OCCURRENCES_PER_EVENT);
+        LocalDate until = rrule.containsKey("UNTIL")
+                ? IcsEventReader.parseDate(rrule.get("UNTIL"), "", zone) : null;
+        long span = ChronoUnit.DAYS.between(event.start, event.end);
+        LocalDate start = event.start;
+
+        int produced = 0;
+        for (int step = 0; produced < limit && step < MAX_OCCURRENCES_PER_EVENT * 7; step++) {
+            LocalDate anchor;
+            switch (freq) {
+                case "DAILY":
+                    anchor = start.plusDays((long) step * interval);
+                    if (dayMask != 0 && (dayMask & bit(anchor.getDayOfWeek())) == 0) {
+                        continue;
+                    }
+                    break;
+                case "WEEKLY":
+                    if (dayMask == 0) {
+                        anchor = start.plusWeeks((long) step * interval);
+                        break;
+                    }
+                    // One step per day so BYDAY picks every matching day of the active weeks
+                    anchor = start.plusDays(step);
+                    long week = ChronoUnit.WEEKS.between(start, anchor);
+                    if (week % interval != 0 || (dayMask & bit(anchor.getDayOfWeek())) == 0) {
+                        continue;
+                    }
+                    break;
+                case "MONTHLY":
+                    anchor = start.withDayOfMonth(1).plusMonths((long) step * interval);
+                    if (monthDay > anchor.lengthOfMonth()) {
+                        continue; // RFC 5545: months without that day are skipped
+                    }
+                    anchor = anchor.withDayOfMonth(monthDay);
+                    break;
+                case "YEARLY":
+                    anchor = start.withDayOfYear(1).plusYears((long) step * interval).withMonth(month);
+                    if (monthDay > anchor.lengthOfMonth()) {
+                        continue;
+                    }
+                    anchor = anchor.withDayOfMonth(monthDay);
+                    break;
+                default:
+                    out.add(dated(widgetId, emoji, event.start, event.end, label));
+                    return;
+            }
+
+            if (anchor.isBefore(start)) {
+                continue;
+            }
+            if (until != null && anchor.isAfter(until)) {
+                break;
+            }
+            out.add(dated(widgetId, emoji, anchor, anchor.plusDays(span), label));
+            produced++;
+        }
+    }
+
+    private static EmojiRule dated(int widgetId, String emoji, LocalDate start, LocalDate end, String label) {
+        if (end == null || !end.isAfter(start)) {
+            return EmojiRule.createSpecificDate(widgetId, emoji, (int) start.toEpochDay(), label);
+        }
+        return EmojiRule.createDateRange(widgetId, emoji, (int) start.toEpochDay(), (int) end.toEpochDay(), label);
+    }
+
+    // ==================== RRULE parsing ====================
+
+    private static Map<String, String> parseRRule(String rrule) {
+        if (rrule == null || rrule.isEmpty()) {
+            return null;
+        }
+        Map<String, String> parts = new HashMap<>();
+        for (String part : rrule.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq > 0) {
+                parts.put(part.substring(0, eq).toUpperCase(Locale.ROOT),
+                        part.substring(eq + 1).toUpperCase(Locale.ROOT));
+            }
+        }
+        return parts;
+    }
+
+    private static boolean onlyKeys(Map<String, String> rrule, String... allowed) {
+        outer:
+        for (String key : rrule.keySet()) {
+            for (String ok : allowed) {
+                if (ok.equals(key)) {
+                    continue outer;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * BYDAY ("MO,WE,FR") as a bitmask with bit 0 = Sunday. 0 if absent,
+     * -1 if it uses ordinals ("2SU") or unknown days.
+     */
+    private static int parseByDay(String byDay) {
+        if (byDay == null || byDay.isEmpty()) {
+            return 0;
+        }
+        int mask = 0;
+        for (String day : byDay.split(",")) {
+            int index = -1;
+            for (int i = 0; i < RRULE_DAYS.length; i++) {
+                if (RRULE_DAYS[i].equals(day.trim())) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return -1;
+            }
+            mask |= 1 << index;
+        }
+        return mask;
+    }
+
+    private static int bit(DayOfWeek dayOfWeek) {
+        return 1 << (dayOfWeek.getValue() % 7);
+    }
+
+    /**
+     * Parse a single integer value; lists ("1,15") and garbage return -1 so they count as unsupported.
+     */
+    private static int parseInt(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
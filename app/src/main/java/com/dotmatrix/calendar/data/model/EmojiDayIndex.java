@@ -0,0 +1,64 @@
+package com.dotmatrix.calendar.data.model;
+
+import java.util.List;
+
+/**
+ * A widget's enabled emoji rules resolved for one calendar year.
+ * Each day of the year maps to a slot in an interned emoji table, with rule priority
+ * already resolved, so renderers do a single array lookup per cell instead of
+ * evaluating every rule for every day.
+ *
+ * Immutable snapshot produced by {@link EmojiRuleEngine}.
+ */
+public final class EmojiDayIndex {
+
+    private static final short NO_EMOJI = 0;
+    private static final String[] NO_EMOJIS = new String[0];
+
+    private final int year;
+
+    // Day-of-year (0-based) -> 1-based index into emojis, NO_EMOJI if nothing matches
+    private final short[] slots;
+    private final String[] emojis;
+
+    EmojiDayIndex(int year, short[] slots, String[] emojis) {
+        this.year = year;
+        this.slots = slots;
+        this.emojis = emojis;
+    }
+
+    static EmojiDayIndex empty(int year) {
+        return new EmojiDayIndex(year, null, NO_EMOJIS);
+    }
+
+    /**
+     * Get the resolved index of a widget's rules for a year.
+     *
+     * @param rules Enabled rules of the widget
+     */
+    public static EmojiDayIndex obtain(int widgetId, List<EmojiRule> rules, int year) {
+        if (rules == null || rules.isEmpty()) {
+            return empty(year);
+        }
+        return EmojiRuleEngine.forWidget(widgetId, rules).indexFor(year);
+    }
+
+    /**
+     * Emoji for a 1-based day of this index's year, or null.
+     */
+    public String emojiAt(int dayOfYear) {
+        if (slots == null) {
+            return null;
+        }
+        short slot = slots[dayOfYear - 1];
+        return slot != NO_EMOJI ? emojis[slot - 1] : null;
+    }
+
+    public boolean isEmpty() {
+        return slots == null;
+    }
+
+    public int getYear() {
+        return year;
+    }
+}
@@ -17,7 +17,13 @@ import androidx.room.PrimaryKey;
         childColumns = "widgetId",
         onDelete = ForeignKey.CASCADE
     ),
-    indices = @Index(value = "widgetId")
+    indices = {
+        // Matches the rule loading query: WHERE widgetId = ? AND enabled = 1 ORDER BY priority DESC
+        @Index(value = {"widgetId", "enabled", "priority"}),
+        // Matches the rule pages: WHERE widgetId = ? ORDER BY priority DESC, id ASC
+        @Index(value = {"widgetId", "priority", "id"},
+                orders = {Index.Order.ASC, Index.Order.DESC, Index.Order.ASC})
+    }
 )
 public class EmojiRule {
 
@@ -32,18 +38,18 @@ public class EmojiRule {
     // Rule type determines how to match dates
     private RuleType ruleType;
 
-    // For SPECIFIC_DATE and DATE_RANGE
-    // Stored as epoch milliseconds
-    private Long startDate;
-    private Long endDate;
+    // For SPECIFIC_DATE and DATE_RANGE; for recurring rules the first day they apply, null = always
+    // Stored as epoch days (LocalDate.toEpochDay)
+    private Integer startDay;
+    private Integer endDay;
 
     // For RECURRING_DATE (e.g., every 15th of the month)
     private Integer dayOfMonth;     // 1-31
     private Integer monthOfYear;    // 1-12, null = every month
 
     // For RECURRING_DAY (e.g., every Monday)
-    // Comma-separated: "1,3,5" for Mon/Wed/Fri
-    private String daysOfWeek;
+    // Bitmask, bit 0 = Sunday ... bit 6 = Saturday: 0b0101010 for Mon/Wed/Fri
+    private int daysOfWeek;
 
     // Priority for rule ordering (higher = checked first)
     private int priority;
@@ -65,17 +71,17 @@ public class EmojiRule {
     }
 
     // Factory methods for different rule types
-    public static EmojiRule createSpecificDate(int widgetId, String emoji, long date, String label) {
+    public static EmojiRule createSpecificDate(int widgetId, String emoji, int epochDay, String label) {
         EmojiRule rule = new EmojiRule();
         rule.setWidgetId(widgetId);
         rule.setEmoji(emoji);
         rule.setRuleType(RuleType.SPECIFIC_DATE);
-        rule.setStartDate(date);
+        rule.setStartDay(epochDay);
         rule.setLabel(label);
         return rule;
     }
 
-    public static EmojiRule createRecurringDay(int widgetId, String emoji, String daysOfWeek, String label) {
+    public static EmojiRule createRecurringDay(int widgetId, String emoji, int daysOfWeek, String label) {
         EmojiRule rule = new EmojiRule();
         rule.setWidgetId(widgetId);
         rule.setEmoji(emoji);
@@ -96,13 +102,13 @@ public class EmojiRule {
         return rule;
     }
 
-    public static EmojiRule createDateRange(int widgetId, String emoji, long startDate, long endDate, String label) {
+    public static EmojiRule createDateRange(int widgetId, String emoji, int startEpochDay, int endEpochDay, String label) {
         EmojiRule rule = new EmojiRule();
         rule.setWidgetId(widgetId);
         rule.setEmoji(emoji);
         rule.setRuleType(RuleType.DATE_RANGE);
-        rule.setStartDate(startDate);
-        rule.setEndDate(endDate);
+        rule.setStartDay(startEpochDay);
+        rule.setEndDay(endEpochDay);
         rule.setLabel(label);
         return rule;
     }
@@ -140,20 +146,20 @@ public class EmojiRule {
         this.ruleType = ruleType;
     }
 
-    public Long getStartDate() {
-        return startDate;
+    public Integer getStartDay() {
+        return startDay;
     }
 
-    public void setStartDate(Long startDate) {
-        this.startDate = startDate;
+    public void setStartDay(Integer startDay) {
+        this.startDay = startDay;
     }
 
-    public Long getEndDate() {
-        return endDate;
+    public Integer getEndDay() {
+        return endDay;
     }
 
-    public void setEndDate(Long endDate) {
-        this.endDate = endDate;
+    public void setEndDay(Integer endDay) {
+        this.endDay = endDay;
     }
 
     public Integer getDayOfMonth() {
@@ -172,11 +178,11 @@ public class EmojiRule {
         this.monthOfYear = monthOfYear;
     }
 
-    public String getDaysOfWeek() {
+    public int getDaysOfWeek() {
         return daysOfWeek;
     }
 
-    public void setDaysOfWeek(String daysOfWeek) {
+    public void setDaysOfWeek(int daysOfWeek) {
         this.daysOfWeek = daysOfWeek;
     }
 
@@ -240,26 +246,46 @@ public class EmojiRule {
     }
 
     private String formatDaysOfWeek() {
+        StringBuilder sb = new StringBuilder();
+        String[] dayNames = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+        for (int day = 0; day < 7; day++) {
+            if ((daysOfWeek & (1 << day)) != 0) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(dayNames[day]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Convert a UTC timestamp (as returned by MaterialDatePicker) to an epoch day.
+     */
+    public static int toEpochDay(long utcMillis) {
+        return (int) Math.floorDiv(utcMillis, 24L * 60 * 60 * 1000);
+    }
+
+    /**
+     * Parse the legacy comma-separated form ("1,3,5", 0 = Sunday) into a bitmask.
+     * Invalid entries are skipped.
+     */
+    public static int parseDaysOfWeek(String daysOfWeek) {
         if (daysOfWeek == null || daysOfWeek.isEmpty()) {
-            return "";
+            return 0;
         }
-        try {
-            String[] days = daysOfWeek.split(",");
-            StringBuilder sb = new StringBuilder();
-            String[] dayNames = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
-            for (int i = 0; i < days.length; i++) {
-                int dayNum = Integer.parseInt(days[i].trim());
-                if (dayNum >= 0 && dayNum < 7) {
-                    if (sb.length() > 0) {
-                        sb.append(", ");
-                    }
-                    sb.append(dayNames[dayNum]);
+        int mask = 0;
+        for (String day : daysOfWeek.split(",")) {
+            try {
+                int value = Integer.parseInt(day.trim());
+                if (value >= 0 && value < 7) {
+                    mask |= 1 << value;
                 }
+            } catch (NumberFormatException ignored) {
+                // Invalid day format in daysOfWeek string
             }
-            return sb.toString();
-        } catch (NumberFormatException e) {
-            return "Invalid days";
         }
+        return mask;
     }
 
     private String getMonthName(int month) {
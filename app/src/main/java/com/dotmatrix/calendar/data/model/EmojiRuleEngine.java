@@ -0,0 +1,550 @@
+package com.dotmatrix.calendar.data.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexed emoji rules for one widget.
+ *
+ * - SPECIFIC_DATE / DATE_RANGE rules are bucketed by the years they touch, so a year only
+ *   looks at the rules that overlap it (very long ranges are kept in one shared list).
+ * - RECURRING_DAY rules sit in per-weekday candidate lists, RECURRING_DATE rules in
+ *   per-(month, day) lists, each ordered best first. A day takes the best one that has
+ *   reached its start day, if it has one.
+ *
+ * Years are materialized on demand as {@link EmojiDayIndex} snapshots. Adding, updating or
+ * removing a rule patches only the affected days of already materialized years.
+ *
+ * Priority: higher priority wins; on a tie the older rule (lower id) wins.
+ * Engines are cached per widget and kept in step with the repository through
+ * {@link #ruleAdded}, {@link #ruleUpdated} and {@link #ruleRemoved}.
+ *
+ * Threading: the static cache is guarded by the class lock, an engine's index by the
+ * engine itself. The hooks take the class lock first, then the engine's, so renders on
+ * any thread can call {@link #indexFor} while the repository patches rules.
+ */
+public final class EmojiRuleEngine {
+
+    // Ranges spanning more years than this are not bucketed per year
+    private static final int MAX_BUCKETED_YEARS = 4;
+    private static final int EVERY_MONTH = 0;
+
+    private static final Map<Integer, EmojiRuleEngine> ENGINES = new HashMap<>();
+    private static final Map<Integer, Integer> RULES_VERSIONS = new HashMap<>();
+
+    /**
+     * A compiled rule. Dated rules use startDay/endDay (inclusive epoch days),
+     * recurring rules daysMask or monthOfYear/dayOfMonth.
+     */
+    private static final class Entry {
+        final long id;
+        final int priority;
+        final RuleType type;
+        final short emoji;
+        final int startDay;
+        final int endDay;
+        final int daysMask;
+        final int monthOfYear; // EVERY_MONTH or 1-12
+        final int dayOfMonth;
+
+        Entry(EmojiRule rule, long id, short emoji) {
+            this.id = id;
+            this.priority = rule.getPriority();
+            this.type = rule.getRuleType();
+            this.emoji = emoji;
+            boolean recurring = type == RuleType.RECURRING_DAY || type == RuleType.RECURRING_DATE;
+            // Recurring rules without a start day have always applied
+            int start = rule.getStartDay() != null ? rule.getStartDay() : recurring ? Integer.MIN_VALUE : 0;
+            int end = rule.getEndDay() != null ? rule.getEndDay() : start;
+            this.startDay = start;
+            this.endDay = type == RuleType.DATE_RANGE ? end : start;
+            this.daysMask = rule.getDaysOfWeek() & 0x7F;
+            this.monthOfYear = rule.getMonthOfYear() != null ? rule.getMonthOfYear() : EVERY_MONTH;
+            this.dayOfMonth = rule.getDayOfMonth() != null ? rule.getDayOfMonth() : 0;
+        }
+
+        boolean covers(int epochDay) {
+            return epochDay >= startDay && epochDay <= endDay;
+        }
+    }
+
+    /**
+     * Materialized year: winning entry per day, plus the published snapshot.
+     */
+    private static final class YearTable {
+        final int year;
+        final long firstEpochDay;
+        final int daysInYear;
+        final int firstDayOfWeek; // 0 = Sunday
+        final Entry[] owners = new Entry[366];
+        EmojiDayIndex published;
+
+        YearTable(int year) {
+            LocalDate firstDay = LocalDate.of(year, 1, 1);
+            this.year = year;
+            this.firstEpochDay = firstDay.toEpochDay();
+            this.daysInYear = firstDay.lengthOfYear();
+            this.firstDayOfWeek = firstDay.getDayOfWeek().getValue() % 7;
+        }
+    }
+
+    private int version;
+    private int ruleCount;
+    private long nextSyntheticId = -1; // For rules that were never inserted (id 0)
+
+    private final Map<Long, Entry> entriesById = new HashMap<>();
+    private final Map<Integer, List<Entry>> datedByYear = new HashMap<>();
+    private final List<Entry> longRanges = new ArrayList<>();
+    @SuppressWarnings("unchecked")
+    private final List<Entry>[] byWeekday = new List[7];
+    // Index: monthOfYear * 32 + dayOfMonth, monthOfYear 0 = every month
+    @SuppressWarnings("unchecked")
+    private final List<Entry>[] byMonthDay = new List[13 * 32];
+
+    private final List<String> emojis = new ArrayList<>();
+    private final Map<String, Short> internedEmojis = new HashMap<>();
+    private String[] emojiSnapshot = new String[0];
+
+    private final Map<Integer, YearTable> years = new HashMap<>();
+
+    private EmojiRuleEngine(List<EmojiRule> rules, int version) {
+        this.version = version;
+        if (rules != null) {
+            for (EmojiRule rule : rules) {
+                insert(rule);
+            }
+        }
+    }
+
+    // ==================== Widget cache ====================
+
+    /**
+     * Get the engine for a widget, rebuilding it if the cached one is missing or was
+     * built from an older rules version.
+     *
+     * @param rules Enabled rules of the widget
+     */
+    public static synchronized EmojiRuleEngine forWidget(int widgetId, List<EmojiRule> rules) {
+        int version = rulesVersion(widgetId);
+        int ruleCount = rules != null ? rules.size() : 0;
+
+        EmojiRuleEngine engine = ENGINES.get(widgetId);
+        // The rule count guards against callers that changed rules without going through the repository
+        if (engine == null || engine.version != version || engine.ruleCount != ruleCount) {
+            engine = new EmojiRuleEngine(rules, version);
+            ENGINES.put(widgetId, engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Patch a widget's engine with a newly inserted rule.
+     */
+    public static synchronized void ruleAdded(EmojiRule rule) {
+        EmojiRuleEngine engine = bumpVersion(rule.getWidgetId());
+        if (engine != null && rule.isEnabled()) {
+            synchronized (engine) {
+                engine.add(rule);
+            }
+        }
+    }
+
+    /**
+     * Patch a widget's engine with an edited (or enabled/disabled) rule.
+     */
+    public static synchronized void ruleUpdated(EmojiRule rule) {
+        EmojiRuleEngine engine = bumpVersion(rule.getWidgetId());
+        if (engine != null) {
+            synchronized (engine) {
+                engine.remove(rule.getId());
+                if (rule.isEnabled()) {
+                    engine.add(rule);
+                }
+            }
+        }
+    }
+
+    /**
+     * Patch whichever engine holds a deleted rule.
+     */
+    public static synchronized void ruleRemoved(long ruleId) {
+        for (Map.Entry<Integer, EmojiRuleEngine> cached : ENGINES.entrySet()) {
+            EmojiRuleEngine engine = cached.getValue();
+            synchronized (engine) {
+                if (!engine.entriesById.containsKey(ruleId)) {
+                    continue;
+                }
+            }
+            engine = bumpVersion(cached.getKey());
+            if (engine != null) {
+                synchronized (engine) {
+                    engine.remove(ruleId);
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * Drop a widget's engine (bulk changes, widget deleted). It is rebuilt on next use.
+     */
+    public static synchronized void invalidate(int widgetId) {
+        RULES_VERSIONS.merge(widgetId, 1, Integer::sum);
+        ENGINES.remove(widgetId);
+    }
+
+    /**
+     * Bump the widget's rules version, keeping its engine only if it was current.
+     */
+    private static EmojiRuleEngine bumpVersion(int widgetId) {
+        int oldVersion = rulesVersion(widgetId);
+        int newVersion = RULES_VERSIONS.merge(widgetId, 1, Integer::sum);
+        EmojiRuleEngine engine = ENGINES.get(widgetId);
+        if (engine == null || engine.version != oldVersion) {
+            ENGINES.remove(widgetId);
+            return null;
+        }
+        engine.version = newVersion;
+        return engine;
+    }
+
+    private static int rulesVersion(int widgetId) {
+        Integer version = RULES_VERSIONS.get(widgetId);
+        return version != null ? version : 0;
+    }
+
+    // ==================== Queries ====================
+
+    /**
+     * Day table for a year, materializing it on first use.
+     */
+    public synchronized EmojiDayIndex indexFor(int year) {
+        if (entriesById.isEmpty()) {
+            return EmojiDayIndex.empty(year);
+        }
+        YearTable table = years.get(year);
+        if (table == null) {
+            table = new YearTable(year);
+            materialize(table);
+            publish(table);
+            years.put(year, table);
+        }
+        return table.published;
+    }
+
+    /**
+     * Resolve every day of a new year table: sweep each overlapping dated rule over its days,
+     * then let the recurring candidates compete per day.
+     */
+    private void materialize(YearTable table) {
+        Entry[] owners = table.owners;
+        List<Entry> dated = datedByYear.get(table.year);
+        if (dated != null) {
+            sweep(table, dated);
+        }
+        sweep(table, longRanges);
+
+        LocalDate date = LocalDate.ofEpochDay(table.firstEpochDay);
+        for (int day = 0; day < table.daysInYear; day++, date = date.plusDays(1)) {
+            int epochDay = (int) (table.firstEpochDay + day);
+            Entry best = owners[day];
+            best = better(firstStarted(byWeekday[(table.firstDayOfWeek + day) % 7], epochDay), best);
+            best = better(firstStarted(byMonthDay[EVERY_MONTH * 32 + date.getDayOfMonth()], epochDay), best);
+            best = better(firstStarted(byMonthDay[date.getMonthValue() * 32 + date.getDayOfMonth()], epochDay), best);
+            owners[day] = best;
+        }
+    }
+
+    private void sweep(YearTable table, List<Entry> entries) {
+        Entry[] owners = table.owners;
+        for (int i = 0, n = entries.size(); i < n; i++) {
+            Entry entry = entries.get(i);
+            long first = Math.max(entry.startDay - table.firstEpochDay, 0);
+            long last = Math.min(entry.endDay - table.firstEpochDay, table.daysInYear - 1);
+            for (int day = (int) first; day <= last; day++) {
+                if (beats(entry, owners[day])) {
+                    owners[day] = entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * Winning entry for a 0-based day of a year, or null.
+     */
+    private Entry resolve(YearTable table, int day) {
+        int epochDay = (int) (table.firstEpochDay + day);
+        Entry best = null;
+
+        List<Entry> dated = datedByYear.get(table.year);
+        if (dated != null) {
+            for (int i = 0, n = dated.size(); i < n; i++) {
+                Entry entry = dated.get(i);
+                if (entry.covers(epochDay) && beats(entry, best)) {
+                    best = entry;
+                }
+            }
+        }
+        for (int i = 0, n = longRanges.size(); i < n; i++) {
+            Entry entry = longRanges.get(i);
+            if (entry.covers(epochDay) && beats(entry, best)) {
+                best = entry;
+            }
+        }
+
+        // Candidate lists are kept best first, so the first one that has started wins
+        best = better(firstStarted(byWeekday[(table.firstDayOfWeek + day) % 7], epochDay), best);
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        best = better(firstStarted(byMonthDay[EVERY_MONTH * 32 + date.getDayOfMonth()], epochDay), best);
+        best = better(firstStarted(byMonthDay[date.getMonthValue() * 32 + date.getDayOfMonth()], epochDay), best);
+        return best;
+    }
+
+    private void publish(YearTable table) {
+        short[] slots = new short[366];
+        for (int day = 0; day < table.daysInYear; day++) {
+            Entry owner = table.owners[day];
+            slots[day] = owner != null ? owner.emoji : 0;
+        }
+        table.published = new EmojiDayIndex(table.year, slots, emojiSnapshot);
+    }
+
+    // ==================== Incremental updates ====================
+
+    private void add(EmojiRule rule) {
+        Entry entry = insert(rule);
+        if (entry == null) {
+            return;
+        }
+        for (YearTable table : years.values()) {
+            boolean changed = false;
+            for (int day = firstAffectedDay(table, entry); day >= 0 && day < table.daysInYear;
+                 day = nextAffectedDay(table, entry, day)) {
+                if (beats(entry, table.owners[day])) {
+                    table.owners[day] = entry;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                publish(table);
+            }
+        }
+    }
+
+    private void remove(long ruleId) {
+        Entry entry = entriesById.remove(ruleId);
+        if (entry == null) {
+            return;
+        }
+        ruleCount--;
+        unlink(entry);
+        for (YearTable table : years.values()) {
+            boolean changed = false;
+            for (int day = firstAffectedDay(table, entry); day >= 0 && day < table.daysInYear;
+                 day = nextAffectedDay(table, entry, day)) {
+                if (table.owners[day] == entry) {
+                    table.owners[day] = resolve(table, day);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                publish(table);
+            }
+        }
+    }
+
+    /**
+     * Compile and link a rule. Returns null for rules that can never match (still counted).
+     */
+    private Entry insert(EmojiRule rule) {
+        ruleCount++;
+        if (!rule.isEnabled() || rule.getRuleType() == null
+                || rule.getEmoji() == null || rule.getEmoji().isEmpty()) {
+            return null;
+        }
+
+        long id = rule.getId() != 0 ? rule.getId() : nextSyntheticId--;
+        Entry entry = new Entry(rule, id, intern(rule.getEmoji()));
+        entriesById.put(id, entry);
+
+        switch (entry.type) {
+            case SPECIFIC_DATE:
+            case DATE_RANGE:
+                if (rule.getStartDay() == null || entry.endDay < entry.startDay) {
+                    break;
+                }
+                int firstYear = LocalDate.ofEpochDay(entry.startDay).getYear();
+                int lastYear = LocalDate.ofEpochDay(entry.endDay).getYear();
+                if (lastYear - firstYear >= MAX_BUCKETED_YEARS) {
+                    longRanges.add(entry);
+                } else {
+                    for (int year = firstYear; year <= lastYear; year++) {
+                        datedByYear.computeIfAbsent(year, y -> new ArrayList<>()).add(entry);
+                    }
+                }
+                break;
+
+            case RECURRING_DAY:
+                for (int dayOfWeek = 0; dayOfWeek < 7; dayOfWeek++) {
+                    if ((entry.daysMask & (1 << dayOfWeek)) != 0) {
+                        byWeekday[dayOfWeek] = insertRanked(byWeekday[dayOfWeek], entry);
+                    }
+                }
+                break;
+
+            case RECURRING_DATE:
+                if (entry.dayOfMonth >= 1 && entry.dayOfMonth <= 31
+                        && entry.monthOfYear >= EVERY_MONTH && entry.monthOfYear <= 12) {
+                    int key = entry.monthOfYear * 32 + entry.dayOfMonth;
+                    byMonthDay[key] = insertRanked(byMonthDay[key], entry);
+                }
+                break;
+        }
+        return entry;
+    }
+
+    private void unlink(Entry entry) {
+        switch (entry.type) {
+            case SPECIFIC_DATE:
+            case DATE_RANGE:
+                if (!longRanges.remove(entry)) {
+                    int firstYear = LocalDate.ofEpochDay(entry.startDay).getYear();
+                    int lastYear = LocalDate.ofEpochDay(entry.endDay).getYear();
+                    for (int year = firstYear; year <= lastYear; year++) {
+                        List<Entry> bucket = datedByYear.get(year);
+                        if (bucket != null) {
+                            bucket.remove(entry);
+                        }
+                    }
+                }
+                break;
+
+            case RECURRING_DAY:
+                for (List<Entry> candidates : byWeekday) {
+                    if (candidates != null) {
+                        candidates.remove(entry);
+                    }
+                }
+                break;
+
+            case RECURRING_DATE:
+                List<Entry> candidates = byMonthDay[entry.monthOfYear * 32 + entry.dayOfMonth];
+                if (candidates != null) {
+                    candidates.remove(entry);
+                }
+                break;
+        }
+    }
+
+    /**
+     * First 0-based day of the year a rule can match, or -1 if none.
+     */
+    private static int firstAffectedDay(YearTable table, Entry entry) {
+        return nextAffectedDay(table, entry, -1);
+    }
+
+    /**
+     * Next 0-based day after {@code day} a rule can match, or -1 when there are no more.
+     */
+    private static int nextAffectedDay(YearTable table, Entry entry, int day) {
+        switch (entry.type) {
+            case SPECIFIC_DATE:
+            case DATE_RANGE: {
+                long first = Math.max(entry.startDay - table.firstEpochDay, day + 1);
+                long last = Math.min(entry.endDay - table.firstEpochDay, table.daysInYear - 1);
+                return first <= last ? (int) first : -1;
+            }
+            case RECURRING_DAY:
+                for (int next = (int) Math.max(day + 1, entry.startDay - table.firstEpochDay);
+                     next < table.daysInYear; next++) {
+                    if ((entry.daysMask & (1 << ((table.firstDayOfWeek + next) % 7))) != 0) {
+                        return next;
+                    }
+                }
+                return -1;
+            case RECURRING_DATE:
+                for (int month = 1; month <= 12; month++) {
+                    if (entry.monthOfYear != EVERY_MONTH && entry.monthOfYear != month) {
+                        continue;
+                    }
+                    if (entry.dayOfMonth > YearMonth.of(table.year, month).lengthOfMonth()) {
+                        continue;
+                    }
+                    int next = LocalDate.of(table.year, month, entry.dayOfMonth).getDayOfYear() - 1;
+                    if (next > day && table.firstEpochDay + next >= entry.startDay) {
+                        return next;
+                    }
+                }
+                return -1;
+        }
+        return -1;
+    }
+
+    // ==================== Helpers ====================
+
+    private short intern(String emoji) {
+        Short slot = internedEmojis.get(emoji);
+        if (slot == null) {
+            emojis.add(emoji);
+            slot = (short) emojis.size();
+            internedEmojis.put(emoji, slot);
+            emojiSnapshot = emojis.toArray(new String[0]);
+        }
+        return slot;
+    }
+
+    /**
+     * Insert keeping the list best first. Lists are allocated lazily.
+     */
+    private static List<Entry> insertRanked(List<Entry> list, Entry entry) {
+        if (list == null) {
+            list = new ArrayList<>(2);
+        }
+        int index = 0;
+        while (index < list.size() && !beats(entry, list.get(index))) {
+            index++;
+        }
+        list.add(index, entry);
+        return list;
+    }
+
+    /**
+     * Best recurring entry of a candidate list that has started by the day, or null.
+     */
+    private static Entry firstStarted(List<Entry> list, int epochDay) {
+        if (list == null) {
+            return null;
+        }
+        for (int i = 0, n = list.size(); i < n; i++) {
+            Entry entry = list.get(i);
+            if (entry.startDay <= epochDay) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static Entry better(Entry a, Entry b) {
+        return beats(a, b) ? a : b;
+    }
+
+    /**
+     * Whether {@code a} wins over {@code b}: higher priority, then older (lower id).
+     */
+    private static boolean beats(Entry a, Entry b) {
+        if (a == null) {
+            return false;
+        }
+        if (b == null) {
+            return true;
+        }
+        if (a.priority != b.priority) {
+            return a.priority > b.priority;
+        }
+        return a.id < b.id;
+    }
+}
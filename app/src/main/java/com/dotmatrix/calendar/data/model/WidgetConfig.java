@@ -312,6 +312,43 @@ public class WidgetConfig {
         this.widgetName = widgetName;
     }
 
+    /**
+     * Create an independent copy of this config.
+     * Used to hand out private versions so shared instances are never mutated.
+     */
+    public WidgetConfig copy() {
+        WidgetConfig copy = new WidgetConfig();
+        copy.widgetId = widgetId;
+        copy.widgetType = widgetType;
+        copy.themeId = themeId;
+        copy.dotSize = dotSize;
+        copy.dotSpacing = dotSpacing;
+        copy.dotOpacity = dotOpacity;
+        copy.dotShape = dotShape;
+        copy.dotStyle = dotStyle;
+        copy.dotColor = dotColor;
+        copy.backgroundColor = backgroundColor;
+        copy.accentColor = accentColor;
+        copy.backgroundOpacity = backgroundOpacity;
+        copy.hasBlur = hasBlur;
+        copy.blurRadius = blurRadius;
+        copy.showMonthLabel = showMonthLabel;
+        copy.showWeekHeaders = showWeekHeaders;
+        copy.weekStartDay = weekStartDay;
+        copy.progressMode = progressMode;
+        copy.progressStyle = progressStyle;
+        copy.chameleonModeEnabled = chameleonModeEnabled;
+        copy.chameleonIntensity = chameleonIntensity;
+        copy.chameleonAnimationEnabled = chameleonAnimationEnabled;
+        copy.lastWallpaperHash = lastWallpaperHash;
+        copy.isChameleonGenerated = isChameleonGenerated;
+        copy.sourceWallpaperHash = sourceWallpaperHash;
+        copy.createdAt = createdAt;
+        copy.lastUpdated = lastUpdated;
+        copy.widgetName = widgetName;
+        return copy;
+    }
+
     /**
      * Mark config as updated with current timestamp.
      */
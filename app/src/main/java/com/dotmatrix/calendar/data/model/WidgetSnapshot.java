@@ -0,0 +1,212 @@
+package com.dotmatrix.calendar.data.model;
+
+import java.util.Objects;
+
+/**
+ * Immutable, versioned view of a widget's configuration used for rendering.
+ * The repository publishes a new snapshot per save, so render threads read it without
+ * locks while editors work on their own {@link WidgetConfig} copies.
+ *
+ * Colors resolved from the system (dynamic themes) are a separate derived layer on top
+ * of the stored values and are never written back into the config.
+ */
+public final class WidgetSnapshot {
+
+    /** Version of snapshots that were never published by the repository (e.g. editor previews). */
+    public static final long DRAFT_VERSION = 0L;
+
+    // Private copy, never handed out
+    private final WidgetConfig values;
+    private final long version;
+
+    // Derived layer, null when the theme uses the stored colors
+    private final ResolvedColors resolved;
+    private final int fingerprint;
+
+    private WidgetSnapshot(WidgetConfig values, long version, ResolvedColors resolved) {
+        this.values = values;
+        this.version = version;
+        this.resolved = resolved;
+        this.fingerprint = computeFingerprint();
+    }
+
+    /**
+     * Snapshot the current state of a config. Later changes to the config are not seen.
+     */
+    public static WidgetSnapshot of(WidgetConfig config, long version) {
+        return new WidgetSnapshot(config.copy(), version, null);
+    }
+
+    /**
+     * Snapshot a config that is not published, such as the editor's working copy.
+     */
+    public static WidgetSnapshot draft(WidgetConfig config) {
+        return of(config, DRAFT_VERSION);
+    }
+
+    /**
+     * Same snapshot with the given resolved colors layered on top.
+     */
+    public WidgetSnapshot withResolvedColors(int backgroundColor, int dotColor, int accentColor) {
+        ResolvedColors colors = new ResolvedColors(backgroundColor, dotColor, accentColor);
+        if (colors.equals(resolved)) {
+            return this;
+        }
+        return new WidgetSnapshot(values, version, colors);
+    }
+
+    /**
+     * Whether the theme takes its colors from the system rather than the stored values.
+     */
+    public boolean usesDynamicColors() {
+        String themeId = values.getThemeId();
+        return "dynamic_harmony".equals(themeId) || "chameleon_pro".equals(themeId);
+    }
+
+    /**
+     * Whether the colors follow the wallpaper (dynamic themes, Chameleon Mode), so the
+     * widget is recolored without any change to its shape.
+     */
+    public boolean followsWallpaper() {
+        return usesDynamicColors() || values.isChameleonModeEnabled();
+    }
+
+    /**
+     * Mutable copy of the stored values, for editing. Save it to publish a new version.
+     */
+    public WidgetConfig toConfig() {
+        return values.copy();
+    }
+
+    /**
+     * Mutable copy with resolved colors applied, private to a single render.
+     */
+    public WidgetConfig toRenderConfig() {
+        WidgetConfig config = values.copy();
+        if (resolved != null) {
+            config.setBackgroundColor(resolved.backgroundColor);
+            config.setDotColor(resolved.dotColor);
+            config.setAccentColor(resolved.accentColor);
+        }
+        return config;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getWidgetId() {
+        return values.getWidgetId();
+    }
+
+    public WidgetType getWidgetType() {
+        return values.getWidgetType();
+    }
+
+    public String getThemeId() {
+        return values.getThemeId();
+    }
+
+    public int getBackgroundColor() {
+        return resolved != null ? resolved.backgroundColor : values.getBackgroundColor();
+    }
+
+    public int getDotColor() {
+        return resolved != null ? resolved.dotColor : values.getDotColor();
+    }
+
+    public int getAccentColor() {
+        return resolved != null ? resolved.accentColor : values.getAccentColor();
+    }
+
+    /**
+     * Hash of everything that affects the rendered output, including resolved colors.
+     * Equal across snapshots of equal settings, so it is safe to use in cache keys.
+     */
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Hash of what the background layer depends on. Wallpaper-based (glass) backgrounds
+     * additionally depend on the current wallpaper.
+     */
+    public int backgroundFingerprint() {
+        return Objects.hash(
+                values.getThemeId(),
+                getBackgroundColor(),
+                values.getBackgroundOpacity(),
+                values.isHasBlur(),
+                values.getBlurRadius());
+    }
+
+    /**
+     * Hash of everything but colors and opacities: snapshots that differ only in what
+     * {@code ConfigDiff} calls a recolor share it, and so can share a palette-indexed frame.
+     */
+    public int shapeFingerprint() {
+        return Objects.hash(
+                values.getWidgetType(),
+                values.getThemeId(),
+                values.getDotSize(),
+                values.getDotSpacing(),
+                values.getDotShape(),
+                values.getDotStyle(),
+                values.isHasBlur(),
+                values.getBlurRadius(),
+                values.isShowMonthLabel(),
+                values.isShowWeekHeaders(),
+                values.getWeekStartDay(),
+                values.getProgressMode(),
+                values.getProgressStyle());
+    }
+
+    private int computeFingerprint() {
+        return Objects.hash(
+                values.getWidgetType(),
+                values.getThemeId(),
+                values.getDotSize(),
+                values.getDotSpacing(),
+                values.getDotOpacity(),
+                values.getDotShape(),
+                values.getDotStyle(),
+                getDotColor(),
+                getBackgroundColor(),
+                getAccentColor(),
+                values.getBackgroundOpacity(),
+                values.isHasBlur(),
+                values.getBlurRadius(),
+                values.isShowMonthLabel(),
+                values.isShowWeekHeaders(),
+                values.getWeekStartDay(),
+                values.getProgressMode(),
+                values.getProgressStyle());
+    }
+
+    private static final class ResolvedColors {
+        final int backgroundColor;
+        final int dotColor;
+        final int accentColor;
+
+        ResolvedColors(int backgroundColor, int dotColor, int accentColor) {
+            this.backgroundColor = backgroundColor;
+            this.dotColor = dotColor;
+            this.accentColor = accentColor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ResolvedColors)) return false;
+            ResolvedColors other = (ResolvedColors) o;
+            return backgroundColor == other.backgroundColor
+                    && dotColor == other.dotColor
+                    && accentColor == other.accentColor;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(backgroundColor, dotColor, accentColor);
+        }
+    }
+}
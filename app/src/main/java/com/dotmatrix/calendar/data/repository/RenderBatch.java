@@ -0,0 +1,35 @@
+package com.dotmatrix.calendar.data.repository;
+
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.model.WidgetSnapshot;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything needed to render a set of widgets, loaded together by
+ * {@link WidgetRepository#loadRenderBatch}.
+ */
+public final class RenderBatch {
+
+    private final Map<Integer, WidgetSnapshot> snapshots;
+    private final Map<Integer, List<EmojiRule>> rules;
+
+    RenderBatch(Map<Integer, WidgetSnapshot> snapshots, Map<Integer, List<EmojiRule>> rules) {
+        this.snapshots = snapshots;
+        this.rules = rules;
+    }
+
+    public WidgetSnapshot getSnapshot(int widgetId) {
+        return snapshots.get(widgetId);
+    }
+
+    /**
+     * Enabled rules of a widget in priority order, empty if it has none.
+     */
+    public List<EmojiRule> getRules(int widgetId) {
+        List<EmojiRule> widgetRules = rules.get(widgetId);
+        return widgetRules != null ? widgetRules : Collections.emptyList();
+    }
+}
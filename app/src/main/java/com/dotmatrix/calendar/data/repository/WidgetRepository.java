@@ -5,18 +5,29 @@ import android.content.Context;
 import com.dotmatrix.calendar.data.db.AppDatabase;
 import com.dotmatrix.calendar.data.db.EmojiRuleDao;
 import com.dotmatrix.calendar.data.db.WidgetConfigDao;
+import com.dotmatrix.calendar.data.model.EmojiRuleEngine;
 import com.dotmatrix.calendar.data.model.EmojiRule;
 import com.dotmatrix.calendar.data.model.WidgetConfig;
+import com.dotmatrix.calendar.data.model.WidgetSnapshot;
 import com.dotmatrix.calendar.data.model.WidgetType;
 import com.dotmatrix.calendar.data.preferences.AppPreferences;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Repository for widget data operations.
  * Provides a clean API for data access, abstracting the data sources.
+ *
+ * Once {@link #warmUp()} has loaded every config, config reads are served from memory and
+ * async saves are written behind in debounced batches; {@link #flushPendingWrites()} is the
+ * barrier that gets them to disk.
  */
 public class WidgetRepository {
 
@@ -25,21 +36,46 @@ public class WidgetRepository {
     private final WidgetConfigDao configDao;
     private final EmojiRuleDao emojiRuleDao;
     private final AppPreferences preferences;
-    private final ExecutorService executor;
+    private final AppDatabase db;
+    private final ScheduledExecutorService executor;
 
     // Free tier limits
     private static final int FREE_WIDGET_LIMIT = 1;
     private static final int FREE_EMOJI_RULE_LIMIT = 3;
 
-    // Memory cache for rapid access (e.g. during resize)
-    private final java.util.Map<Integer, WidgetConfig> configCache = new java.util.concurrent.ConcurrentHashMap<>();
+    // Published snapshots for rapid, lock-free access (e.g. during resize).
+    // Never mutated; every save replaces the entry with a newer version.
+    private final java.util.Map<Integer, WidgetSnapshot> snapshots = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.concurrent.atomic.AtomicLong snapshotVersions = new java.util.concurrent.atomic.AtomicLong();
+
+    // Set once every stored config has been loaded into snapshots; a miss then means "no config"
+    private volatile boolean warm;
+    private Future<?> warmUpTask;
+    // Rule counts per widget, filled by warmUp and on demand
+    private final Map<Integer, Integer> ruleCounts = new ConcurrentHashMap<>();
+
+    // Write-behind: latest unsaved snapshot per widget, flushed in one transaction
+    // once saves have been idle for WRITE_BEHIND_DELAY_MS, or at the latest after MAX_WRITE_DELAY_MS
+    private static final long WRITE_BEHIND_DELAY_MS = 500;
+    private static final long MAX_WRITE_DELAY_MS = 5000;
+    private final Map<Integer, WidgetSnapshot> pendingWrites = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private java.util.concurrent.ScheduledFuture<?> scheduledFlush;
+    private long firstPendingAt;
 
     private WidgetRepository(Context context) {
-        AppDatabase db = AppDatabase.getInstance(context);
+        this(AppDatabase.getInstance(context), AppPreferences.getInstance(context));
+    }
+
+    /**
+     * For tests: a repository over the given database instead of the app's.
+     */
+    WidgetRepository(AppDatabase db, AppPreferences preferences) {
+        this.db = db;
         this.configDao = db.widgetConfigDao();
         this.emojiRuleDao = db.emojiRuleDao();
-        this.preferences = AppPreferences.getInstance(context);
-        this.executor = Executors.newSingleThreadExecutor();
+        this.preferences = preferences;
+        this.executor = Executors.newSingleThreadScheduledExecutor();
     }
 
     /**
@@ -56,37 +92,133 @@ public class WidgetRepository {
         return INSTANCE;
     }
 
+    // ==================== Warm Store ====================
+
+    /**
+     * Load all widget configs and rule counts into memory on the background executor.
+     * Called once at process start; reads fall back to the database until it completes.
+     */
+    public synchronized void warmUp() {
+        if (warmUpTask != null) return;
+        warmUpTask = executor.submit(() -> db.runInTransaction(() -> {
+            for (WidgetConfig config : configDao.getAllConfigs()) {
+                publishLoaded(config);
+            }
+            for (EmojiRuleDao.WidgetRuleCount count : emojiRuleDao.getRuleCounts()) {
+                ruleCounts.putIfAbsent(count.widgetId, count.count);
+            }
+            warm = true;
+        }));
+    }
+
+    /**
+     * Write all pending config saves now.
+     * Returns immediately; the future completes once they are on disk. Call when the
+     * process may be about to die (backgrounded, trimmed), or wait on it before reading
+     * the database directly.
+     */
+    public Future<?> flushPendingWrites() {
+        return executor.submit(this::writePendingNow);
+    }
+
+    private WidgetSnapshot queueWrite(WidgetConfig config) {
+        config.markUpdated();
+        WidgetSnapshot snapshot = publish(config);
+        // Queue the published version, not the caller's instance, which may keep changing
+        pendingWrites.put(config.getWidgetId(), snapshot);
+        scheduleFlush();
+        return snapshot;
+    }
+
+    /**
+     * Debounce the flush: every save pushes it back, so a burst (e.g. a slider drag)
+     * coalesces into one write, capped so a continuous stream still gets persisted.
+     */
+    private synchronized void scheduleFlush() {
+        long now = android.os.SystemClock.uptimeMillis();
+        if (scheduledFlush != null && !scheduledFlush.isDone()) {
+            if (now + WRITE_BEHIND_DELAY_MS - firstPendingAt > MAX_WRITE_DELAY_MS) {
+                // Waited long enough; let the scheduled flush fire
+                return;
+            }
+            scheduledFlush.cancel(false);
+        } else {
+            firstPendingAt = now;
+        }
+        scheduledFlush = executor.schedule(this::writePendingNow,
+                WRITE_BEHIND_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void writePendingNow() {
+        synchronized (writeLock) {
+            if (pendingWrites.isEmpty()) return;
+            List<WidgetConfig> batch = new ArrayList<>(pendingWrites.size());
+            for (Integer widgetId : new ArrayList<>(pendingWrites.keySet())) {
+                WidgetSnapshot pending = pendingWrites.remove(widgetId);
+                // Deleted since, or already superseded by a synchronous save
+                if (pending != null && snapshots.get(widgetId) == pending) {
+                    batch.add(pending.toConfig());
+                }
+            }
+            if (!batch.isEmpty()) {
+                configDao.saveConfigs(batch);
+            }
+        }
+    }
+
+    /**
+     * Make sure a widget's config row exists before writing rows that reference it.
+     */
+    private void ensurePersisted(int widgetId) {
+        if (!pendingWrites.containsKey(widgetId)) return;
+        synchronized (writeLock) {
+            WidgetSnapshot pending = pendingWrites.remove(widgetId);
+            if (pending != null && snapshots.get(widgetId) == pending) {
+                configDao.saveConfig(pending.toConfig());
+            }
+        }
+    }
+
     // ==================== Widget Config Operations ====================
 
     /**
      * Get widget configuration by ID.
+     * Returns a private copy; save it to publish the changes.
      */
     public WidgetConfig getWidgetConfig(int widgetId) {
-        if (configCache.containsKey(widgetId)) {
-            return configCache.get(widgetId);
+        WidgetSnapshot snapshot = getWidgetSnapshot(widgetId);
+        return snapshot != null ? snapshot.toConfig() : null;
+    }
+
+    /**
+     * Get the published snapshot of a widget's configuration, or null if none exists.
+     */
+    public WidgetSnapshot getWidgetSnapshot(int widgetId) {
+        WidgetSnapshot snapshot = snapshots.get(widgetId);
+        if (snapshot != null || warm) {
+            return snapshot;
         }
         WidgetConfig config = configDao.getConfig(widgetId);
-        if (config != null) configCache.put(widgetId, config);
-        return config;
+        return config != null ? publishLoaded(config) : null;
     }
 
     /**
      * Get all widget configurations.
      */
     public List<WidgetConfig> getAllWidgetConfigs() {
+        if (warm) {
+            return copiesOf(snapshots.values(), false);
+        }
         return configDao.getAllConfigs();
     }
 
     /**
      * Save widget configuration.
-     */
-    /**
-     * Save widget configuration.
+     * Published immediately; the write is debounced, coalesced per widget (only the latest
+     * version is written) and batched with other pending saves.
      */
     public void saveWidgetConfig(WidgetConfig config) {
-        config.markUpdated();
-        configCache.put(config.getWidgetId(), config);
-        executor.execute(() -> configDao.saveConfig(config));
+        queueWrite(config);
     }
 
     /**
@@ -94,55 +226,198 @@ public class WidgetRepository {
      */
     public void saveWidgetConfigSync(WidgetConfig config) {
         config.markUpdated();
-        configCache.put(config.getWidgetId(), config);
-        configDao.saveConfig(config);
+        synchronized (writeLock) {
+            WidgetSnapshot snapshot = publish(config);
+            configDao.saveConfig(config);
+            dropSupersededWrite(snapshot);
+        }
+    }
+
+    /**
+     * Save several widget configurations synchronously in one transaction.
+     * Used by fan-out paths (e.g. Chameleon) that touch many widgets at once.
+     */
+    public void saveWidgetConfigsSync(List<WidgetConfig> configs) {
+        if (configs.isEmpty()) return;
+        synchronized (writeLock) {
+            List<WidgetSnapshot> published = new ArrayList<>(configs.size());
+            for (WidgetConfig config : configs) {
+                config.markUpdated();
+                published.add(publish(config));
+            }
+            configDao.saveConfigs(configs);
+            for (WidgetSnapshot snapshot : published) {
+                dropSupersededWrite(snapshot);
+            }
+        }
     }
 
     /**
      * Delete widget configuration.
      */
     public void deleteWidgetConfig(int widgetId) {
-        configCache.remove(widgetId);
-        executor.execute(() -> configDao.deleteById(widgetId));
+        snapshots.remove(widgetId);
+        pendingWrites.remove(widgetId);
+        ruleCounts.remove(widgetId);
+        EmojiRuleEngine.invalidate(widgetId);
+        executor.execute(() -> {
+            configDao.deleteById(widgetId);
+            // A warm-up that read the row before the delete may have republished it
+            snapshots.remove(widgetId);
+        });
     }
 
     /**
      * Get or create widget configuration.
+     * Returns a private copy; save it to publish the changes.
      */
     public WidgetConfig getOrCreateConfig(int widgetId, WidgetType type) {
-        // Check cache first
-        if (configCache.containsKey(widgetId)) {
-            return configCache.get(widgetId);
+        return getOrCreateSnapshot(widgetId, type).toConfig();
+    }
+
+    /**
+     * Get the published snapshot of a widget, creating and storing a default config if needed.
+     */
+    public WidgetSnapshot getOrCreateSnapshot(int widgetId, WidgetType type) {
+        WidgetSnapshot snapshot = getWidgetSnapshot(widgetId);
+        if (snapshot != null) {
+            return snapshot;
         }
-        
-        WidgetConfig config = configDao.getConfig(widgetId);
-        if (config == null) {
-            config = WidgetConfig.createDefault(widgetId, type);
-            // Sync save
-            configDao.saveConfig(config);
+        WidgetConfig config = WidgetConfig.createDefault(widgetId, type);
+        if (warm) {
+            // Off the render path: the new row is written behind
+            return queueWrite(config);
+        }
+        // Sync save
+        configDao.saveConfig(config);
+        return publishLoaded(config);
+    }
+
+    /**
+     * Load configs and enabled rules for several widgets of one type, creating default
+     * configs where missing. At most one config query (none once warm) and one rule query,
+     * instead of two round-trips per widget.
+     */
+    public RenderBatch loadRenderBatch(int[] widgetIds, WidgetType type) {
+        Map<Integer, WidgetSnapshot> batchSnapshots = new java.util.HashMap<>();
+        List<Integer> ids = new ArrayList<>(widgetIds.length);
+        List<Integer> missing = new ArrayList<>();
+        for (int widgetId : widgetIds) {
+            ids.add(widgetId);
+            WidgetSnapshot snapshot = snapshots.get(widgetId);
+            if (snapshot != null) {
+                batchSnapshots.put(widgetId, snapshot);
+            } else {
+                missing.add(widgetId);
+            }
+        }
+
+        if (!missing.isEmpty() && !warm) {
+            for (WidgetConfig config : configDao.getConfigs(missing)) {
+                batchSnapshots.put(config.getWidgetId(), publishLoaded(config));
+            }
+        }
+        List<WidgetConfig> created = new ArrayList<>();
+        for (Integer widgetId : missing) {
+            if (!batchSnapshots.containsKey(widgetId)) {
+                created.add(WidgetConfig.createDefault(widgetId, type));
+            }
+        }
+        if (!created.isEmpty()) {
+            if (!warm) {
+                configDao.saveConfigs(created);
+            }
+            for (WidgetConfig config : created) {
+                batchSnapshots.put(config.getWidgetId(), warm ? queueWrite(config) : publishLoaded(config));
+            }
+        }
+
+        Map<Integer, List<EmojiRule>> batchRules = new java.util.HashMap<>();
+        for (EmojiRule rule : emojiRuleDao.getRulesForWidgets(ids)) {
+            List<EmojiRule> widgetRules = batchRules.get(rule.getWidgetId());
+            if (widgetRules == null) {
+                widgetRules = new ArrayList<>();
+                batchRules.put(rule.getWidgetId(), widgetRules);
+            }
+            widgetRules.add(rule);
+        }
+        return new RenderBatch(batchSnapshots, batchRules);
+    }
+
+    /**
+     * Publish a new version of a widget's configuration.
+     * Versions only move forward, so a slower concurrent save can't overwrite a newer one.
+     */
+    private WidgetSnapshot publish(WidgetConfig config) {
+        WidgetSnapshot snapshot = WidgetSnapshot.of(config, snapshotVersions.incrementAndGet());
+        return snapshots.merge(config.getWidgetId(), snapshot,
+                (current, next) -> next.getVersion() > current.getVersion() ? next : current);
+    }
+
+    /**
+     * Publish a config read from the database unless a save got there first.
+     */
+    private WidgetSnapshot publishLoaded(WidgetConfig config) {
+        WidgetSnapshot snapshot = WidgetSnapshot.of(config, snapshotVersions.incrementAndGet());
+        WidgetSnapshot existing = snapshots.putIfAbsent(config.getWidgetId(), snapshot);
+        return existing != null ? existing : snapshot;
+    }
+
+    /**
+     * Forget a queued write that a synchronous save just covered.
+     */
+    private void dropSupersededWrite(WidgetSnapshot written) {
+        pendingWrites.computeIfPresent(written.getWidgetId(),
+                (id, pending) -> pending.getVersion() <= written.getVersion() ? null : pending);
+    }
+
+    private static List<WidgetConfig> copiesOf(java.util.Collection<WidgetSnapshot> source,
+                                               boolean chameleonOnly) {
+        List<WidgetConfig> configs = new ArrayList<>(source.size());
+        for (WidgetSnapshot snapshot : source) {
+            WidgetConfig config = snapshot.toConfig();
+            if (!chameleonOnly || config.isChameleonModeEnabled()) {
+                configs.add(config);
+            }
         }
-        configCache.put(widgetId, config);
-        return config;
+        return configs;
     }
 
     /**
      * Get number of widgets.
      */
     public int getWidgetCount() {
+        if (warm) {
+            return snapshots.size();
+        }
         return configDao.getWidgetCount();
     }
 
     // ==================== Chameleon Mode Operations ====================
 
     public void setChameleonMode(int widgetId, boolean enabled) {
-        executor.execute(() -> configDao.setChameleonMode(widgetId, enabled));
+        executor.execute(() -> {
+            WidgetConfig config = getWidgetConfig(widgetId);
+            if (config == null) return;
+            config.setChameleonModeEnabled(enabled);
+            saveWidgetConfig(config);
+        });
     }
 
     public void setChameleonIntensity(int widgetId, float intensity) {
-        executor.execute(() -> configDao.setChameleonIntensity(widgetId, intensity));
+        executor.execute(() -> {
+            WidgetConfig config = getWidgetConfig(widgetId);
+            if (config == null) return;
+            config.setChameleonIntensity(intensity);
+            saveWidgetConfig(config);
+        });
     }
 
     public List<WidgetConfig> getWidgetsWithChameleonEnabled() {
+        if (warm) {
+            return copiesOf(snapshots.values(), true);
+        }
+        writePendingNow();
         return configDao.getWidgetsWithChameleonEnabled();
     }
 
@@ -162,6 +437,27 @@ public class WidgetRepository {
         return emojiRuleDao.getAllRulesForWidget(widgetId);
     }
 
+    /**
+     * Get the page of a widget's rules (including disabled) following {@code after}
+     * in (priority DESC, id ASC) order; the first page if {@code after} is null.
+     */
+    public List<EmojiRule> getEmojiRulesPageAfter(int widgetId, EmojiRule after, int limit) {
+        if (after == null) {
+            return emojiRuleDao.getFirstRulesPage(widgetId, limit);
+        }
+        return emojiRuleDao.getRulesPageAfter(widgetId, after.getPriority(), after.getId(), limit);
+    }
+
+    /**
+     * Get the page of a widget's rules preceding {@code before}, in display order.
+     */
+    public List<EmojiRule> getEmojiRulesPageBefore(int widgetId, EmojiRule before, int limit) {
+        List<EmojiRule> page = emojiRuleDao.getRulesPageBefore(
+                widgetId, before.getPriority(), before.getId(), limit);
+        java.util.Collections.reverse(page);
+        return page;
+    }
+
     /**
      * Get emoji rule by ID.
      */
@@ -173,14 +469,37 @@ public class WidgetRepository {
      * Add emoji rule.
      */
     public long addEmojiRule(EmojiRule rule) {
-        return emojiRuleDao.insertRule(rule);
+        ensurePersisted(rule.getWidgetId());
+        long id = emojiRuleDao.insertRule(rule);
+        rule.setId(id);
+        ruleCounts.computeIfPresent(rule.getWidgetId(), (widgetId, count) -> count + 1);
+        EmojiRuleEngine.ruleAdded(rule);
+        return id;
+    }
+
+    /**
+     * Add several emoji rules synchronously in one transaction (e.g. calendar imports).
+     */
+    public void addEmojiRulesSync(List<EmojiRule> rules) {
+        if (rules.isEmpty()) return;
+        ensurePersisted(rules.get(0).getWidgetId());
+        List<Long> ids = emojiRuleDao.insertRules(rules);
+        ruleCounts.computeIfPresent(rules.get(0).getWidgetId(), (widgetId, count) -> count + rules.size());
+        for (int i = 0; i < rules.size(); i++) {
+            EmojiRule rule = rules.get(i);
+            rule.setId(ids.get(i));
+            EmojiRuleEngine.ruleAdded(rule);
+        }
     }
 
     /**
      * Update emoji rule.
      */
     public void updateEmojiRule(EmojiRule rule) {
-        executor.execute(() -> emojiRuleDao.updateRule(rule));
+        executor.execute(() -> {
+            emojiRuleDao.updateRule(rule);
+            EmojiRuleEngine.ruleUpdated(rule);
+        });
     }
 
     /**
@@ -188,13 +507,22 @@ public class WidgetRepository {
      */
     public void deleteEmojiRule(long ruleId) {
         emojiRuleDao.deleteById(ruleId);
+        // The owning widget isn't known here; recount on demand
+        ruleCounts.clear();
+        EmojiRuleEngine.ruleRemoved(ruleId);
     }
 
     /**
      * Get emoji rule count for a widget.
      */
     public int getEmojiRuleCount(int widgetId) {
-        return emojiRuleDao.getRuleCount(widgetId);
+        Integer cached = ruleCounts.get(widgetId);
+        if (cached != null) {
+            return cached;
+        }
+        int count = emojiRuleDao.getRuleCount(widgetId);
+        ruleCounts.put(widgetId, count);
+        return count;
     }
 
     // ==================== Pro Features ====================
@@ -4,6 +4,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 
+import com.dotmatrix.calendar.widget.cache.PublishedFrames;
 import com.dotmatrix.calendar.widget.provider.MonthViewWidgetProvider;
 import com.dotmatrix.calendar.widget.provider.WeekViewWidgetProvider;
 import com.dotmatrix.calendar.widget.provider.YearViewWidgetProvider;
@@ -23,6 +24,9 @@ public class BootCompletedReceiver extends BroadcastReceiver {
             // Reschedule midnight update alarm
             MidnightUpdateReceiver.scheduleMidnightUpdate(context);
             
+            // The host lost its views with the reboot; push every widget again
+            PublishedFrames.getInstance(context).forgetAll();
+            
             // Update all widgets (date may have changed during shutdown)
             YearViewWidgetProvider.updateAllWidgets(context, YearViewWidgetProvider.class);
             MonthViewWidgetProvider.updateAllWidgets(context, MonthViewWidgetProvider.class);
@@ -7,13 +7,17 @@ import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.widget.RadioGroup;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.dotmatrix.calendar.R;
+import com.dotmatrix.calendar.data.importer.IcsRuleImporter;
 import com.dotmatrix.calendar.data.model.DotShape;
 import com.dotmatrix.calendar.data.model.EmojiRule;
 import com.dotmatrix.calendar.data.model.ThemePreset;
 import com.dotmatrix.calendar.data.model.WidgetConfig;
+import com.dotmatrix.calendar.data.model.WidgetSnapshot;
 import com.dotmatrix.calendar.data.model.WidgetType;
 import com.dotmatrix.calendar.data.repository.WidgetRepository;
 import com.dotmatrix.calendar.databinding.ActivityWidgetEditorBinding;
@@ -21,7 +25,15 @@ import com.dotmatrix.calendar.ui.theme.ThemeGalleryActivity;
 import com.dotmatrix.calendar.widget.provider.MonthViewWidgetProvider;
 import com.dotmatrix.calendar.widget.provider.YearViewWidgetProvider;
 import com.dotmatrix.calendar.widget.provider.BaseWidgetProvider;
+import com.dotmatrix.calendar.widget.provider.SizePrewarmer;
+import com.dotmatrix.calendar.widget.cache.ConfigDiff;
+import com.dotmatrix.calendar.widget.cache.InvalidationScope;
+import com.dotmatrix.calendar.widget.cache.PublishedFrames;
+import com.dotmatrix.calendar.widget.cache.WidgetBitmapCache;
+import com.dotmatrix.calendar.widget.cache.WidgetFrameStore;
 import com.dotmatrix.calendar.widget.renderer.DotRenderer;
+import com.dotmatrix.calendar.widget.renderer.NativeGridRenderer;
+import com.dotmatrix.calendar.widget.renderer.IndexedFrame;
 import android.widget.TextView;
 import android.view.View;
 import com.google.android.material.slider.Slider;
@@ -30,6 +42,7 @@ import com.dotmatrix.calendar.util.DynamicColorHelper;
 import com.dotmatrix.calendar.ui.emoji.AddRuleSheet;
 import com.dotmatrix.calendar.ui.emoji.EmojiRuleAdapter;
 import com.dotmatrix.calendar.chameleon.WallpaperColorExtractor;
+import com.dotmatrix.calendar.chameleon.WidgetTransitions;
 import com.dotmatrix.calendar.chameleon.AdaptiveThemeGenerator;
 import com.dotmatrix.calendar.chameleon.WallpaperThemeColors;
 import com.dotmatrix.calendar.data.model.WidgetTheme;
@@ -39,6 +52,7 @@ import java.util.ArrayList;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -48,6 +62,7 @@ import java.util.concurrent.Executors;
 public class WidgetEditorActivity extends AppCompatActivity {
 
     private static final int REQUEST_THEME = 1001;
+    private static final String IMPORTED_RULE_EMOJI = "📅";
 
     private ActivityWidgetEditorBinding binding;
     private WidgetRepository repository;
@@ -56,10 +71,20 @@ public class WidgetEditorActivity extends AppCompatActivity {
 
     private int widgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
     private WidgetConfig config;
+    // Config as last persisted, to scope cache invalidation on save
+    private WidgetConfig persistedConfig;
     private List<EmojiRule> rules = new ArrayList<>();
+    // Bumped on the executor whenever rules change, so the preview knows to re-render
+    private int rulesVersion;
     private EmojiRuleAdapter rulesAdapter;
     private boolean isNew = false;
 
+    // Wallpaper colors extracted once per Chameleon session; intensity changes only re-run the math
+    private volatile WallpaperThemeColors chameleonColors;
+
+    private final ActivityResultLauncher<String[]> icsPicker = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), this::onCalendarFilePicked);
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -95,6 +120,7 @@ public class WidgetEditorActivity extends AppCompatActivity {
         executor.execute(() -> {
             if (widgetId != AppWidgetManager.INVALID_APPWIDGET_ID && !isNew) {
                 config = repository.getWidgetConfig(widgetId);
+                persistedConfig = config != null ? config.copy() : null;
                 // Load rules for this widget
                 rules = new ArrayList<>(repository.getEmojiRules(widgetId));
             }
@@ -228,6 +254,10 @@ public class WidgetEditorActivity extends AppCompatActivity {
             sheet.show(getSupportFragmentManager(), "AddRuleSheet");
         });
 
+        // Import Calendar Button
+        binding.btnImportIcs.setOnClickListener(v ->
+                icsPicker.launch(new String[] {"text/calendar", "application/octet-stream"}));
+
         // Chameleon Mode
         binding.switchChameleon.setOnCheckedChangeListener((buttonView, isChecked) -> {
             if (config != null) {
@@ -235,6 +265,7 @@ public class WidgetEditorActivity extends AppCompatActivity {
                 updateUI(); // Show/hide slider
                 
                 if (isChecked) {
+                   chameleonColors = null; // Wallpaper may have changed since last toggle
                    generateChameleonTheme();
                 } else {
                     // Revert to manual colors logic if needed, or just let user pick new ones
@@ -247,8 +278,7 @@ public class WidgetEditorActivity extends AppCompatActivity {
             if (fromUser && config != null) {
                 config.setChameleonIntensity(value);
                 binding.textIntensityValue.setText(String.format("%d%%", (int)(value * 100)));
-                // Debounce generation? or just generate
-                // For intensity, we can probably generate immediately as it's just math, no bitmap extraction
+                // Reuses the cached extraction, so this is just color math
                 generateChameleonTheme();
             }
         });
@@ -262,6 +292,7 @@ public class WidgetEditorActivity extends AppCompatActivity {
             long id = repository.addEmojiRule(rule);
             rule.setId(id);
             rules.add(rule);
+            rulesVersion++;
             
             runOnUiThread(() -> {
                 rulesAdapter.setRules(rules);
@@ -271,10 +302,45 @@ public class WidgetEditorActivity extends AppCompatActivity {
         });
     }
 
+    private void onCalendarFilePicked(android.net.Uri uri) {
+        if (uri == null || config == null) return;
+
+        binding.btnImportIcs.setEnabled(false);
+        executor.execute(() -> {
+            String message;
+            try (java.io.InputStream in = getContentResolver().openInputStream(uri)) {
+                // Rules reference the widget row, so it has to exist first
+                repository.saveWidgetConfigSync(config);
+
+                IcsRuleImporter.Result result = new IcsRuleImporter(this).importRules(
+                        in, widgetId, IMPORTED_RULE_EMOJI,
+                        (eventsRead, imported) -> runOnUiThread(() -> binding.rulesCount.setText(
+                                getString(R.string.importing_calendar, eventsRead))));
+                message = getString(result.limitReached
+                        ? R.string.import_calendar_limit : R.string.import_calendar_done, result.rulesImported);
+                rules = new ArrayList<>(repository.getEmojiRules(widgetId));
+                rulesVersion++;
+            } catch (Exception e) {
+                android.util.Log.w("WidgetEditor", "Calendar import failed", e);
+                message = getString(R.string.import_calendar_failed);
+            }
+
+            String toast = message;
+            runOnUiThread(() -> {
+                binding.btnImportIcs.setEnabled(true);
+                rulesAdapter.setRules(rules);
+                updateUI();
+                updatePreview();
+                android.widget.Toast.makeText(this, toast, android.widget.Toast.LENGTH_SHORT).show();
+            });
+        });
+    }
+
     private void onDeleteRule(EmojiRule rule) {
         executor.execute(() -> {
             repository.deleteEmojiRule(rule.getId());
             rules.remove(rule);
+            rulesVersion++;
             
             runOnUiThread(() -> {
                 rulesAdapter.setRules(rules);
@@ -405,9 +471,13 @@ public class WidgetEditorActivity extends AppCompatActivity {
         if (config == null) return;
         
         executor.execute(() -> {
-            // 1. Extract Colors (Heavy operation)
-            WallpaperColorExtractor extractor = new WallpaperColorExtractor(this);
-            WallpaperThemeColors colors = extractor.extractColors();
+            // 1. Extract Colors (Heavy operation, reused across intensity changes)
+            WallpaperThemeColors colors = chameleonColors;
+            if (colors == null) {
+                WallpaperColorExtractor extractor = new WallpaperColorExtractor(this);
+                colors = extractor.extractColors();
+                chameleonColors = colors;
+            }
             
             // 2. Generate Theme
             AdaptiveThemeGenerator generator = new AdaptiveThemeGenerator();
@@ -492,6 +562,13 @@ public class WidgetEditorActivity extends AppCompatActivity {
     private final android.os.Handler debounceHandler = new android.os.Handler(android.os.Looper.getMainLooper());
     private Runnable previewRunnable;
 
+    // Last rendered preview (executor thread only); color-only edits recolor its indexed frame
+    private WidgetConfig previewRenderedConfig;
+    private int previewRulesVersion;
+    private LocalDate previewRenderedDay;
+    private IndexedFrame previewFrame;
+    private int[] previewLut;
+
     private void updatePreview() {
         if (config == null) return;
 
@@ -531,35 +608,37 @@ public class WidgetEditorActivity extends AppCompatActivity {
                 LocalDate today = LocalDate.now();
                 Bitmap preview;
                 
-                // Resolve dynamic colors if needed
-                if ("dynamic_harmony".equals(config.getThemeId()) || "chameleon_pro".equals(config.getThemeId())) {
-                    DynamicColorHelper helper = new DynamicColorHelper(WidgetEditorActivity.this);
-                    if ("dynamic_harmony".equals(config.getThemeId())) {
-                        int[] colors = helper.getDynamicHarmonyColors();
-                        config.setBackgroundColor(colors[0]);
-                        config.setDotColor(colors[1]);
-                        config.setAccentColor(colors[2]);
-                    } else if ("chameleon_pro".equals(config.getThemeId())) {
-                        int[] colors = helper.getChameleonProColors();
-                        config.setBackgroundColor(colors[0]);
-                        config.setDotColor(colors[1]);
-                        config.setAccentColor(colors[2]);
-                    }
+                // Render a private copy with dynamic colors resolved; the edited config keeps its placeholders
+                WidgetConfig previewConfig = BaseWidgetProvider.resolveDynamicColors(
+                        WidgetEditorActivity.this, WidgetSnapshot.draft(config)).toRenderConfig();
+                
+                Set<InvalidationScope> scopes = previewRulesVersion == rulesVersion && today.equals(previewRenderedDay)
+                        ? ConfigDiff.classify(previewRenderedConfig, previewConfig)
+                        : ConfigDiff.all();
+                if (scopes.isEmpty()) {
+                    // Name or metadata only; the preview on screen is still accurate
+                    return;
                 }
                 
                 try {
-                    switch (config.getWidgetType()) {
-                        case MONTH:
-                            preview = renderer.renderMonthView(WidgetEditorActivity.this, renderWidth, renderHeight, config, rules, today);
-                            break;
-                        case WEEK:
-                            preview = renderer.renderWeekView(WidgetEditorActivity.this, renderWidth, renderHeight, config, rules, today);
-                            break;
-                        case YEAR:
-                        default:
-                            preview = renderer.renderYearView(WidgetEditorActivity.this, renderWidth, renderHeight, config, rules, today);
-                            break;
+                    if (previewFrame != null && ConfigDiff.isRecolorOnly(scopes)) {
+                        // Same geometry, new colors: one lookup-table pass
+                        previewLut = IndexedFrame.buildLut(renderer.resolvePalette(previewConfig), previewLut);
+                        preview = previewFrame.toBitmap(previewLut);
+                    } else {
+                        // Null for glass themes and emoji, which can't be recolored later
+                        previewFrame = renderer.renderIndexedFrame(WidgetEditorActivity.this,
+                                renderWidth, renderHeight, previewConfig, rules, today);
+                        if (previewFrame != null) {
+                            previewLut = IndexedFrame.buildLut(renderer.resolvePalette(previewConfig), previewLut);
+                            preview = previewFrame.toBitmap(previewLut);
+                        } else {
+                            preview = renderPreview(previewConfig, renderWidth, renderHeight, today);
+                        }
                     }
+                    previewRenderedConfig = previewConfig;
+                    previewRulesVersion = rulesVersion;
+                    previewRenderedDay = today;
                 } catch (Exception e) {
                     e.printStackTrace();
                     return;
@@ -585,6 +664,21 @@ public class WidgetEditorActivity extends AppCompatActivity {
         debounceHandler.postDelayed(previewRunnable, 100);
     }
 
+    /**
+     * Full render of the preview, for configs that can't be indexed.
+     */
+    private Bitmap renderPreview(WidgetConfig previewConfig, int renderWidth, int renderHeight, LocalDate today) {
+        switch (previewConfig.getWidgetType()) {
+            case MONTH:
+                return renderer.renderMonthView(this, renderWidth, renderHeight, previewConfig, rules, today);
+            case WEEK:
+                return renderer.renderWeekView(this, renderWidth, renderHeight, previewConfig, rules, today);
+            case YEAR:
+            default:
+                return renderer.renderYearView(this, renderWidth, renderHeight, previewConfig, rules, today);
+        }
+    }
+
     /**
      * Animates the preview update with a smooth crossfade and scale effect.
      * This provides visual feedback when the user changes themes.
@@ -639,8 +733,13 @@ public class WidgetEditorActivity extends AppCompatActivity {
         }
 
         executor.execute(() -> {
-            // Save to database
+            // What the widget shows now, to fade from
+            WidgetSnapshot before = repository.getWidgetSnapshot(config.getWidgetId());
+            // Written before finishing: the editor is leaving, so nothing would flush it
             repository.saveWidgetConfigSync(config);
+            WidgetBitmapCache.getInstance().invalidate(config.getWidgetId(),
+                    ConfigDiff.classify(persistedConfig, config));
+            persistedConfig = config.copy();
 
             // Update widget if it's a real widget
             Intent intent = getIntent();
@@ -651,93 +750,106 @@ public class WidgetEditorActivity extends AppCompatActivity {
                 // CRITICAL: Use application context since Activity may be destroyed
                 Context appContext = getApplicationContext();
                 
-                // Get layout resource based on widget type
-                int layoutId;
-                switch (config.getWidgetType()) {
-                    case MONTH:
-                        layoutId = R.layout.widget_month;
-                        break;
-                    case WEEK:
-                        layoutId = R.layout.widget_week;
-                        break;
-                    case YEAR:
-                    default:
-                        layoutId = R.layout.widget_year;
-                        break;
-                }
+                WidgetSnapshot snapshot = repository.getWidgetSnapshot(config.getWidgetId());
+                // Recolors and theme changes fade in and end with a regular update;
+                // anything else is rendered and pushed right away
+                if (WidgetTransitions.animate(appContext, realWidgetId, before, snapshot) != null) {
+                    SizePrewarmer.getInstance(appContext).schedule(realWidgetId);
+                } else {
+                    // Get layout resource based on widget type
+                    int layoutId;
+                    switch (config.getWidgetType()) {
+                        case MONTH:
+                            layoutId = R.layout.widget_month;
+                            break;
+                        case WEEK:
+                            layoutId = R.layout.widget_week;
+                            break;
+                        case YEAR:
+                        default:
+                            layoutId = R.layout.widget_year;
+                            break;
+                    }
                 
-                // Get widget dimensions
-                AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(appContext);
-                Bundle options = appWidgetManager.getAppWidgetOptions(realWidgetId);
-                int width = 200;
-                int height = 200;
+                    // Get widget dimensions
+                    AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(appContext);
+                    Bundle options = appWidgetManager.getAppWidgetOptions(realWidgetId);
+                    int width = 200;
+                    int height = 200;
                 
-                if (options != null) {
-                    int minWidth = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
-                    int minHeight = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT);
+                    if (options != null) {
+                        int minWidth = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+                        int minHeight = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT);
                     
-                    if (minWidth > 0 && minHeight > 0) {
-                        float density = getResources().getDisplayMetrics().density;
-                        width = (int) (minWidth * density);
-                        height = (int) (minHeight * density);
+                        if (minWidth > 0 && minHeight > 0) {
+                            float density = getResources().getDisplayMetrics().density;
+                            width = (int) (minWidth * density);
+                            height = (int) (minHeight * density);
+                        }
                     }
-                }
                 
-                width = Math.max(100, Math.min(width, 2048));
-                height = Math.max(100, Math.min(height, 2048));
+                    width = Math.max(100, Math.min(width, 2048));
+                    height = Math.max(100, Math.min(height, 2048));
                 
-                // Resolve dynamic colors if needed
-                if ("dynamic_harmony".equals(config.getThemeId()) || "chameleon_pro".equals(config.getThemeId())) {
-                    DynamicColorHelper helper = new DynamicColorHelper(appContext);
-                    if ("dynamic_harmony".equals(config.getThemeId())) {
-                        int[] colors = helper.getDynamicHarmonyColors();
-                        config.setBackgroundColor(colors[0]);
-                        config.setDotColor(colors[1]);
-                        config.setAccentColor(colors[2]);
-                    } else {
-                        int[] colors = helper.getChameleonProColors();
-                        config.setBackgroundColor(colors[0]);
-                        config.setDotColor(colors[1]);
-                        config.setAccentColor(colors[2]);
-                    }
-                }
+                    // Resolve dynamic colors on the just-published snapshot
+                    WidgetSnapshot resolved = BaseWidgetProvider.resolveDynamicColors(appContext, snapshot);
+                    WidgetConfig renderConfig = resolved.toRenderConfig();
                 
-                // Render widget bitmap SYNCHRONOUSLY
-                List<EmojiRule> widgetRules = repository.getEmojiRules(realWidgetId);
-                java.time.LocalDate today = java.time.LocalDate.now();
-                Bitmap bitmap = null;
+                    List<EmojiRule> widgetRules = repository.getEmojiRules(realWidgetId);
+                    java.time.LocalDate today = java.time.LocalDate.now();
+                    android.widget.RemoteViews views = null;
+                    String frame = null;
+                    Bitmap bitmap = null;
+                    boolean nativeGrid = NativeGridRenderer.supports(renderConfig);
                 
-                switch (config.getWidgetType()) {
-                    case YEAR:
-                        bitmap = renderer.renderYearView(appContext, width, height, config, widgetRules, today);
-                        break;
-                    case MONTH:
-                        bitmap = renderer.renderMonthView(appContext, width, height, config, widgetRules, today);
-                        break;
-                    case WEEK:
-                        bitmap = renderer.renderWeekView(appContext, width, height, config, widgetRules, today);
-                        break;
-                }
+                    if (nativeGrid) {
+                        views = NativeGridRenderer.build(appContext, renderConfig, widgetRules, today, width, height);
+                    } else {
+                        // Render widget bitmap SYNCHRONOUSLY
+                    
+                        switch (renderConfig.getWidgetType()) {
+                            case YEAR:
+                                bitmap = renderer.renderYearView(appContext, width, height, renderConfig, widgetRules, today);
+                                break;
+                            case MONTH:
+                                bitmap = renderer.renderMonthView(appContext, width, height, renderConfig, widgetRules, today);
+                                break;
+                            case WEEK:
+                                bitmap = renderer.renderWeekView(appContext, width, height, renderConfig, widgetRules, today);
+                                break;
+                        }
+                    
+                        if (bitmap != null) {
+                            views = new android.widget.RemoteViews(appContext.getPackageName(), layoutId);
+                            String frameKey = WidgetBitmapCache.generateCacheKey(
+                                    realWidgetId, width, height, today.toString(), resolved.fingerprint());
+                            frame = WidgetFrameStore.setFrame(
+                                    appContext, views, R.id.widget_image, frameKey, bitmap);
+                        }
+                    }
                 
-                if (bitmap != null) {
-                    android.widget.RemoteViews views = new android.widget.RemoteViews(appContext.getPackageName(), layoutId);
-                    views.setImageViewBitmap(R.id.widget_image, bitmap);
+                    if (views != null) {
+                        // Set click handler
+                        Intent clickIntent = new Intent(appContext, WidgetEditorActivity.class);
+                        clickIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, realWidgetId);
+                        clickIntent.putExtra("widget_type", config.getWidgetType().name());
+                        clickIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
                     
-                    // Set click handler
-                    Intent clickIntent = new Intent(appContext, WidgetEditorActivity.class);
-                    clickIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, realWidgetId);
-                    clickIntent.putExtra("widget_type", config.getWidgetType().name());
-                    clickIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+                        android.app.PendingIntent pendingIntent = android.app.PendingIntent.getActivity(
+                                appContext, realWidgetId, clickIntent,
+                                android.app.PendingIntent.FLAG_UPDATE_CURRENT | android.app.PendingIntent.FLAG_IMMUTABLE);
+                        views.setOnClickPendingIntent(R.id.widget_container, pendingIntent);
                     
-                    android.app.PendingIntent pendingIntent = android.app.PendingIntent.getActivity(
-                            appContext, realWidgetId, clickIntent,
-                            android.app.PendingIntent.FLAG_UPDATE_CURRENT | android.app.PendingIntent.FLAG_IMMUTABLE);
-                    views.setOnClickPendingIntent(R.id.widget_container, pendingIntent);
+                        // UPDATE THE WIDGET
+                        PublishedFrames.getInstance(appContext).forget(realWidgetId);
+                        BaseWidgetProvider.pushFrame(appContext, appWidgetManager, realWidgetId, views,
+                                frame, bitmap, width, height, nativeGrid);
                     
-                    // UPDATE THE WIDGET
-                    appWidgetManager.updateAppWidget(realWidgetId, views);
+                        android.util.Log.d("WidgetEditor", "Widget update queued - realWidgetId=" + realWidgetId);
                     
-                    android.util.Log.d("WidgetEditor", "Widget updated successfully - realWidgetId=" + realWidgetId);
+                        // Have the sizes the user is likely to resize to ready in the caches
+                        SizePrewarmer.getInstance(appContext).schedule(realWidgetId);
+                    }
                 }
 
                 // Return result for widget configuration
@@ -772,6 +884,13 @@ public class WidgetEditorActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Leaving the editor: don't leave saved edits waiting in memory
+        repository.flushPendingWrites();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
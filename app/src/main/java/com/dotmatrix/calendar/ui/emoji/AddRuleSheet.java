@@ -75,7 +75,7 @@ public class AddRuleSheet extends BottomSheetDialogFragment {
                 rule.setEmoji(emoji);
                 rule.setLabel(label);
                 rule.setRuleType(RuleType.SPECIFIC_DATE);
-                rule.setStartDate(selectedDate);
+                rule.setStartDay(EmojiRule.toEpochDay(selectedDate));
                 
                 if (listener != null) {
                     listener.onRuleCreated(rule);
@@ -1,47 +1,73 @@
 package com.dotmatrix.calendar.ui.emoji;
 
+import android.appwidget.AppWidgetManager;
 import android.os.Bundle;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.repository.WidgetRepository;
 import com.dotmatrix.calendar.databinding.ActivityEmojiRulesBinding;
+import com.dotmatrix.calendar.widget.provider.BaseWidgetProvider;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Activity for managing emoji rules.
- * Placeholder - to be fully implemented.
+ * Activity for managing a widget's emoji rules.
+ * Rules are shown through a paged window, so large imported sets stay cheap to open and scroll.
+ * Tap a rule to enable/disable it.
  */
 public class EmojiRuleActivity extends AppCompatActivity {
 
     private ActivityEmojiRulesBinding binding;
     private EmojiRuleAdapter adapter;
-    private final java.util.List<com.dotmatrix.calendar.data.model.EmojiRule> rules = new java.util.ArrayList<>();
+    private EmojiRulePager pager;
+    private WidgetRepository repository;
+    private ExecutorService executor;
+
+    private int widgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
+    // Re-render the widget once when leaving, not per change
+    private volatile boolean rulesChanged;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         binding = ActivityEmojiRulesBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
-        
+
+        repository = WidgetRepository.getInstance(this);
+        executor = Executors.newSingleThreadExecutor();
+        widgetId = getIntent().getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                getIntent().getIntExtra("widget_id", AppWidgetManager.INVALID_APPWIDGET_ID));
+
         setupRecyclerView();
         setupListeners();
     }
 
     private void setupRecyclerView() {
-        adapter = new EmojiRuleAdapter(this::onDeleteRule);
+        adapter = new EmojiRuleAdapter(new EmojiRuleAdapter.OnRuleClickListener() {
+            @Override
+            public void onDeleteClick(EmojiRule rule) {
+                onDeleteRule(rule);
+            }
+
+            @Override
+            public void onToggleClick(EmojiRule rule) {
+                onToggleRule(rule);
+            }
+        });
         binding.rulesRecycler.setLayoutManager(new androidx.recyclerview.widget.LinearLayoutManager(this));
         binding.rulesRecycler.setAdapter(adapter);
-        
-        // Populate with fake data if empty (for demo) or load from DB
-        if (rules.isEmpty()) {
-            // Optional: Add dummy rule to show it works
-            // rules.add(com.dotmatrix.calendar.data.model.EmojiRule.createSpecificDate(0, "🎂", System.currentTimeMillis(), "Example Birthday"));
-        }
-        adapter.setRules(rules);
+
+        pager = new EmojiRulePager(repository, executor, adapter, widgetId);
+        binding.rulesRecycler.addOnScrollListener(pager);
+        pager.loadInitial();
     }
 
     private void setupListeners() {
         binding.btnBack.setOnClickListener(v -> finish());
-        
+
         binding.fabAddRule.setOnClickListener(v -> {
             AddRuleSheet sheet = new AddRuleSheet();
             sheet.setListener(this::onRuleCreated);
@@ -49,15 +75,43 @@ public class EmojiRuleActivity extends AppCompatActivity {
         });
     }
 
-    private void onRuleCreated(com.dotmatrix.calendar.data.model.EmojiRule rule) {
-        rules.add(rule);
-        adapter.setRules(rules);
-        // TODO: Save to database
+    private void onRuleCreated(EmojiRule rule) {
+        executor.execute(() -> {
+            rule.setWidgetId(widgetId);
+            repository.addEmojiRule(rule);
+            rulesChanged = true;
+            runOnUiThread(() -> pager.onRuleAdded(rule));
+        });
+    }
+
+    private void onToggleRule(EmojiRule rule) {
+        rule.setEnabled(!rule.isEnabled());
+        adapter.updateRule(rule);
+        repository.updateEmojiRule(rule);
+        rulesChanged = true;
+    }
+
+    private void onDeleteRule(EmojiRule rule) {
+        adapter.removeRule(rule.getId());
+        executor.execute(() -> {
+            repository.deleteEmojiRule(rule.getId());
+            rulesChanged = true;
+        });
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (rulesChanged && widgetId != AppWidgetManager.INVALID_APPWIDGET_ID) {
+            rulesChanged = false;
+            // Queued behind pending adds/deletes on the same executor
+            executor.execute(() -> BaseWidgetProvider.forceUpdate(getApplicationContext(), widgetId));
+        }
     }
 
-    private void onDeleteRule(com.dotmatrix.calendar.data.model.EmojiRule rule) {
-        rules.remove(rule);
-        adapter.setRules(rules);
-        // TODO: Delete from database
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
     }
 }
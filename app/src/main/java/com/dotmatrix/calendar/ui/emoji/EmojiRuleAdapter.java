@@ -7,13 +7,16 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.dotmatrix.calendar.R;
 import com.dotmatrix.calendar.data.model.EmojiRule;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 public class EmojiRuleAdapter extends RecyclerView.Adapter<EmojiRuleAdapter.RuleViewHolder> {
 
@@ -22,16 +25,119 @@ public class EmojiRuleAdapter extends RecyclerView.Adapter<EmojiRuleAdapter.Rule
 
     public interface OnRuleClickListener {
         void onDeleteClick(EmojiRule rule);
+
+        default void onToggleClick(EmojiRule rule) {
+        }
     }
 
     public EmojiRuleAdapter(OnRuleClickListener listener) {
         this.listener = listener;
+        setHasStableIds(true);
     }
 
+    /**
+     * Replace the list, dispatching only the changes.
+     */
     public void setRules(List<EmojiRule> newRules) {
+        List<EmojiRule> oldRules = new ArrayList<>(rules);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldRules.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newRules.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldRules.get(oldPosition).getId() == newRules.get(newPosition).getId();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return sameContents(oldRules.get(oldPosition), newRules.get(newPosition));
+            }
+        });
         rules.clear();
         rules.addAll(newRules);
-        notifyDataSetChanged();
+        diff.dispatchUpdatesTo(this);
+    }
+
+    // ==================== Window operations (paged lists) ====================
+
+    public List<EmojiRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    public void appendRules(List<EmojiRule> page) {
+        int start = rules.size();
+        rules.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    public void prependRules(List<EmojiRule> page) {
+        rules.addAll(0, page);
+        notifyItemRangeInserted(0, page.size());
+    }
+
+    public void dropFromStart(int count) {
+        rules.subList(0, count).clear();
+        notifyItemRangeRemoved(0, count);
+    }
+
+    public void dropFromEnd(int count) {
+        int start = rules.size() - count;
+        rules.subList(start, rules.size()).clear();
+        notifyItemRangeRemoved(start, count);
+    }
+
+    public void insertRule(int position, EmojiRule rule) {
+        rules.add(position, rule);
+        notifyItemInserted(position);
+    }
+
+    /**
+     * Rebind a rule in place (e.g. after toggling it). No-op if it isn't in the list.
+     */
+    public void updateRule(EmojiRule rule) {
+        int position = indexOf(rule.getId());
+        if (position >= 0) {
+            rules.set(position, rule);
+            notifyItemChanged(position);
+        }
+    }
+
+    public void removeRule(long ruleId) {
+        int position = indexOf(ruleId);
+        if (position >= 0) {
+            rules.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
+    private int indexOf(long ruleId) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).getId() == ruleId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean sameContents(EmojiRule a, EmojiRule b) {
+        return a.isEnabled() == b.isEnabled()
+                && a.getPriority() == b.getPriority()
+                && a.getRuleType() == b.getRuleType()
+                && a.getDaysOfWeek() == b.getDaysOfWeek()
+                && Objects.equals(a.getEmoji(), b.getEmoji())
+                && Objects.equals(a.getLabel(), b.getLabel())
+                && Objects.equals(a.getStartDay(), b.getStartDay())
+                && Objects.equals(a.getEndDay(), b.getEndDay())
+                && Objects.equals(a.getDayOfMonth(), b.getDayOfMonth())
+                && Objects.equals(a.getMonthOfYear(), b.getMonthOfYear());
     }
 
     @NonNull
@@ -47,6 +153,11 @@ public class EmojiRuleAdapter extends RecyclerView.Adapter<EmojiRuleAdapter.Rule
         holder.bind(rules.get(position));
     }
 
+    @Override
+    public long getItemId(int position) {
+        return rules.get(position).getId();
+    }
+
     @Override
     public int getItemCount() {
         return rules.size();
@@ -73,14 +184,17 @@ public class EmojiRuleAdapter extends RecyclerView.Adapter<EmojiRuleAdapter.Rule
             
             // Generate description based on rule type with formatted date
             String desc;
-            if (rule.getStartDate() != null && rule.getStartDate() > 0) {
-                java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("MMM dd, yyyy", java.util.Locale.getDefault());
-                desc = sdf.format(new java.util.Date(rule.getStartDate()));
+            if (rule.getStartDay() != null) {
+                java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter
+                        .ofPattern("MMM dd, yyyy", java.util.Locale.getDefault());
+                desc = java.time.LocalDate.ofEpochDay(rule.getStartDay()).format(formatter);
             } else {
                 desc = rule.getDescription();
             }
             descView.setText(desc);
 
+            itemView.setAlpha(rule.isEnabled() ? 1f : 0.4f);
+            itemView.setOnClickListener(v -> listener.onToggleClick(rule));
             deleteBtn.setOnClickListener(v -> listener.onDeleteClick(rule));
         }
     }
@@ -0,0 +1,158 @@
+package com.dotmatrix.calendar.ui.emoji;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.repository.WidgetRepository;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Keeps a bounded window of a widget's rules in an {@link EmojiRuleAdapter}.
+ * Pages are fetched with keyset queries (priority, id) ahead of the scroll position in
+ * either direction, and rows far outside the window are dropped again, so thousands of
+ * imported rules never load or bind at once.
+ */
+class EmojiRulePager extends RecyclerView.OnScrollListener {
+
+    private static final int PAGE_SIZE = 50;
+    // Start loading when the viewport gets this close to an edge of the window
+    private static final int PREFETCH_DISTANCE = 20;
+    private static final int MAX_WINDOW = 6 * PAGE_SIZE;
+
+    private final WidgetRepository repository;
+    private final ExecutorService executor;
+    private final EmojiRuleAdapter adapter;
+    private final int widgetId;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean loadingAfter;
+    private boolean loadingBefore;
+    private boolean reachedEnd;
+    private boolean reachedStart = true;
+    // Bumped on reload so results of in-flight loads are discarded
+    private int generation;
+
+    EmojiRulePager(WidgetRepository repository, ExecutorService executor,
+                   EmojiRuleAdapter adapter, int widgetId) {
+        this.repository = repository;
+        this.executor = executor;
+        this.adapter = adapter;
+        this.widgetId = widgetId;
+    }
+
+    /**
+     * (Re)load the window from the top.
+     */
+    void loadInitial() {
+        int loadGeneration = ++generation;
+        loadingAfter = true;
+        loadingBefore = false;
+        executor.execute(() -> {
+            List<EmojiRule> page = repository.getEmojiRulesPageAfter(widgetId, null, PAGE_SIZE);
+            mainHandler.post(() -> {
+                if (loadGeneration != generation) return;
+                adapter.setRules(page);
+                reachedStart = true;
+                reachedEnd = page.size() < PAGE_SIZE;
+                loadingAfter = false;
+            });
+        });
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if (!(layoutManager instanceof LinearLayoutManager)) return;
+        LinearLayoutManager linear = (LinearLayoutManager) layoutManager;
+
+        int count = adapter.getItemCount();
+        if (dy >= 0 && linear.findLastVisibleItemPosition() >= count - PREFETCH_DISTANCE) {
+            loadAfter();
+        }
+        if (dy <= 0 && linear.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+            loadBefore();
+        }
+    }
+
+    private void loadAfter() {
+        List<EmojiRule> window = adapter.getRules();
+        if (loadingAfter || reachedEnd || window.isEmpty()) return;
+        loadingAfter = true;
+        EmojiRule last = window.get(window.size() - 1);
+        int loadGeneration = generation;
+
+        executor.execute(() -> {
+            List<EmojiRule> page = repository.getEmojiRulesPageAfter(widgetId, last, PAGE_SIZE);
+            mainHandler.post(() -> {
+                loadingAfter = false;
+                if (loadGeneration != generation) return;
+                reachedEnd = page.size() < PAGE_SIZE;
+                adapter.appendRules(page);
+
+                int overflow = adapter.getItemCount() - MAX_WINDOW;
+                if (overflow > 0) {
+                    adapter.dropFromStart(overflow);
+                    reachedStart = false;
+                }
+            });
+        });
+    }
+
+    private void loadBefore() {
+        List<EmojiRule> window = adapter.getRules();
+        if (loadingBefore || reachedStart || window.isEmpty()) return;
+        loadingBefore = true;
+        EmojiRule first = window.get(0);
+        int loadGeneration = generation;
+
+        executor.execute(() -> {
+            List<EmojiRule> page = repository.getEmojiRulesPageBefore(widgetId, first, PAGE_SIZE);
+            mainHandler.post(() -> {
+                loadingBefore = false;
+                if (loadGeneration != generation) return;
+                reachedStart = page.size() < PAGE_SIZE;
+                adapter.prependRules(page);
+
+                int overflow = adapter.getItemCount() - MAX_WINDOW;
+                if (overflow > 0) {
+                    adapter.dropFromEnd(overflow);
+                    reachedEnd = false;
+                }
+            });
+        });
+    }
+
+    /**
+     * Place a newly added rule in the window if it falls inside the loaded range.
+     * Rules past the end of a partial window are picked up when scrolling there.
+     */
+    void onRuleAdded(EmojiRule rule) {
+        List<EmojiRule> window = adapter.getRules();
+        int position = 0;
+        while (position < window.size() && comesBefore(window.get(position), rule)) {
+            position++;
+        }
+        boolean beforeWindow = position == 0 && !reachedStart;
+        boolean afterWindow = position == window.size() && !reachedEnd;
+        if (!beforeWindow && !afterWindow) {
+            adapter.insertRule(position, rule);
+        }
+    }
+
+    /**
+     * Display order: priority DESC, id ASC (matches the keyset queries).
+     */
+    private static boolean comesBefore(EmojiRule a, EmojiRule b) {
+        if (a.getPriority() != b.getPriority()) {
+            return a.getPriority() > b.getPriority();
+        }
+        return a.getId() < b.getId();
+    }
+}
@@ -1,143 +1,279 @@
 package com.dotmatrix.calendar.util;
 
+import android.app.WallpaperManager;
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.graphics.Color;
+import android.content.res.Resources;
+import android.os.Build;
+import android.util.AtomicFile;
+import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.annotations.SerializedName;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Persistent cache for wallpaper color extraction results.
- * Reduces expensive color computation by caching results for 24 hours.
- * 
+ * Process-wide cache for wallpaper color extraction results.
+ * Entries are keyed by the system wallpaper id and the Material You palette generation,
+ * so they stay valid until the wallpaper or system palette actually changes (no TTL).
+ *
+ * Reads are served from memory; a small binary file keeps entries across process restarts.
+ * The file is loaded and written on a background thread, so the cache can be created on the
+ * main thread; lookups before the load finished simply miss.
  * iOS-inspired: Similar to how iOS caches wallpaper tint for widgets.
  */
 public class ColorExtractionCache {
-    
-    private static final String PREFS_NAME = "color_extraction_cache";
-    private static final String KEY_CACHE_DATA = "cache_data";
-    private static final long CACHE_TTL_MS = 24 * 60 * 60 * 1000; // 24 hours
-    
-    private final SharedPreferences prefs;
-    private final Gson gson;
-    
+
+    private static final String TAG = "ColorExtractionCache";
+    private static final String FILE_NAME = "color_extraction_cache.bin";
+    private static final String LEGACY_PREFS_NAME = "color_extraction_cache";
+
+    // File layout: header, then `count` entries
+    //   int magic, int version, int wallpaperId, int colorGeneration, int count
+    //   entry: UTF themeId, int bg, int dot, int accent, int secondary, int tertiary, boolean isDark
+    private static final int FILE_MAGIC = 0x43584331; // "CXC1"
+    private static final int FILE_VERSION = 1;
+
+    private static volatile ColorExtractionCache INSTANCE;
+
+    private final Context context;
+    private final AtomicFile file;
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    // File I/O, off the caller's thread
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+
+    // Source the current entries were extracted from
+    private volatile int wallpaperId;
+    private volatile int colorGeneration;
+    // Bumped whenever the entries are dropped; guarded by this
+    private int epoch;
+
     private static class CacheEntry {
-        @SerializedName("timestamp")
-        long timestamp;
-        
-        @SerializedName("background")
-        int backgroundColor;
-        
-        @SerializedName("dot")
-        int dotColor;
-        
-        @SerializedName("accent")
-        int accentColor;
-        
-        @SerializedName("secondary")
-        int secondaryColor;
-        
-        @SerializedName("tertiary")
-        int tertiaryColor;
-        
-        @SerializedName("is_dark")
-        boolean isDark;
-        
+        // [backgroundColor, dotColor, accentColor]; copied on hits
+        final int[] colors;
+        final int secondaryColor;
+        final int tertiaryColor;
+        final boolean isDark;
+
         CacheEntry(int bg, int dot, int accent, int secondary, int tertiary, boolean isDark) {
-            this.timestamp = System.currentTimeMillis();
-            this.backgroundColor = bg;
-            this.dotColor = dot;
-            this.accentColor = accent;
+            this.colors = new int[] { bg, dot, accent };
             this.secondaryColor = secondary;
             this.tertiaryColor = tertiary;
             this.isDark = isDark;
         }
-        
-        boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > CACHE_TTL_MS;
-        }
     }
-    
-    public ColorExtractionCache(Context context) {
-        if (context == null) {
-            throw new IllegalArgumentException("Context cannot be null");
-        }
+
+    private ColorExtractionCache(Context context) {
         // Use application context to avoid memory leaks
-        this.prefs = context.getApplicationContext()
-            .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        this.gson = new Gson();
+        this.context = context.getApplicationContext();
+        this.file = new AtomicFile(new File(this.context.getFilesDir(), FILE_NAME));
+
+        // The first call may come from the main thread (configuration changes)
+        io.execute(() -> {
+            load();
+            // Entries used to live as JSON in SharedPreferences
+            this.context.deleteSharedPreferences(LEGACY_PREFS_NAME);
+        });
     }
-    
+
     /**
-     * Get cached colors if available and not expired.
-     * Returns null if cache miss or expired.
+     * Get singleton instance.
      */
-    public int[] getCachedColors(String themeId) {
-        String json = prefs.getString(KEY_CACHE_DATA + "_" + themeId, null);
-        if (json == null) {
-            return null;
+    public static ColorExtractionCache getInstance(Context context) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context cannot be null");
         }
-        
-        try {
-            CacheEntry entry = gson.fromJson(json, CacheEntry.class);
-            if (entry == null || entry.isExpired()) {
-                return null;
+        if (INSTANCE == null) {
+            synchronized (ColorExtractionCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ColorExtractionCache(context);
+                }
             }
-            
-            return new int[] {
-                entry.backgroundColor,
-                entry.dotColor,
-                entry.accentColor
-            };
-        } catch (Exception e) {
-            return null;
         }
+        return INSTANCE;
     }
-    
+
     /**
-     * Cache extracted colors with timestamp.
+     * Get cached colors if available.
+     * Returns a copy of [backgroundColor, dotColor, accentColor], or null on a miss.
      */
-    public void cacheColors(String themeId, int bg, int dot, int accent, 
+    public int[] getCachedColors(String themeId) {
+        CacheEntry entry = entries.get(themeId);
+        return entry != null ? entry.colors.clone() : null;
+    }
+
+    /**
+     * Current epoch of the entries. Take it before extracting colors and pass it to
+     * {@link #cacheColors}, so an extraction that raced a clear is not cached.
+     */
+    public synchronized int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Cache extracted colors for the current wallpaper and system palette, unless the
+     * entries were cleared since {@code epoch} was taken.
+     */
+    public void cacheColors(int epoch, String themeId, int bg, int dot, int accent,
                            int secondary, int tertiary, boolean isDark) {
-        CacheEntry entry = new CacheEntry(bg, dot, accent, secondary, tertiary, isDark);
-        String json = gson.toJson(entry);
-        
-        prefs.edit()
-            .putString(KEY_CACHE_DATA + "_" + themeId, json)
-            .apply();
+        synchronized (this) {
+            if (epoch != this.epoch) {
+                // Extracted from the previous wallpaper or palette
+                return;
+            }
+            entries.put(themeId, new CacheEntry(bg, dot, accent, secondary, tertiary, isDark));
+        }
+        io.execute(this::save);
     }
-    
+
     /**
      * Invalidate cache for a specific theme.
      */
     public void invalidate(String themeId) {
-        prefs.edit()
-            .remove(KEY_CACHE_DATA + "_" + themeId)
-            .apply();
+        if (entries.remove(themeId) != null) {
+            io.execute(this::save);
+        }
     }
-    
+
     /**
      * Clear all cached colors.
      */
-    public void clearAll() {
-        prefs.edit().clear().apply();
+    public synchronized void clearAll() {
+        epoch++;
+        entries.clear();
+        io.execute(file::delete);
     }
-    
+
     /**
-     * Check if cache exists for a theme and is not expired.
+     * Check if cache exists for a theme.
      */
     public boolean isCacheValid(String themeId) {
-        String json = prefs.getString(KEY_CACHE_DATA + "_" + themeId, null);
-        if (json == null) {
-            return false;
+        return entries.containsKey(themeId);
+    }
+
+    /**
+     * Re-read the wallpaper id and system palette generation, dropping all entries if either
+     * changed. Call on wallpaper change and configuration change (Material You palette updates
+     * arrive as a configuration change). Queries the wallpaper service: call off the main
+     * thread, or use {@link #refreshSourceAsync}.
+     */
+    public void refreshSource() {
+        int newWallpaperId = readWallpaperId();
+        int newGeneration = readColorGeneration();
+        if (newWallpaperId == wallpaperId && newGeneration == colorGeneration) {
+            return;
         }
-        
+
+        synchronized (this) {
+            wallpaperId = newWallpaperId;
+            colorGeneration = newGeneration;
+            clearAll();
+        }
+    }
+
+    /**
+     * {@link #refreshSource} on the cache's background thread.
+     */
+    public void refreshSourceAsync() {
+        io.execute(this::refreshSource);
+    }
+
+    // ==================== Source identity ====================
+
+    private int readWallpaperId() {
         try {
-            CacheEntry entry = gson.fromJson(json, CacheEntry.class);
-            return entry != null && !entry.isExpired();
+            return WallpaperManager.getInstance(context).getWallpaperId(WallpaperManager.FLAG_SYSTEM);
         } catch (Exception e) {
-            return false;
+            return -1;
+        }
+    }
+
+    /**
+     * Fingerprint of the Material You palette (Android 12+). 0 on older versions.
+     */
+    private int readColorGeneration() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return 0;
+        }
+        Resources res = context.getResources();
+        int hash = 17;
+        hash = 31 * hash + res.getColor(android.R.color.system_accent1_500, null);
+        hash = 31 * hash + res.getColor(android.R.color.system_accent2_500, null);
+        hash = 31 * hash + res.getColor(android.R.color.system_accent3_500, null);
+        hash = 31 * hash + res.getColor(android.R.color.system_neutral1_500, null);
+        hash = 31 * hash + res.getColor(android.R.color.system_neutral2_500, null);
+        return hash;
+    }
+
+    // ==================== Persistence ====================
+
+    private synchronized void load() {
+        wallpaperId = readWallpaperId();
+        colorGeneration = readColorGeneration();
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return;
+            }
+            int storedWallpaperId = in.readInt();
+            int storedGeneration = in.readInt();
+            if (storedWallpaperId != wallpaperId || storedGeneration != colorGeneration) {
+                // Extracted from a different wallpaper or palette
+                file.delete();
+                return;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String themeId = in.readUTF();
+                // Colors cached before the load finished are newer
+                entries.putIfAbsent(themeId, new CacheEntry(
+                        in.readInt(), in.readInt(), in.readInt(),
+                        in.readInt(), in.readInt(), in.readBoolean()));
+            }
+        } catch (java.io.FileNotFoundException e) {
+            // Nothing cached yet
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable color cache", e);
+            entries.clear();
+            file.delete();
+        }
+    }
+
+    private synchronized void save() {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(FILE_MAGIC);
+            data.writeInt(FILE_VERSION);
+            data.writeInt(wallpaperId);
+            data.writeInt(colorGeneration);
+
+            // Snapshot so the count matches the entries written
+            Map<String, CacheEntry> snapshot = new java.util.HashMap<>(entries);
+            data.writeInt(snapshot.size());
+            for (Map.Entry<String, CacheEntry> e : snapshot.entrySet()) {
+                CacheEntry entry = e.getValue();
+                data.writeUTF(e.getKey());
+                data.writeInt(entry.colors[0]);
+                data.writeInt(entry.colors[1]);
+                data.writeInt(entry.colors[2]);
+                data.writeInt(entry.secondaryColor);
+                data.writeInt(entry.tertiaryColor);
+                data.writeBoolean(entry.isDark);
+            }
+            data.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to persist color cache", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
         }
     }
 }
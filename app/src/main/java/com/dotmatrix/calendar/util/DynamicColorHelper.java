@@ -33,7 +33,7 @@ public class DynamicColorHelper {
         int nightModeFlags = context.getResources().getConfiguration().uiMode 
                 & Configuration.UI_MODE_NIGHT_MASK;
         this.isDarkMode = nightModeFlags == Configuration.UI_MODE_NIGHT_YES;
-        this.cache = new ColorExtractionCache(context);
+        this.cache = ColorExtractionCache.getInstance(context);
     }
     
     /**
@@ -158,6 +158,7 @@ public class DynamicColorHelper {
         if (cached != null) {
             return cached;
         }
+        int epoch = cache.getEpoch();
         
         // Extract fresh colors
         int bg = getBackgroundColor();
@@ -168,7 +169,7 @@ public class DynamicColorHelper {
         bg = optimizeForGlassmorphism(bg, isDarkMode);
         dot = optimizeForGlassmorphism(dot, !isDarkMode);
        
-        cache.cacheColors(themeId, bg, dot, accent, 
+        cache.cacheColors(epoch, themeId, bg, dot, accent, 
                          getSecondaryAccentColor(), getTertiaryAccentColor(), isDarkMode);
         
         return new int[] { bg, dot, accent };
@@ -187,6 +188,7 @@ public class DynamicColorHelper {
         if (cached != null) {
             return cached;
         }
+        int epoch = cache.getEpoch();
         
         // Extract fresh colors
         int bg = getBackgroundColor();
@@ -197,7 +199,7 @@ public class DynamicColorHelper {
         bg = optimizeForGlassmorphism(bg, isDarkMode);
         accent = optimizeForGlassmorphism(accent, !isDarkMode);
         
-        cache.cacheColors(themeId, bg, accent, secondary, 
+        cache.cacheColors(epoch, themeId, bg, accent, secondary, 
                          getTertiaryAccentColor(), getTertiaryAccentColor(), isDarkMode);
         
         return new int[] { bg, accent, secondary };
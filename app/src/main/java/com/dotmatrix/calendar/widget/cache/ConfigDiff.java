@@ -0,0 +1,67 @@
+package com.dotmatrix.calendar.widget.cache;
+
+import com.dotmatrix.calendar.data.model.WidgetConfig;
+
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Classifies the difference between two widget configs into the render stages it invalidates.
+ * An empty result means nothing visible changed (name, timestamps, chameleon bookkeeping).
+ */
+public final class ConfigDiff {
+
+    private ConfigDiff() {
+    }
+
+    /**
+     * Everything; for a first render or when something outside the config changed.
+     */
+    public static Set<InvalidationScope> all() {
+        return EnumSet.allOf(InvalidationScope.class);
+    }
+
+    public static Set<InvalidationScope> classify(WidgetConfig before, WidgetConfig after) {
+        if (before == null || after == null) {
+            return all();
+        }
+        Set<InvalidationScope> scopes = EnumSet.noneOf(InvalidationScope.class);
+
+        if (before.getDotColor() != after.getDotColor()
+                || before.getAccentColor() != after.getAccentColor()
+                || before.getBackgroundColor() != after.getBackgroundColor()
+                || before.getDotOpacity() != after.getDotOpacity()
+                || before.getBackgroundOpacity() != after.getBackgroundOpacity()) {
+            scopes.add(InvalidationScope.RECOLOR);
+        }
+
+        if (before.getWidgetType() != after.getWidgetType()
+                || before.getDotSize() != after.getDotSize()
+                || before.getDotSpacing() != after.getDotSpacing()
+                || before.getDotShape() != after.getDotShape()
+                || before.getDotStyle() != after.getDotStyle()
+                || before.getWeekStartDay() != after.getWeekStartDay()
+                || before.isShowMonthLabel() != after.isShowMonthLabel()
+                || before.isShowWeekHeaders() != after.isShowWeekHeaders()
+                || before.getProgressMode() != after.getProgressMode()
+                || before.getProgressStyle() != after.getProgressStyle()) {
+            scopes.add(InvalidationScope.LAYOUT);
+        }
+
+        if (!Objects.equals(before.getThemeId(), after.getThemeId())
+                || before.isHasBlur() != after.isHasBlur()
+                || before.getBlurRadius() != after.getBlurRadius()) {
+            scopes.add(InvalidationScope.BACKGROUND);
+        }
+
+        return scopes;
+    }
+
+    /**
+     * Whether a change can be applied by recoloring the previous frame.
+     */
+    public static boolean isRecolorOnly(Set<InvalidationScope> scopes) {
+        return scopes.size() == 1 && scopes.contains(InvalidationScope.RECOLOR);
+    }
+}
@@ -0,0 +1,92 @@
+package com.dotmatrix.calendar.widget.cache;
+
+import android.util.LruCache;
+
+import com.dotmatrix.calendar.widget.renderer.IndexedFrame;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * LRU cache of palette-indexed widget frames, keyed like the bitmap cache but by a
+ * snapshot's shape fingerprint instead of its full fingerprint. A recolor (wallpaper,
+ * dynamic colors, a theme with the same shape) then finds the frame of the previous
+ * colors and resolves it with one lookup-table pass instead of rasterizing again.
+ */
+public class IndexedFrameCache {
+
+    // Two bytes per pixel: about four full-size widgets
+    private static final int CACHE_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_UNINDEXABLE = 64;
+    private static volatile IndexedFrameCache INSTANCE;
+
+    private final LruCache<String, IndexedFrame> cache;
+    // Keys whose content can't be indexed (emoji), so they are not rasterized twice
+    private final Set<String> unindexable = new HashSet<>();
+
+    private IndexedFrameCache() {
+        cache = new LruCache<String, IndexedFrame>(CACHE_SIZE) {
+            @Override
+            protected int sizeOf(String key, IndexedFrame frame) {
+                return frame.getByteCount();
+            }
+        };
+    }
+
+    public static IndexedFrameCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (IndexedFrameCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new IndexedFrameCache();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Get the cached frame for a widget, or null.
+     */
+    public IndexedFrame get(int widgetId, String cacheKey) {
+        return cache.get(widgetId + "-" + cacheKey);
+    }
+
+    public void put(int widgetId, String cacheKey, IndexedFrame frame) {
+        if (frame != null) {
+            cache.put(widgetId + "-" + cacheKey, frame);
+        }
+    }
+
+    /**
+     * Whether the content under this key was found not to be indexable.
+     */
+    public boolean isUnindexable(int widgetId, String cacheKey) {
+        synchronized (unindexable) {
+            return unindexable.contains(widgetId + "-" + cacheKey);
+        }
+    }
+
+    public void markUnindexable(int widgetId, String cacheKey) {
+        synchronized (unindexable) {
+            if (unindexable.size() >= MAX_UNINDEXABLE) {
+                unindexable.clear();
+            }
+            unindexable.add(widgetId + "-" + cacheKey);
+        }
+    }
+
+    /**
+     * Drop all frames of a widget (rules changed, widget deleted).
+     */
+    public void invalidate(int widgetId) {
+        String prefix = widgetId + "-";
+        for (String key : cache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                cache.remove(key);
+            }
+        }
+        synchronized (unindexable) {
+            unindexable.removeIf(key -> key.startsWith(prefix));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.dotmatrix.calendar.widget.cache;
+
+/**
+ * Render stages a config change invalidates. See {@link ConfigDiff}.
+ */
+public enum InvalidationScope {
+    /** Colors or opacities only; the existing dot geometry can be recolored. */
+    RECOLOR,
+    /** Dot geometry, grid arrangement or labels; layout and dots are redrawn. */
+    LAYOUT,
+    /** Theme, blur or glass; the background layer has to be rebuilt. */
+    BACKGROUND
+}
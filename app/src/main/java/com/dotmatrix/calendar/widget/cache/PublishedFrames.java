@@ -0,0 +1,247 @@
+package com.dotmatrix.calendar.widget.cache;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.provider.Settings;
+
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.model.WidgetSnapshot;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identity of the frame each widget currently shows, persisted across process restarts.
+ *
+ * The host keeps the last RemoteViews it was given until the device reboots or the app
+ * is updated, so an update whose identity (snapshot fingerprint, rules, size options,
+ * date, layout and wallpaper) matches the recorded one does not need to be rendered or pushed.
+ * Records are dropped when the boot count or the install changes, and explicitly via
+ * {@link #forget} whenever something pushes outside the normal update path.
+ *
+ * The background layer is tracked separately: while the recorded background is still
+ * shown, updates only replace the dot layer with a partial update. This only applies to
+ * single-size views; responsive views (API 31+ launchers that report their sizes) are
+ * always pushed whole, reusing the stored background frames.
+ */
+public class PublishedFrames {
+
+    private static final String PREFS_NAME = "published_frames";
+    private static final String KEY_BOOT_COUNT = "boot_count";
+    private static final String KEY_APP_UPDATED = "app_updated";
+    private static final String KEY_WIDGET_PREFIX = "widget_";
+    private static final String KEY_BACKGROUND_PREFIX = "background_";
+    private static final String KEY_BACKGROUND_FRAME_PREFIX = "background_frame_";
+    private static volatile PublishedFrames INSTANCE;
+
+    private final SharedPreferences prefs;
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    private PublishedFrames(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        // After a reboot or an app update the host no longer shows our frames
+        int bootCount = Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+        long appUpdated = appUpdatedAt(context);
+        if (prefs.getInt(KEY_BOOT_COUNT, -2) != bootCount || prefs.getLong(KEY_APP_UPDATED, -1) != appUpdated) {
+            prefs.edit()
+                    .clear()
+                    .putInt(KEY_BOOT_COUNT, bootCount)
+                    .putLong(KEY_APP_UPDATED, appUpdated)
+                    .apply();
+        }
+    }
+
+    public static PublishedFrames getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (PublishedFrames.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new PublishedFrames(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Identity of the frame an update would publish. Everything the rendered output
+     * depends on goes in, including the wallpaper for wallpaper-based (glass) themes,
+     * whose blurred background changes with it.
+     *
+     * @param wallpaperId Current wallpaper id for wallpaper-based themes, 0 for all others
+     */
+    public static long identity(int layoutId, Bundle options, LocalDate date, WidgetSnapshot snapshot,
+                                List<EmojiRule> rules, int wallpaperId) {
+        int sizes = 0;
+        if (options != null) {
+            sizes = Objects.hash(
+                    options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH),
+                    options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT),
+                    options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_WIDTH),
+                    options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT));
+            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+                sizes = 31 * sizes + Objects.hashCode(
+                        options.getParcelableArrayList(AppWidgetManager.OPTION_APPWIDGET_SIZES));
+            }
+        }
+        long high = Objects.hash(layoutId, sizes, date.toEpochDay(), wallpaperId);
+        long low = Objects.hash(snapshot.fingerprint(), rulesHash(rules));
+        return (high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Whether the widget already shows the frame with this identity. Counts the skip.
+     */
+    public boolean isPublished(int widgetId, long identity) {
+        String key = KEY_WIDGET_PREFIX + widgetId;
+        if (prefs.contains(key) && prefs.getLong(key, 0) == identity) {
+            skipped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record that the widget now shows the frame with this identity.
+     */
+    public void remember(int widgetId, long identity) {
+        pushes.incrementAndGet();
+        prefs.edit().putLong(KEY_WIDGET_PREFIX + widgetId, identity).apply();
+    }
+
+    /**
+     * Drop the record of the widget's frame, keeping its background record.
+     * Used when the dot layer is replaced by something that is not tracked (drafts).
+     */
+    public void forgetFrame(int widgetId) {
+        prefs.edit().remove(KEY_WIDGET_PREFIX + widgetId).apply();
+    }
+
+    /**
+     * Drop all of the widget's records, so its next update is a full push.
+     */
+    public void forget(int widgetId) {
+        prefs.edit()
+                .remove(KEY_WIDGET_PREFIX + widgetId)
+                .remove(KEY_BACKGROUND_PREFIX + widgetId)
+                .remove(KEY_BACKGROUND_FRAME_PREFIX + widgetId)
+                .apply();
+    }
+
+    /**
+     * Identity of a background layer: layout, pixel size, background settings and, for
+     * wallpaper-based backgrounds, the wallpaper.
+     */
+    public static long backgroundIdentity(int layoutId, int width, int height, WidgetSnapshot snapshot,
+                                          int wallpaperId) {
+        long high = Objects.hash(layoutId, width, height);
+        long low = Objects.hash(snapshot.backgroundFingerprint(), wallpaperId);
+        return (high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Whether the host shows the background layer with this identity, so a partial update
+     * of the dot layer is enough.
+     */
+    public boolean isBackgroundPublished(int widgetId, long identity) {
+        String key = KEY_BACKGROUND_PREFIX + widgetId;
+        return prefs.contains(key) && prefs.getLong(key, 0) == identity;
+    }
+
+    /**
+     * Whether the host shows any tracked background layer for the widget, of any size.
+     */
+    public boolean hasBackground(int widgetId) {
+        return prefs.contains(KEY_BACKGROUND_PREFIX + widgetId);
+    }
+
+    /**
+     * Stored frame shown as the widget's background layer, kept when pruning frames.
+     */
+    public String getBackgroundFrame(int widgetId) {
+        return prefs.getString(KEY_BACKGROUND_FRAME_PREFIX + widgetId, null);
+    }
+
+    /**
+     * Record the background layer a full push put on screen.
+     */
+    public void rememberBackground(int widgetId, long identity, String frame) {
+        prefs.edit()
+                .putLong(KEY_BACKGROUND_PREFIX + widgetId, identity)
+                .putString(KEY_BACKGROUND_FRAME_PREFIX + widgetId, frame)
+                .apply();
+    }
+
+    /**
+     * Drop the background record after a push without a tracked background layer.
+     */
+    public void forgetBackground(int widgetId) {
+        prefs.edit()
+                .remove(KEY_BACKGROUND_PREFIX + widgetId)
+                .remove(KEY_BACKGROUND_FRAME_PREFIX + widgetId)
+                .apply();
+    }
+
+    /**
+     * Drop all records, for when the host signals it lost its views.
+     */
+    public void forgetAll() {
+        int bootCount = prefs.getInt(KEY_BOOT_COUNT, -1);
+        long appUpdated = prefs.getLong(KEY_APP_UPDATED, -1);
+        prefs.edit()
+                .clear()
+                .putInt(KEY_BOOT_COUNT, bootCount)
+                .putLong(KEY_APP_UPDATED, appUpdated)
+                .apply();
+    }
+
+    /**
+     * Full updates pushed since the process started.
+     */
+    public long getPushCount() {
+        return pushes.get();
+    }
+
+    /**
+     * Updates skipped because the host already showed the frame.
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Hash of the rule fields that affect rendering.
+     */
+    public static int rulesHash(List<EmojiRule> rules) {
+        int hash = 1;
+        for (EmojiRule rule : rules) {
+            hash = 31 * hash + Objects.hash(
+                    rule.getId(),
+                    rule.getEmoji(),
+                    rule.getRuleType(),
+                    rule.getStartDay(),
+                    rule.getEndDay(),
+                    rule.getDayOfMonth(),
+                    rule.getMonthOfYear(),
+                    rule.getDaysOfWeek(),
+                    rule.getPriority(),
+                    rule.isEnabled());
+        }
+        return hash;
+    }
+
+    private static long appUpdatedAt(Context context) {
+        try {
+            return context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return -1;
+        }
+    }
+}
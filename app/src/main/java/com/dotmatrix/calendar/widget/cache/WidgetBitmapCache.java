@@ -5,6 +5,9 @@ import android.graphics.Bitmap;
 import android.util.LruCache;
 
 import com.dotmatrix.calendar.util.PowerModeDetector;
+import com.dotmatrix.calendar.widget.glassmorphism.GlassEffectCache;
+
+import java.util.Set;
 
 /**
  * LRU cache for widget bitmaps with intelligent sizing.
@@ -40,8 +43,8 @@ public class WidgetBitmapCache {
             @Override
             protected void entryRemoved(boolean evicted, String key, 
                                         Bitmap oldValue, Bitmap newValue) {
-                if (evicted && oldValue != null && !oldValue.isRecycled()) {
-                    oldValue.recycle();
+                if (evicted && oldValue != null) {
+                    recycle(oldValue);
                 }
             }
         };
@@ -105,8 +108,43 @@ public class WidgetBitmapCache {
         for (String key : cache.snapshot().keySet()) {
             if (key.startsWith(prefix)) {
                 Bitmap bitmap = cache.remove(key);
-                if (bitmap != null && !bitmap.isRecycled()) {
-                    bitmap.recycle();
+                if (bitmap != null) {
+                    recycle(bitmap);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidate what a config change affects.
+     * Color and layout changes drop the dot layers, and layout changes also the role maps;
+     * background changes drop the background layers and the glass cache. Unaffected
+     * layers stay cached.
+     */
+    public void invalidate(int widgetId, Set<InvalidationScope> scopes) {
+        if (scopes.contains(InvalidationScope.RECOLOR) || scopes.contains(InvalidationScope.LAYOUT)) {
+            invalidateLayer(widgetId, "dots");
+        }
+        if (scopes.contains(InvalidationScope.LAYOUT)) {
+            IndexedFrameCache.getInstance().invalidate(widgetId);
+        }
+        if (scopes.contains(InvalidationScope.BACKGROUND)) {
+            invalidateLayer(widgetId, "background");
+            GlassEffectCache.INSTANCE.invalidate(widgetId);
+        }
+    }
+
+    /**
+     * Drop a widget's cached layers of one kind, by the date key in their cache keys.
+     */
+    private void invalidateLayer(int widgetId, String layer) {
+        String prefix = widgetId + "-";
+        String marker = "-" + layer + "-";
+        for (String key : cache.snapshot().keySet()) {
+            if (key.startsWith(prefix) && key.contains(marker)) {
+                Bitmap bitmap = cache.remove(key);
+                if (bitmap != null) {
+                    recycle(bitmap);
                 }
             }
         }
@@ -117,8 +155,8 @@ public class WidgetBitmapCache {
      */
     public void clear() {
         for (Bitmap bitmap : cache.snapshot().values()) {
-            if (bitmap != null && !bitmap.isRecycled()) {
-                bitmap.recycle();
+            if (bitmap != null) {
+                recycle(bitmap);
             }
         }
         cache.evictAll();
@@ -128,6 +166,16 @@ public class WidgetBitmapCache {
         cacheMisses = 0;
     }
 
+    /**
+     * Free a bitmap dropped from the cache, unless its frame is still being encoded;
+     * then the garbage collector frees it once the encoder is done.
+     */
+    private static void recycle(Bitmap bitmap) {
+        if (!bitmap.isRecycled() && !WidgetFrameStore.isEncoding(bitmap)) {
+            bitmap.recycle();
+        }
+    }
+
     /**
      * Trim cache to specified size.
      */
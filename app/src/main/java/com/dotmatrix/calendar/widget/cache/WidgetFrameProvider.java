@@ -0,0 +1,81 @@
+package com.dotmatrix.calendar.widget.cache;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Read-only provider for the frames in {@link WidgetFrameStore}.
+ * The launcher opens the URI set with setImageViewUri and reads the PNG through a
+ * file descriptor, so no bitmap travels in the RemoteViews transaction. The provider is
+ * not exported; only apps granted read access by the store can open frames.
+ */
+public class WidgetFrameProvider extends ContentProvider {
+
+    private static final String MIME_TYPE = "image/png";
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new SecurityException("Frames are read-only");
+        }
+        File file = WidgetFrameStore.resolve(getContext(), uri);
+        if (file == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        File file = WidgetFrameStore.resolve(getContext(), uri);
+        if (file == null) {
+            return null;
+        }
+        MatrixCursor cursor = new MatrixCursor(
+                new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE}, 1);
+        cursor.addRow(new Object[]{file.getName(), file.length()});
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("Frames are read-only");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Frames are read-only");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("Frames are read-only");
+    }
+}
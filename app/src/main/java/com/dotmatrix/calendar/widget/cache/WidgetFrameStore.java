@@ -0,0 +1,339 @@
+package com.dotmatrix.calendar.widget.cache;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Rendered widget frames on disk, served to the launcher by {@link WidgetFrameProvider}.
+ * RemoteViews then carry a small content URI instead of the parceled bitmap.
+ *
+ * Every written frame gets a new file name, so the URI changes whenever the pixels do
+ * (ImageView skips reloading a URI it already shows). A bitmap that was written before
+ * is not encoded again.
+ *
+ * Frames set on views are encoded on a thread of their own, so the render thread can go on
+ * with the next widget; pushes go through {@link #whenStored} to reach the launcher after
+ * the files they point to. The provider isn't exported: home apps are granted read access
+ * with every push, and frames are inlined when no home app can be granted it.
+ */
+public final class WidgetFrameStore {
+
+    private static final String TAG = "WidgetFrameStore";
+    private static final String FRAMES_DIR = "widget_frames";
+    private static final String EXTENSION = ".png";
+    // Superseded frames stay this long, in case another push still references them
+    private static final long PRUNE_GRACE_MS = 60_000L;
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
+    // Seeded from the clock so names never repeat across process restarts
+    private static final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+    // Frame file already written (or queued) for a cached bitmap instance
+    private static final Map<Bitmap, String> writtenFrames = new WeakHashMap<>();
+    // Bitmaps queued for encoding; guarded by writtenFrames
+    private static final Set<Bitmap> encoding = new HashSet<>();
+    // PNG encoding and the pushes queued behind it, in order
+    private static final ExecutorService encoder = Executors.newSingleThreadExecutor();
+    // Whether home apps could read the frames of the push being run; encoder thread only
+    private static Boolean pushAccess;
+
+    private WidgetFrameStore() {
+    }
+
+    /**
+     * Authority of {@link WidgetFrameProvider}, as declared in the manifest.
+     */
+    public static String authority(Context context) {
+        return context.getPackageName() + ".frames";
+    }
+
+    /**
+     * Show a frame in an ImageView of the given RemoteViews, by URI when it can be
+     * stored and inline as before otherwise. The frame is encoded in the background:
+     * push the views with {@link #whenStored}.
+     *
+     * @return file name of the frame, or null if the bitmap was inlined
+     */
+    public static String setFrame(Context context, RemoteViews views, int viewId,
+                                  String cacheKey, Bitmap bitmap) {
+        String name = queue(context, cacheKey, bitmap);
+        if (name != null) {
+            views.setImageViewUri(viewId, uriFor(context, name));
+        } else {
+            views.setImageViewBitmap(viewId, bitmap);
+        }
+        return name;
+    }
+
+    /**
+     * Run a task once every frame set so far has been written, typically the push of the
+     * views showing them. Tasks run one at a time, in the order they were queued.
+     */
+    public static void whenStored(Runnable task) {
+        encoder.execute(() -> {
+            // Resolved again for each push, so home apps installed since can read its frames
+            pushAccess = null;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // An uncaught exception would take the process down with the encoder
+                Log.w(TAG, "Queued push failed", e);
+            }
+        });
+    }
+
+    /**
+     * Show a frame inline if it could not be written or the launcher can't be given access
+     * to it. Call from a {@link #whenStored} task, before the push.
+     *
+     * @return whether the frame was inlined
+     */
+    public static boolean inlineIfMissing(Context context, RemoteViews views, int viewId,
+                                          String name, Bitmap bitmap) {
+        if (name == null || bitmap.isRecycled()) {
+            return false;
+        }
+        if (isStored(context, name) && hasLauncherAccess(context)) {
+            return false;
+        }
+        views.setImageViewBitmap(viewId, bitmap);
+        return true;
+    }
+
+    /**
+     * Write a frame now unless this bitmap was stored already.
+     *
+     * @return file name of the frame, or null if it could not be written
+     */
+    public static String store(Context context, String cacheKey, Bitmap bitmap) {
+        if (!isStorable(cacheKey, bitmap)) {
+            return null;
+        }
+        synchronized (writtenFrames) {
+            String existing = writtenFrames.get(bitmap);
+            if (existing != null && isStored(context, existing)) {
+                return existing;
+            }
+        }
+
+        String name = newName(cacheKey);
+        if (!write(context, name, bitmap)) {
+            return null;
+        }
+        synchronized (writtenFrames) {
+            writtenFrames.put(bitmap, name);
+        }
+        return name;
+    }
+
+    /**
+     * Whether the bitmap is waiting to be encoded; the bitmap cache leaves such bitmaps
+     * to the garbage collector instead of recycling them.
+     */
+    static boolean isEncoding(Bitmap bitmap) {
+        synchronized (writtenFrames) {
+            return encoding.contains(bitmap);
+        }
+    }
+
+    /**
+     * Name a frame and queue its encoding unless this bitmap was stored or queued already.
+     */
+    private static String queue(Context context, String cacheKey, Bitmap bitmap) {
+        if (!isStorable(cacheKey, bitmap)) {
+            return null;
+        }
+        String name;
+        synchronized (writtenFrames) {
+            String existing = writtenFrames.get(bitmap);
+            if (existing != null && (encoding.contains(bitmap) || isStored(context, existing))) {
+                return existing;
+            }
+            name = newName(cacheKey);
+            writtenFrames.put(bitmap, name);
+            encoding.add(bitmap);
+        }
+
+        Context appContext = context.getApplicationContext();
+        encoder.execute(() -> {
+            boolean written = write(appContext, name, bitmap);
+            synchronized (writtenFrames) {
+                encoding.remove(bitmap);
+                if (!written) {
+                    writtenFrames.remove(bitmap, name);
+                }
+            }
+        });
+        return name;
+    }
+
+    private static boolean isStorable(String cacheKey, Bitmap bitmap) {
+        return bitmap != null && !bitmap.isRecycled() && VALID_NAME.matcher(cacheKey).matches();
+    }
+
+    private static String newName(String cacheKey) {
+        return cacheKey + "-" + Long.toString(sequence.incrementAndGet(), 36) + EXTENSION;
+    }
+
+    private static boolean isStored(Context context, String name) {
+        return new File(framesDir(context), name).isFile();
+    }
+
+    private static boolean write(Context context, String name, Bitmap bitmap) {
+        File dir = framesDir(context);
+        File target = new File(dir, name);
+        File temp = new File(dir, name + ".tmp");
+        try {
+            if (bitmap.isRecycled() || (!dir.isDirectory() && !dir.mkdirs())) {
+                return false;
+            }
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                // PNG keeps the dots crisp; quality is ignored for lossless formats
+                if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                    temp.delete();
+                    return false;
+                }
+            }
+            // Readers only ever see complete files
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                return false;
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // IllegalStateException: recycled while queued, despite isEncoding
+            Log.w(TAG, "Could not store frame " + name, e);
+            temp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Whether home apps can read the frames of the push being run, granting once per push.
+     */
+    private static boolean hasLauncherAccess(Context context) {
+        if (pushAccess == null) {
+            pushAccess = grantLauncherAccess(context);
+        }
+        return pushAccess;
+    }
+
+    /**
+     * Let every home app read the frames: the launcher loads the URIs set with
+     * setImageViewUri itself. One grant covers the whole authority.
+     *
+     * @return whether any home app was granted access
+     */
+    private static boolean grantLauncherAccess(Context context) {
+        Uri root = new Uri.Builder().scheme("content").authority(authority(context)).build();
+        Intent home = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_HOME);
+        boolean granted = false;
+        for (ResolveInfo info : context.getPackageManager()
+                .queryIntentActivities(home, PackageManager.MATCH_DEFAULT_ONLY)) {
+            try {
+                context.grantUriPermission(info.activityInfo.packageName, root,
+                        Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PREFIX_URI_PERMISSION);
+                granted = true;
+            } catch (SecurityException | IllegalArgumentException e) {
+                // Uninstalled since it was resolved
+                Log.w(TAG, "Could not grant frame access to " + info.activityInfo.packageName, e);
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * Content URI of a stored frame.
+     */
+    public static Uri uriFor(Context context, String name) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(authority(context))
+                .appendPath(name)
+                .build();
+    }
+
+    /**
+     * Remove a widget's frames other than the given ones, once they are older than
+     * the grace period. Frames of bitmaps still held in memory are kept too: publishing
+     * such a bitmap again (say after resizing back) reuses its file.
+     */
+    public static void retain(Context context, int widgetId, Collection<String> names) {
+        Set<String> live = new HashSet<>();
+        synchronized (writtenFrames) {
+            for (Map.Entry<Bitmap, String> entry : writtenFrames.entrySet()) {
+                if (!entry.getKey().isRecycled()) {
+                    live.add(entry.getValue());
+                }
+            }
+        }
+        long cutoff = System.currentTimeMillis() - PRUNE_GRACE_MS;
+        for (File file : framesOf(context, widgetId)) {
+            String name = file.getName();
+            if (!names.contains(name) && !live.contains(name) && file.lastModified() < cutoff) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Whether any frame of the widget is on disk (the cache directory may have been cleared).
+     */
+    public static boolean hasFrames(Context context, int widgetId) {
+        return framesOf(context, widgetId).length > 0;
+    }
+
+    /**
+     * Remove all frames of a deleted widget, after any still being written.
+     */
+    public static void delete(Context context, int widgetId) {
+        Context appContext = context.getApplicationContext();
+        encoder.execute(() -> {
+            for (File file : framesOf(appContext, widgetId)) {
+                file.delete();
+            }
+        });
+    }
+
+    /**
+     * File behind a frame URI, or null if the URI does not name a stored frame.
+     */
+    static File resolve(Context context, Uri uri) {
+        String name = uri.getLastPathSegment();
+        if (name == null || uri.getPathSegments().size() != 1
+                || !VALID_NAME.matcher(name).matches() || !name.endsWith(EXTENSION)) {
+            return null;
+        }
+        File file = new File(framesDir(context), name);
+        return file.isFile() ? file : null;
+    }
+
+    private static File[] framesOf(Context context, int widgetId) {
+        // Cache keys start with the widget id
+        String prefix = widgetId + "-";
+        File[] files = framesDir(context).listFiles((dir, name) -> name.startsWith(prefix));
+        return files != null ? files : new File[0];
+    }
+
+    private static File framesDir(Context context) {
+        return new File(context.getCacheDir(), FRAMES_DIR);
+    }
+}
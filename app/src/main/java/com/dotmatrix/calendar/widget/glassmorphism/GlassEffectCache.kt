@@ -35,13 +35,23 @@ object GlassEffectCache {
         cache.put(key, bitmap)
     }
     
+    /**
+     * Most recently used glass background of a widget at any size, or null.
+     * Used to stretch into draft frames while the widget is being resized.
+     */
+    fun latestFor(widgetId: Int): Bitmap? {
+        val prefix = "glass_${widgetId}_"
+        // Snapshot is ordered from least to most recently used
+        return cache.snapshot().entries.lastOrNull { it.key.startsWith(prefix) && !it.value.isRecycled }?.value
+    }
+
     /**
      * Invalidates cache for specific widget.
      */
     fun invalidate(widgetId: Int) {
         val snapshot = cache.snapshot()
         for (key in snapshot.keys) {
-            if (key.startsWith("glass_$widgetId")) {
+            if (key.startsWith("glass_${widgetId}_")) {
                 cache.remove(key)
             }
         }
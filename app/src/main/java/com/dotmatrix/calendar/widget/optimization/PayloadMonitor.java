@@ -0,0 +1,226 @@
+package com.dotmatrix.calendar.widget.optimization;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures what each widget publish costs and keeps updates within a binder budget.
+ *
+ * Every publish is recorded (payload size, bitmap dimensions, latency) in a fixed-size
+ * ring buffer. Before rendering, {@link #scaleFor} picks a render scale so the projected
+ * transaction of one update stays within the budget. Frames served by URI cost only
+ * the parceled views, measured per widget as publishes are recorded; inlined bitmaps
+ * add their ARGB bytes. Scale decisions are logged and kept for {@link #dump}.
+ */
+public class PayloadMonitor {
+
+    private static final String TAG = "PayloadMonitor";
+    private static final int MAX_SAMPLES = 64;
+    private static final int MAX_DECISIONS = 32;
+    // Half the 1 MB binder buffer, which is shared with every other transaction in flight
+    private static final long DEFAULT_BUDGET_BYTES = 512 * 1024;
+    // Parceled views of a widget not measured yet: layout, URIs and click intent
+    private static final long DEFAULT_VIEWS_BYTES = 4 * 1024;
+    // Below this the dots get too coarse; an inlined frame still over budget here isn't sent
+    private static final float MIN_SCALE = 0.5f;
+    private static volatile PayloadMonitor INSTANCE;
+
+    private final Sample[] samples = new Sample[MAX_SAMPLES];
+    private int nextSample;
+    private int sampleCount;
+    private final String[] decisions = new String[MAX_DECISIONS];
+    private int nextDecision;
+    private int decisionCount;
+    // Last measured size of each widget's views without inlined bitmaps
+    private final Map<Integer, Long> viewsBytes = new HashMap<>();
+
+    private volatile long budgetBytes = DEFAULT_BUDGET_BYTES;
+
+    /**
+     * One recorded publish.
+     */
+    public static final class Sample {
+        public final int widgetId;
+        public final long timestamp;
+        /** Parceled size of the RemoteViews; with inlined bitmaps, their bytes plus the measured views */
+        public final long payloadBytes;
+        public final int bitmapWidth;
+        public final int bitmapHeight;
+        public final float scale;
+        public final long publishMillis;
+
+        Sample(int widgetId, long payloadBytes, int bitmapWidth, int bitmapHeight,
+               float scale, long publishMillis) {
+            this.widgetId = widgetId;
+            this.timestamp = System.currentTimeMillis();
+            this.payloadBytes = payloadBytes;
+            this.bitmapWidth = bitmapWidth;
+            this.bitmapHeight = bitmapHeight;
+            this.scale = scale;
+            this.publishMillis = publishMillis;
+        }
+    }
+
+    private PayloadMonitor() {
+    }
+
+    public static PayloadMonitor getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (PayloadMonitor.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new PayloadMonitor();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Override the transaction budget of a single update.
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Projected transaction size of an update of a widget inlining this many bitmap bytes.
+     */
+    public long projectTransaction(int widgetId, long inlineBitmapBytes) {
+        synchronized (viewsBytes) {
+            Long measured = viewsBytes.get(widgetId);
+            return (measured != null ? measured : DEFAULT_VIEWS_BYTES) + inlineBitmapBytes;
+        }
+    }
+
+    /**
+     * Render scale (applied to width and height) that brings the projected transaction of
+     * one update within the budget, given the ARGB bytes it would inline at full size.
+     * 1 when it already fits; 0 when it doesn't fit even at {@link #MIN_SCALE}, in which
+     * case the caller should not send the inlined frame at all.
+     */
+    public float scaleFor(int widgetId, long inlineBitmapBytes) {
+        long budget = budgetBytes;
+        long projected = projectTransaction(widgetId, inlineBitmapBytes);
+        if (projected <= budget || inlineBitmapBytes <= 0) {
+            return 1f;
+        }
+        // Only the bitmaps shrink with the scale
+        long bitmapBudget = budget - (projected - inlineBitmapBytes);
+        float scale = bitmapBudget > 0 ? (float) Math.sqrt((double) bitmapBudget / inlineBitmapBytes) : 0f;
+        if (scale < MIN_SCALE) {
+            logDecision(String.format(Locale.US,
+                    "widget %d: %d KB over %d KB budget even at %.2fx, not sending",
+                    widgetId, projected / 1024, budget / 1024, MIN_SCALE));
+            return 0f;
+        }
+        // Round down so the result stays under budget after pixel rounding
+        scale = (float) Math.floor(scale * 20) / 20f;
+        logDecision(String.format(Locale.US,
+                "widget %d: %d KB over %d KB budget, rendering at %.2fx",
+                widgetId, projected / 1024, budget / 1024, scale));
+        return scale;
+    }
+
+    /**
+     * Record a publish. Views without inlined bitmaps are parceled to measure the real
+     * payload, which also becomes the widget's views size for projections. Inlined
+     * bitmaps are counted by byte size rather than parceling them a second time.
+     */
+    public void record(int widgetId, RemoteViews views, long inlineBitmapBytes,
+                       int bitmapWidth, int bitmapHeight, float scale, long publishMillis) {
+        long payloadBytes;
+        if (inlineBitmapBytes > 0) {
+            payloadBytes = projectTransaction(widgetId, inlineBitmapBytes);
+        } else {
+            payloadBytes = parceledSize(views);
+            synchronized (viewsBytes) {
+                viewsBytes.put(widgetId, payloadBytes);
+            }
+        }
+        Sample sample = new Sample(widgetId, payloadBytes, bitmapWidth, bitmapHeight, scale, publishMillis);
+        synchronized (samples) {
+            samples[nextSample] = sample;
+            nextSample = (nextSample + 1) % MAX_SAMPLES;
+            sampleCount = Math.min(sampleCount + 1, MAX_SAMPLES);
+        }
+    }
+
+    /**
+     * Recorded publishes, oldest first.
+     */
+    public List<Sample> getSamples() {
+        synchronized (samples) {
+            List<Sample> result = new ArrayList<>(sampleCount);
+            int start = (nextSample - sampleCount + MAX_SAMPLES) % MAX_SAMPLES;
+            for (int i = 0; i < sampleCount; i++) {
+                result.add(samples[(start + i) % MAX_SAMPLES]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Most recent publish of a widget, or null if none is recorded.
+     */
+    public Sample getLastSample(int widgetId) {
+        List<Sample> recorded = getSamples();
+        for (int i = recorded.size() - 1; i >= 0; i--) {
+            if (recorded.get(i).widgetId == widgetId) {
+                return recorded.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Samples and scale decisions as text, for debug exports.
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "Payload budget: %d KB%n", budgetBytes / 1024));
+        for (Sample sample : getSamples()) {
+            out.append(String.format(Locale.US,
+                    "%d widget=%d payload=%dB bitmap=%dx%d scale=%.2f publish=%dms%n",
+                    sample.timestamp, sample.widgetId, sample.payloadBytes,
+                    sample.bitmapWidth, sample.bitmapHeight, sample.scale, sample.publishMillis));
+        }
+        synchronized (decisions) {
+            int start = (nextDecision - decisionCount + MAX_DECISIONS) % MAX_DECISIONS;
+            for (int i = 0; i < decisionCount; i++) {
+                out.append(decisions[(start + i) % MAX_DECISIONS]).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private void logDecision(String decision) {
+        Log.i(TAG, decision);
+        synchronized (decisions) {
+            decisions[nextDecision] = System.currentTimeMillis() + " " + decision;
+            nextDecision = (nextDecision + 1) % MAX_DECISIONS;
+            decisionCount = Math.min(decisionCount + 1, MAX_DECISIONS);
+        }
+    }
+
+    private static long parceledSize(RemoteViews views) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            views.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
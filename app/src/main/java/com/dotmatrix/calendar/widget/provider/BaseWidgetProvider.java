@@ -13,14 +13,23 @@ import android.widget.RemoteViews;
 import com.dotmatrix.calendar.R;
 import com.dotmatrix.calendar.data.model.EmojiRule;
 import com.dotmatrix.calendar.data.model.WidgetConfig;
+import com.dotmatrix.calendar.data.model.WidgetSnapshot;
+import com.dotmatrix.calendar.data.repository.RenderBatch;
 import com.dotmatrix.calendar.data.model.WidgetType;
 import com.dotmatrix.calendar.data.repository.WidgetRepository;
 import com.dotmatrix.calendar.ui.editor.WidgetEditorActivity;
 import com.dotmatrix.calendar.util.DynamicColorHelper;
+import com.dotmatrix.calendar.widget.cache.IndexedFrameCache;
+import com.dotmatrix.calendar.widget.cache.PublishedFrames;
 import com.dotmatrix.calendar.widget.cache.WidgetBitmapCache;
+import com.dotmatrix.calendar.widget.cache.WidgetFrameStore;
+import com.dotmatrix.calendar.widget.optimization.PayloadMonitor;
 import com.dotmatrix.calendar.widget.renderer.DotRenderer;
+import com.dotmatrix.calendar.widget.renderer.IndexedFrame;
+import com.dotmatrix.calendar.widget.renderer.NativeGridRenderer;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -33,6 +42,9 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
     protected static final ExecutorService executor = Executors.newSingleThreadExecutor();
     protected static final DotRenderer renderer = new DotRenderer();
     
+    // More distinct sizes than this (unusual launchers) fall back to a single scaled bitmap
+    private static final int MAX_RESPONSIVE_SIZES = 4;
+    
     // Note: Resize handling moved to WidgetResizeHandler for launcher-specific optimizations
 
     /**
@@ -47,9 +59,22 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        for (int widgetId : appWidgetIds) {
-            updateWidget(context, appWidgetManager, widgetId);
-        }
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            // One config and one rule query for the whole fan-out (midnight, theme, boot)
+            RenderBatch batch;
+            try {
+                batch = WidgetRepository.getInstance(appContext)
+                        .loadRenderBatch(appWidgetIds, getWidgetType());
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+            for (int widgetId : appWidgetIds) {
+                renderAndPush(appContext, appWidgetManager, widgetId, null,
+                        batch.getSnapshot(widgetId), batch.getRules(widgetId), false);
+            }
+        });
     }
 
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
@@ -59,9 +84,15 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
         final AppWidgetManager awm = appWidgetManager;
         
         com.dotmatrix.calendar.widget.resize.WidgetResizeHandler.getInstance()
-            .handleResize(appContext, appWidgetId, newOptions, (widgetId, width, height, options) -> {
-                // Widget was resized, invalidate cache and re-render
-                WidgetBitmapCache.getInstance().invalidate(widgetId);
+            .handleResize(appContext, appWidgetId, newOptions, (widgetId, width, height, options, draft) -> {
+                if (draft) {
+                    // Mid-drag: cheap frame, replaced by the full render once the drag settles
+                    updateWidget(appContext, awm, widgetId, options, true);
+                    return;
+                }
+                // Widget was resized, re-render. Cache keys carry the size, so cached
+                // frames (including pre-rendered ones, see SizePrewarmer) stay valid
+                PublishedFrames.getInstance(appContext).forget(widgetId);
                 updateWidget(appContext, awm, widgetId, options);
             });
     }
@@ -70,12 +101,24 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
     public void onDeleted(Context context, int[] appWidgetIds) {
         WidgetRepository repository = WidgetRepository.getInstance(context);
         
+        PublishedFrames publishedFrames = PublishedFrames.getInstance(context);
         for (int widgetId : appWidgetIds) {
             // Delete config from database
             repository.deleteWidgetConfig(widgetId);
             // Clear bitmap cache
             WidgetBitmapCache.getInstance().invalidate(widgetId);
+            IndexedFrameCache.getInstance().invalidate(widgetId);
+            publishedFrames.forget(widgetId);
+            SizePrewarmer.getInstance(context).cancel(widgetId);
         }
+        
+        // After renders still running, so their frames are queued before the delete
+        final Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            for (int widgetId : appWidgetIds) {
+                WidgetFrameStore.delete(appContext, widgetId);
+            }
+        });
     }
 
     @Override
@@ -99,96 +142,560 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
      * Update a single widget with specific options.
      */
     protected void updateWidget(Context context, AppWidgetManager appWidgetManager, int widgetId, Bundle specificOptions) {
+        updateWidget(context, appWidgetManager, widgetId, specificOptions, false);
+    }
+
+    /**
+     * Update a single widget, optionally as an uncached draft (see {@link DotRenderer#setDraftMode}).
+     */
+    protected void updateWidget(Context context, AppWidgetManager appWidgetManager, int widgetId,
+                                Bundle specificOptions, boolean draft) {
         final Context appContext = context.getApplicationContext();
         executor.execute(() -> {
             try {
-                // Get widget options (size) - prioritize specific options if provided
-                Bundle options = specificOptions;
-                if (options == null) {
-                    options = appWidgetManager.getAppWidgetOptions(widgetId);
-                }
-                int width = 200; // default
-                int height = 200; // default
+                WidgetRepository repository = WidgetRepository.getInstance(appContext);
+                WidgetSnapshot snapshot = repository.getOrCreateSnapshot(widgetId, getWidgetType());
+                List<EmojiRule> rules = repository.getEmojiRules(widgetId);
+                renderAndPush(appContext, appWidgetManager, widgetId, specificOptions, snapshot, rules, draft);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
 
-                if (options != null) {
-                    int minWidth = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
-                    int minHeight = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT);
-                    
-                    if (minWidth > 0 && minHeight > 0) {
-                        // Use DeviceCompatHelper for OEM-specific dimension correction
-                        com.dotmatrix.calendar.util.DeviceCompatHelper compatHelper = 
-                            new com.dotmatrix.calendar.util.DeviceCompatHelper(appContext);
-                        float density = appContext.getResources().getDisplayMetrics().density;
-                        int[] correctedDims = compatHelper.correctWidgetDimensions(minWidth, minHeight, density);
-                        width = correctedDims[0];
-                        height = correctedDims[1];
-                    }
+    /**
+     * Render a widget from already loaded data and push it. Runs on the executor.
+     */
+    private void renderAndPush(Context context, AppWidgetManager appWidgetManager, int widgetId,
+                               Bundle specificOptions, WidgetSnapshot published, List<EmojiRule> rules,
+                               boolean draft) {
+        try {
+            // Get widget options (size) - prioritize specific options if provided
+            Bundle options = specificOptions;
+            if (options == null) {
+                options = appWidgetManager.getAppWidgetOptions(widgetId);
+            }
+            
+            // Resolve dynamic theme colors on top of the published snapshot
+            WidgetSnapshot snapshot = resolveDynamicColors(context, published);
+            LocalDate today = LocalDate.now();
+            
+            PayloadMonitor monitor = PayloadMonitor.getInstance(context);
+            
+            // Week and month grids the launcher can draw itself need no bitmap at all
+            WidgetConfig renderConfig = snapshot.toRenderConfig();
+            boolean nativeGrid = NativeGridRenderer.supports(renderConfig);
+            int layoutId = nativeGrid
+                    ? NativeGridRenderer.layoutFor(renderConfig.getWidgetType())
+                    : getLayoutResource();
+            
+            // The host keeps showing what we pushed last; skip the update if nothing changed
+            PublishedFrames publishedFrames = PublishedFrames.getInstance(context);
+            int wallpaperId = wallpaperId(context, snapshot);
+            long identity = 0;
+            if (draft && !nativeGrid) {
+                publishedFrames.forgetFrame(widgetId);
+            } else {
+                identity = PublishedFrames.identity(layoutId, options, today, snapshot,
+                        rules, wallpaperId);
+                if (isShown(context, widgetId, identity, nativeGrid)) {
+                    return;
                 }
-                
-                // Universal safety clamps (also in compatHelper, but belt-and-suspenders)
-                width = Math.max(100, Math.min(width, 2048));
-                height = Math.max(100, Math.min(height, 2048));
-                
-                // Get or create config
-                WidgetRepository repository = WidgetRepository.getInstance(context);
-                WidgetConfig config = repository.getOrCreateConfig(widgetId, getWidgetType());
-                
-                // Resolve dynamic theme colors if needed
-                resolveDynamicColors(context, config);
-                
-                // Generate cache key based on date and config
-                LocalDate today = LocalDate.now();
-                String cacheKey = WidgetBitmapCache.generateCacheKey(
-                        widgetId, width, height, 
-                        today.toString(), config.hashCode());
-                
-                // Check cache first to avoid unnecessary rendering
-                Bitmap bitmap = WidgetBitmapCache.getInstance().get(widgetId, cacheKey);
-                
-                if (bitmap == null || bitmap.isRecycled()) {
-                    // Cache miss - render new bitmap
-                    List<EmojiRule> rules = repository.getEmojiRules(widgetId);
-                    bitmap = renderWidget(appContext, width, height, config, rules, today);
-                    
-                    // Store in cache for future updates
-                    if (bitmap != null) {
-                        WidgetBitmapCache.getInstance().put(widgetId, cacheKey, bitmap);
-                    }
+            }
+            
+            int[] size = widgetSize(context, options);
+            int width = size[0];
+            int height = size[1];
+            
+            if (nativeGrid) {
+                // Cheap enough for every resize step, so drafts get the final views too
+                RemoteViews views = NativeGridRenderer.build(context, renderConfig, rules, today, width, height);
+                attachEditorIntent(context, views, widgetId);
+                Publication publication = new Publication();
+                publication.track(identity);
+                publish(context, appWidgetManager, widgetId, views, publication, false);
+                // Frames from before the switch are no longer shown, once the push is out
+                WidgetFrameStore.whenStored(() ->
+                        WidgetFrameStore.retain(context, widgetId, java.util.Collections.emptySet()));
+                return;
+            }
+            
+            // API 31+: one bitmap per size the launcher may show, so it can switch on
+            // rotation or unfold without waking us and nothing is scaled by the ImageView
+            Publication publication = new Publication();
+            if (!draft) {
+                publication.track(identity);
+            }
+            if (!draft && android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+                RemoteViews responsive = buildResponsiveViews(
+                        context, widgetId, options, snapshot, rules, today, publication);
+                if (responsive != null) {
+                    // Always a full update: partial updates are only sent on top of single-size
+                    // views. Unchanged backgrounds still go by the URI of their stored frame.
+                    publish(context, appWidgetManager, widgetId, responsive, publication, false);
+                    return;
                 }
-                
-                // Create RemoteViews
+            }
+            
+            // Stored layers travel by URI; only a draft's single inlined bitmap weighs on
+            // the transaction. The ImageViews scale a shrunk draft back up.
+            float scale = monitor.scaleFor(widgetId, draft ? (long) width * height * 4 : 0);
+            if (scale == 0f) {
+                // Too big for the budget even shrunk; the launcher keeps stretching the
+                // previous frame until the settled update, which goes by URI
+                return;
+            }
+            if (scale < 1f) {
+                width = Math.round(width * scale);
+                height = Math.round(height * scale);
+            }
+            publication.scale = scale;
+            
+            if (draft) {
+                pushDraft(context, appWidgetManager, widgetId, width, height, snapshot, rules, today, publication);
+                return;
+            }
+            
+            // The dot layer changes daily; the background only with theme, size or wallpaper
+            String dotsKey = frameKey(widgetId, width, height, today, snapshot);
+            Bitmap dots = renderCached(context, dotsKey, widgetId, width, height, snapshot, rules, today);
+            long backgroundIdentity = PublishedFrames.backgroundIdentity(getLayoutResource(), width, height,
+                    snapshot, wallpaperId);
+            
+            if (publishedFrames.isBackgroundPublished(widgetId, backgroundIdentity)) {
                 RemoteViews views = new RemoteViews(context.getPackageName(), getLayoutResource());
-                views.setImageViewBitmap(R.id.widget_image, bitmap);
-                
-                // Set click handler to open editor
-                Intent intent = new Intent(context, WidgetEditorActivity.class);
-                intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, widgetId);
-                intent.putExtra("widget_type", getWidgetType().name());
-                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-                
-                PendingIntent pendingIntent = PendingIntent.getActivity(
-                        context, widgetId, intent, 
-                        PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-                views.setOnClickPendingIntent(R.id.widget_container, pendingIntent);
-                
-                // Update widget
+                setLayer(context, views, R.id.widget_image, dots, dotsKey, publication);
+                String backgroundFrame = publishedFrames.getBackgroundFrame(widgetId);
+                if (backgroundFrame != null) {
+                    publication.frames.add(backgroundFrame);
+                }
+                publish(context, appWidgetManager, widgetId, views, publication, true);
+            } else {
+                String backgroundKey = backgroundKey(widgetId, width, height, snapshot);
+                Bitmap background = renderBackgroundCached(context, backgroundKey, widgetId, width, height, snapshot);
+                RemoteViews views = new RemoteViews(context.getPackageName(), getLayoutResource());
+                publication.backgroundFrame = setLayer(context, views, R.id.widget_background,
+                        background, backgroundKey, publication);
+                publication.backgroundIdentity = backgroundIdentity;
+                setLayer(context, views, R.id.widget_image, dots, dotsKey, publication);
+                attachEditorIntent(context, views, widgetId);
+                publish(context, appWidgetManager, widgetId, views, publication, false);
+            }
+            
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Widget size in pixels from its options, corrected for OEM launchers and clamped.
+     */
+    public static int[] widgetSize(Context context, Bundle options) {
+        int width = 200; // default
+        int height = 200; // default
+
+        if (options != null) {
+            int minWidth = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+            int minHeight = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT);
+            
+            if (minWidth > 0 && minHeight > 0) {
+                // Use DeviceCompatHelper for OEM-specific dimension correction
+                com.dotmatrix.calendar.util.DeviceCompatHelper compatHelper = 
+                    new com.dotmatrix.calendar.util.DeviceCompatHelper(context);
+                float density = context.getResources().getDisplayMetrics().density;
+                int[] correctedDims = compatHelper.correctWidgetDimensions(minWidth, minHeight, density);
+                width = correctedDims[0];
+                height = correctedDims[1];
+            }
+        }
+        
+        // Universal safety clamps (also in compatHelper, but belt-and-suspenders)
+        return new int[]{clampDimension(width), clampDimension(height)};
+    }
+
+    /**
+     * Whether the host already shows the frame with this identity, so the update can be
+     * skipped. Bitmap widgets also need their stored frames, which the host reads again.
+     */
+    static boolean isShown(Context context, int widgetId, long identity, boolean nativeGrid) {
+        return (nativeGrid || WidgetFrameStore.hasFrames(context, widgetId))
+                && PublishedFrames.getInstance(context).isPublished(widgetId, identity);
+    }
+
+    /**
+     * Push views to the launcher once their frames are written, record the publish and
+     * prune superseded frames. Partial updates are merged into the views the host already shows.
+     * What the push put on screen is recorded only after it went out.
+     */
+    static void publish(Context context, AppWidgetManager appWidgetManager, int widgetId,
+                                RemoteViews views, Publication publication, boolean partial) {
+        // Every push queues behind the encoder, so pushes keep their order
+        WidgetFrameStore.whenStored(() -> {
+            publication.inlineMissing(context);
+            long start = android.os.SystemClock.elapsedRealtime();
+            if (partial) {
+                appWidgetManager.partiallyUpdateAppWidget(widgetId, views);
+            } else {
                 appWidgetManager.updateAppWidget(widgetId, views);
-                
-            } catch (Exception e) {
-                e.printStackTrace();
+            }
+            long publishMillis = android.os.SystemClock.elapsedRealtime() - start;
+            
+            PayloadMonitor.getInstance(context).record(widgetId, views, publication.inlineBytes,
+                    publication.width, publication.height, publication.scale, publishMillis);
+            PublishedFrames publishedFrames = PublishedFrames.getInstance(context);
+            if (!partial) {
+                // A full push replaces the background layer
+                if (publication.backgroundFrame != null) {
+                    publishedFrames.rememberBackground(widgetId, publication.backgroundIdentity,
+                            publication.backgroundFrame);
+                } else {
+                    publishedFrames.forgetBackground(widgetId);
+                }
+            }
+            if (publication.tracked) {
+                publishedFrames.remember(widgetId, publication.identity);
+            }
+            if (!publication.frames.isEmpty()) {
+                WidgetFrameStore.retain(context, widgetId, publication.frames);
             }
         });
     }
 
+    /**
+     * Cache key of a dot layer: widget, size, date and snapshot fingerprint.
+     */
+    static String frameKey(int widgetId, int width, int height, LocalDate today,
+                                   WidgetSnapshot snapshot) {
+        return WidgetBitmapCache.generateCacheKey(
+                widgetId, width, height, 
+                "dots-" + today, snapshot.fingerprint());
+    }
+
+    /**
+     * Cache key of a background layer, independent of the date.
+     */
+    static String backgroundKey(int widgetId, int width, int height, WidgetSnapshot snapshot) {
+        return WidgetBitmapCache.generateCacheKey(
+                widgetId, width, height, "background", snapshot.backgroundFingerprint());
+    }
+
+    /**
+     * Background layer of a widget, through the bitmap cache.
+     */
+    private Bitmap renderBackgroundCached(Context context, String cacheKey, int widgetId, int width, int height,
+                                          WidgetSnapshot snapshot) {
+        Bitmap bitmap = WidgetBitmapCache.getInstance().get(widgetId, cacheKey);
+        if (bitmap == null || bitmap.isRecycled()) {
+            bitmap = renderer.renderBackground(context, width, height, snapshot.toRenderConfig());
+            WidgetBitmapCache.getInstance().put(widgetId, cacheKey, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Current wallpaper for wallpaper-based (glass) backgrounds, 0 for all others.
+     */
+    private static int wallpaperId(Context context, WidgetSnapshot snapshot) {
+        String themeId = snapshot.getThemeId();
+        if (themeId == null || !themeId.startsWith("glass_")) {
+            return 0;
+        }
+        try {
+            return android.app.WallpaperManager.getInstance(context)
+                    .getWallpaperId(android.app.WallpaperManager.FLAG_SYSTEM);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Push a draft frame during a resize drag. On top of a tracked background only the
+     * dot layer is replaced and the old background stretches until the drag settles;
+     * otherwise the whole draft goes out as one composed frame.
+     */
+    private void pushDraft(Context context, AppWidgetManager appWidgetManager, int widgetId,
+                           int width, int height, WidgetSnapshot snapshot, List<EmojiRule> rules,
+                           LocalDate today, Publication publication) {
+        boolean layered = PublishedFrames.getInstance(context).hasBackground(widgetId);
+        Bitmap bitmap;
+        // Drafts are short-lived and never cached
+        renderer.setDraftMode(true);
+        renderer.setForegroundOnly(layered);
+        try {
+            bitmap = renderWidget(context, width, height, snapshot.toRenderConfig(), rules, today);
+        } finally {
+            renderer.setDraftMode(false);
+            renderer.setForegroundOnly(false);
+        }
+        
+        RemoteViews views = new RemoteViews(context.getPackageName(), getLayoutResource());
+        setLayer(context, views, R.id.widget_image, bitmap, null, publication);
+        if (layered) {
+            // Still shown underneath, keep it when pruning
+            String backgroundFrame = PublishedFrames.getInstance(context).getBackgroundFrame(widgetId);
+            if (backgroundFrame != null) {
+                publication.frames.add(backgroundFrame);
+            }
+        } else {
+            attachEditorIntent(context, views, widgetId);
+        }
+        publish(context, appWidgetManager, widgetId, views, publication, layered);
+    }
+
+    /**
+     * Dot layer of a widget (no background), through the bitmap cache.
+     */
+    private Bitmap renderCached(Context context, String cacheKey, int widgetId, int width, int height,
+                                WidgetSnapshot snapshot, List<EmojiRule> rules, LocalDate today) {
+        // Check cache first to avoid unnecessary rendering
+        Bitmap bitmap = WidgetBitmapCache.getInstance().get(widgetId, cacheKey);
+        
+        if (bitmap == null || bitmap.isRecycled()) {
+            // Cache miss - recolor the role map if there is one, else render new bitmap
+            bitmap = recolorIndexed(context, widgetId, width, height, snapshot, rules, today);
+            if (bitmap == null) {
+                renderer.setForegroundOnly(true);
+                try {
+                    bitmap = renderWidget(context, width, height, snapshot.toRenderConfig(), rules, today);
+                } finally {
+                    renderer.setForegroundOnly(false);
+                }
+            }
+            
+            // Store in cache for future updates
+            if (bitmap != null) {
+                WidgetBitmapCache.getInstance().put(widgetId, cacheKey, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Dot layer resolved from the widget's cached role map with the snapshot's colors, or
+     * null if it has to be rendered. Role maps are kept for widgets whose colors follow the
+     * wallpaper, so a wallpaper change is a lookup-table pass instead of a full render.
+     */
+    private Bitmap recolorIndexed(Context context, int widgetId, int width, int height,
+                                  WidgetSnapshot snapshot, List<EmojiRule> rules, LocalDate today) {
+        WidgetConfig config = snapshot.toRenderConfig();
+        if (!DotRenderer.supportsIndexedFrame(config)) {
+            return null;
+        }
+        IndexedFrameCache indexedFrames = IndexedFrameCache.getInstance();
+        String rolesKey = rolesKey(widgetId, width, height, today, snapshot, rules);
+        IndexedFrame frame = indexedFrames.get(widgetId, rolesKey);
+        if (frame == null) {
+            if (!snapshot.followsWallpaper() || indexedFrames.isUnindexable(widgetId, rolesKey)) {
+                return null;
+            }
+            frame = renderer.renderIndexedFrame(context, width, height, config, rules, today);
+            if (frame == null) {
+                // Emoji are drawn in color, not by role
+                indexedFrames.markUnindexable(widgetId, rolesKey);
+                return null;
+            }
+            indexedFrames.put(widgetId, rolesKey, frame);
+        }
+        int[] palette = renderer.resolvePalette(config);
+        // Dot layer only; the background is its own layer
+        palette[IndexedFrame.ROLE_BACKGROUND] = 0;
+        return frame.toBitmap(IndexedFrame.buildLut(palette, null));
+    }
+
+    /**
+     * Role map key: like {@link #frameKey} but without colors, and with the rules since
+     * rule edits don't change the snapshot.
+     */
+    public static String rolesKey(int widgetId, int width, int height, LocalDate today, WidgetSnapshot snapshot,
+                           List<EmojiRule> rules) {
+        return WidgetBitmapCache.generateCacheKey(widgetId, width, height, "roles-" + today,
+                31L * snapshot.shapeFingerprint() + PublishedFrames.rulesHash(rules));
+    }
+
+    /**
+     * RemoteViews mapping every launcher-reported size (OPTION_APPWIDGET_SIZES) to a bitmap
+     * rendered at that size. Frames travel by URI, so the transaction stays small however
+     * many sizes there are. Null if the launcher reports no sizes, or too many.
+     */
+    @androidx.annotation.RequiresApi(android.os.Build.VERSION_CODES.S)
+    private RemoteViews buildResponsiveViews(Context context, int widgetId, Bundle options,
+                                             WidgetSnapshot snapshot, List<EmojiRule> rules, LocalDate today,
+                                             Publication publication) {
+        if (options == null) {
+            return null;
+        }
+        java.util.ArrayList<android.util.SizeF> sizes =
+                options.getParcelableArrayList(AppWidgetManager.OPTION_APPWIDGET_SIZES);
+        if (sizes == null || sizes.isEmpty()) {
+            return null;
+        }
+        
+        // Distinct pixel sizes; portrait and landscape often differ only in dp rounding
+        float density = context.getResources().getDisplayMetrics().density;
+        java.util.Set<Long> distinct = new java.util.HashSet<>();
+        for (android.util.SizeF size : sizes) {
+            int width = clampDimension(Math.round(size.getWidth() * density));
+            int height = clampDimension(Math.round(size.getHeight() * density));
+            distinct.add(((long) width << 32) | height);
+        }
+        if (distinct.size() > MAX_RESPONSIVE_SIZES) {
+            return null;
+        }
+        
+        // Same snapshot, rules and emoji index for every size; only geometry differs
+        java.util.Map<android.util.SizeF, RemoteViews> viewsBySize = new java.util.HashMap<>();
+        java.util.Map<Long, RemoteViews> viewsByPixels = new java.util.HashMap<>();
+        for (android.util.SizeF size : sizes) {
+            int width = clampDimension(Math.round(size.getWidth() * density));
+            int height = clampDimension(Math.round(size.getHeight() * density));
+            long key = ((long) width << 32) | height;
+            RemoteViews views = viewsByPixels.get(key);
+            if (views == null) {
+                String dotsKey = frameKey(widgetId, width, height, today, snapshot);
+                Bitmap dots = renderCached(context, dotsKey, widgetId, width, height, snapshot, rules, today);
+                String backgroundKey = backgroundKey(widgetId, width, height, snapshot);
+                Bitmap background = renderBackgroundCached(context, backgroundKey, widgetId, width, height, snapshot);
+                views = buildViews(context, widgetId, background, backgroundKey, dots, dotsKey, publication);
+                viewsByPixels.put(key, views);
+            }
+            viewsBySize.put(size, views);
+        }
+        return new RemoteViews(viewsBySize);
+    }
+
+    static int clampDimension(int px) {
+        return Math.max(100, Math.min(px, 2048));
+    }
+
+    /**
+     * RemoteViews showing both layers, with the click handler that opens the editor.
+     */
+    private RemoteViews buildViews(Context context, int widgetId, Bitmap background, String backgroundKey,
+                                   Bitmap dots, String dotsKey, Publication publication) {
+        // Create RemoteViews
+        RemoteViews views = new RemoteViews(context.getPackageName(), getLayoutResource());
+        setLayer(context, views, R.id.widget_background, background, backgroundKey, publication);
+        setLayer(context, views, R.id.widget_image, dots, dotsKey, publication);
+        attachEditorIntent(context, views, widgetId);
+        return views;
+    }
+
+    /**
+     * Show a layer. Layers with a key are stored and shown by URI; drafts without one are
+     * inlined, they are replaced within moments. Either way the layer is added to the
+     * publication.
+     *
+     * @return file name of the stored frame, or null if the layer was inlined
+     */
+    private static String setLayer(Context context, RemoteViews views, int viewId, Bitmap bitmap,
+                                   String key, Publication publication) {
+        String frame = null;
+        if (key != null) {
+            frame = WidgetFrameStore.setFrame(context, views, viewId, key, bitmap);
+        } else {
+            views.setImageViewBitmap(viewId, bitmap);
+        }
+        publication.add(views, viewId, frame, bitmap);
+        return frame;
+    }
+
+    /**
+     * Set the click handler that opens the editor.
+     */
+    private void attachEditorIntent(Context context, RemoteViews views, int widgetId) {
+        attachEditorIntent(context, views, widgetId, getWidgetType());
+    }
+
+    /**
+     * Set the click handler that opens the editor, for views built outside a provider.
+     */
+    public static void attachEditorIntent(Context context, RemoteViews views, int widgetId, WidgetType type) {
+        Intent intent = new Intent(context, WidgetEditorActivity.class);
+        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, widgetId);
+        intent.putExtra("widget_type", type.name());
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context, widgetId, intent, 
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        views.setOnClickPendingIntent(R.id.widget_container, pendingIntent);
+    }
+
+    /**
+     * What one update carries: stored frame names, the bytes of inlined bitmaps and the
+     * records to keep once it is pushed.
+     */
+    static final class Publication {
+        final List<String> frames = new ArrayList<>();
+        // Identity recorded after the push; drafts are not tracked
+        boolean tracked;
+        long identity;
+        // Background layer a full push leaves on screen, null if it is not tracked
+        String backgroundFrame;
+        long backgroundIdentity;
+        long inlineBytes;
+        float scale = 1f;
+        // Largest frame of the update
+        int width;
+        int height;
+        // Layers set by URI, inlined after all if their frame could not be written
+        private final List<Layer> stored = new ArrayList<>();
+
+        void track(long identity) {
+            this.tracked = true;
+            this.identity = identity;
+        }
+
+        void add(RemoteViews views, int viewId, String frame, Bitmap bitmap) {
+            if (bitmap == null) {
+                return;
+            }
+            if (frame != null) {
+                frames.add(frame);
+                stored.add(new Layer(views, viewId, frame, bitmap));
+            } else {
+                inlineBytes += bitmap.getByteCount();
+            }
+            if ((long) bitmap.getWidth() * bitmap.getHeight() > (long) width * height) {
+                width = bitmap.getWidth();
+                height = bitmap.getHeight();
+            }
+        }
+
+        /**
+         * Inline the layers whose frames failed to write. Runs on the encoder, before the push.
+         */
+        void inlineMissing(Context context) {
+            for (Layer layer : stored) {
+                if (WidgetFrameStore.inlineIfMissing(context, layer.views, layer.viewId,
+                        layer.frame, layer.bitmap)) {
+                    frames.remove(layer.frame);
+                    inlineBytes += layer.bitmap.getByteCount();
+                }
+            }
+        }
+    }
+
+    private static final class Layer {
+        final RemoteViews views;
+        final int viewId;
+        final String frame;
+        final Bitmap bitmap;
+
+        Layer(RemoteViews views, int viewId, String frame, Bitmap bitmap) {
+            this.views = views;
+            this.viewId = viewId;
+            this.frame = frame;
+            this.bitmap = bitmap;
+        }
+    }
+
     /**
      * Render the widget bitmap based on type.
      */
     protected abstract Bitmap renderWidget(Context context, int width, int height, WidgetConfig config,
                                             List<EmojiRule> rules, LocalDate currentDate);
 
-    /**
-     * Update all widgets of this type.
-     */
     /**
      * Update all widgets of this type.
      */
@@ -197,21 +704,31 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
         ComponentName componentName = new ComponentName(context, providerClass);
         int[] widgetIds = appWidgetManager.getAppWidgetIds(componentName);
         
-        if (widgetIds.length > 0) {
-            Intent intent = new Intent(context, providerClass);
-            intent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
-            intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, widgetIds);
-            context.sendBroadcast(intent);
+        updateWidgets(context, providerClass, widgetIds);
+    }
+
+    /**
+     * Update only the given widgets of this type with a single broadcast.
+     */
+    public static void updateWidgets(Context context, Class<? extends BaseWidgetProvider> providerClass,
+                                     int[] widgetIds) {
+        if (widgetIds == null || widgetIds.length == 0) {
+            return;
         }
+        
+        Intent intent = new Intent(context, providerClass);
+        intent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
+        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, widgetIds);
+        context.sendBroadcast(intent);
     }
 
     /**
      * Force immediate update of a specific widget.
      * Compatible with all Android versions; bypasses broadcast delays.
-     * This version accepts the config directly to avoid race conditions with database reads.
+     * This version accepts the snapshot directly to avoid race conditions with database reads.
      */
-    public static void forceUpdate(Context context, int widgetId, WidgetConfig config) {
-        if (config == null) return;
+    public static void forceUpdate(Context context, int widgetId, WidgetSnapshot snapshot) {
+        if (snapshot == null) return;
         
         executor.execute(() -> {
             try {
@@ -222,7 +739,7 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
                 Class<?> providerClass;
                 int layoutId;
                 
-                switch (config.getWidgetType()) {
+                switch (snapshot.getWidgetType()) {
                     case MONTH:
                         providerClass = MonthViewWidgetProvider.class;
                         layoutId = R.layout.widget_month;
@@ -258,46 +775,46 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
                 width = Math.max(100, Math.min(width, 2048));
                 height = Math.max(100, Math.min(height, 2048));
                 
-                // Resolve dynamic colors
-                if ("dynamic_harmony".equals(config.getThemeId()) || "chameleon_pro".equals(config.getThemeId())) {
-                    DynamicColorHelper helper = new DynamicColorHelper(context);
-                    if ("dynamic_harmony".equals(config.getThemeId())) {
-                         int[] colors = helper.getDynamicHarmonyColors();
-                         config.setBackgroundColor(colors[0]);
-                         config.setDotColor(colors[1]);
-                         config.setAccentColor(colors[2]);
-                    } else {
-                         int[] colors = helper.getChameleonProColors();
-                         config.setBackgroundColor(colors[0]);
-                         config.setDotColor(colors[1]);
-                         config.setAccentColor(colors[2]);
-                    }
-                }
+                // Resolve dynamic colors into a render-private copy
+                WidgetSnapshot resolved = resolveDynamicColors(context, snapshot);
+                WidgetConfig config = resolved.toRenderConfig();
                 
                 List<EmojiRule> rules = repository.getEmojiRules(widgetId);
                 LocalDate today = LocalDate.now();
                 
-                // 4. Render using the renderer (we need to cast or use the helper)
-                // Since this is static, we use the static renderer instance if available or create new
-                DotRenderer updateRenderer = new DotRenderer();
+                RemoteViews views = null;
+                String frame = null;
                 Bitmap bitmap = null;
-                
-                switch (config.getWidgetType()) {
-                    case YEAR:
-                        bitmap = updateRenderer.renderYearView(context, width, height, config, rules, today);
-                        break;
-                    case MONTH:
-                        bitmap = updateRenderer.renderMonthView(context, width, height, config, rules, today);
-                        break;
-                    case WEEK:
-                        bitmap = updateRenderer.renderWeekView(context, width, height, config, rules, today);
-                        break;
+                boolean nativeGrid = NativeGridRenderer.supports(config);
+                if (nativeGrid) {
+                    views = NativeGridRenderer.build(context, config, rules, today, width, height);
+                } else {
+                    // 4. Render using the renderer (we need to cast or use the helper)
+                    // Since this is static, we use the static renderer instance if available or create new
+                    DotRenderer updateRenderer = new DotRenderer();
+                    
+                    switch (config.getWidgetType()) {
+                        case YEAR:
+                            bitmap = updateRenderer.renderYearView(context, width, height, config, rules, today);
+                            break;
+                        case MONTH:
+                            bitmap = updateRenderer.renderMonthView(context, width, height, config, rules, today);
+                            break;
+                        case WEEK:
+                            bitmap = updateRenderer.renderWeekView(context, width, height, config, rules, today);
+                            break;
+                    }
+                    
+                    if (bitmap != null) {
+                        views = new RemoteViews(context.getPackageName(), layoutId);
+                        // Composed frame, both layers in one bitmap
+                        String frameKey = WidgetBitmapCache.generateCacheKey(
+                                widgetId, width, height, today.toString(), resolved.fingerprint());
+                        frame = WidgetFrameStore.setFrame(context, views, R.id.widget_image, frameKey, bitmap);
+                    }
                 }
                 
-                if (bitmap != null) {
-                    RemoteViews views = new RemoteViews(context.getPackageName(), layoutId);
-                    views.setImageViewBitmap(R.id.widget_image, bitmap);
-                    
+                if (views != null) {
                     Intent intent = new Intent(context, WidgetEditorActivity.class);
                     intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, widgetId);
                     intent.putExtra("widget_type", config.getWidgetType().name());
@@ -308,7 +825,10 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
                             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
                     views.setOnClickPendingIntent(R.id.widget_container, pendingIntent);
                     
-                    appWidgetManager.updateAppWidget(widgetId, views);
+                    // Pushed outside the tracked path; the next regular update goes through
+                    PublishedFrames.getInstance(context).forget(widgetId);
+                    pushFrame(context, appWidgetManager, widgetId, views, frame, bitmap,
+                            width, height, nativeGrid);
                 }
                 
             } catch (Exception e) {
@@ -317,6 +837,33 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
         });
     }
 
+    /**
+     * Push views showing a single frame once it is written, inlining it if that failed,
+     * and prune the widget's other frames.
+     *
+     * @param frame  file name from {@link WidgetFrameStore#setFrame}, null if inlined or none
+     * @param bitmap the frame's bitmap, null for a native grid
+     */
+    public static void pushFrame(Context context, AppWidgetManager appWidgetManager, int widgetId,
+                                 RemoteViews views, String frame, Bitmap bitmap, int width, int height,
+                                 boolean nativeGrid) {
+        WidgetFrameStore.whenStored(() -> {
+            boolean inlined = WidgetFrameStore.inlineIfMissing(
+                    context, views, R.id.widget_image, frame, bitmap);
+            String stored = inlined ? null : frame;
+            long inlineBytes = bitmap != null && stored == null ? bitmap.getByteCount() : 0;
+            long start = android.os.SystemClock.elapsedRealtime();
+            appWidgetManager.updateAppWidget(widgetId, views);
+            PayloadMonitor.getInstance(context).record(widgetId, views, inlineBytes,
+                    width, height, 1f, android.os.SystemClock.elapsedRealtime() - start);
+            if (stored != null) {
+                WidgetFrameStore.retain(context, widgetId, java.util.Collections.singleton(stored));
+            } else if (nativeGrid) {
+                WidgetFrameStore.retain(context, widgetId, java.util.Collections.emptySet());
+            }
+        });
+    }
+
     /**
      * Overload: Force update by reading config from database.
      * Used by midnight receivers and other non-editor callers.
@@ -324,34 +871,32 @@ public abstract class BaseWidgetProvider extends AppWidgetProvider {
     public static void forceUpdate(Context context, int widgetId) {
         executor.execute(() -> {
             WidgetRepository repository = WidgetRepository.getInstance(context);
-            WidgetConfig config = repository.getWidgetConfig(widgetId);
-            if (config != null) {
-                // Re-invoke with config loaded from DB
+            WidgetSnapshot snapshot = repository.getWidgetSnapshot(widgetId);
+            if (snapshot != null) {
+                // Re-invoke with the published snapshot
                 // Since we're already on the executor, use this pattern
-                forceUpdate(context.getApplicationContext(), widgetId, config);
+                forceUpdate(context.getApplicationContext(), widgetId, snapshot);
             }
         });
     }
 
     /**
      * Resolve dynamic theme colors (Material You) for dynamic_harmony and chameleon_pro themes.
-     * This replaces the 0x00000000 placeholder colors with actual system colors.
+     * The 0x00000000 placeholder colors are replaced in a derived layer of the snapshot;
+     * the published config itself is left untouched.
      */
-    private void resolveDynamicColors(Context context, WidgetConfig config) {
-        String themeId = config.getThemeId();
+    public static WidgetSnapshot resolveDynamicColors(Context context, WidgetSnapshot snapshot) {
+        String themeId = snapshot.getThemeId();
         
         if ("dynamic_harmony".equals(themeId)) {
             DynamicColorHelper helper = new DynamicColorHelper(context);
             int[] colors = helper.getDynamicHarmonyColors();
-            config.setBackgroundColor(colors[0]);
-            config.setDotColor(colors[1]);
-            config.setAccentColor(colors[2]);
+            return snapshot.withResolvedColors(colors[0], colors[1], colors[2]);
         } else if ("chameleon_pro".equals(themeId)) {
             DynamicColorHelper helper = new DynamicColorHelper(context);
             int[] colors = helper.getChameleonProColors();
-            config.setBackgroundColor(colors[0]);
-            config.setDotColor(colors[1]);
-            config.setAccentColor(colors[2]);
+            return snapshot.withResolvedColors(colors[0], colors[1], colors[2]);
         }
+        return snapshot;
     }
 }
@@ -0,0 +1,243 @@
+package com.dotmatrix.calendar.widget.provider;
+
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.model.WidgetConfig;
+import com.dotmatrix.calendar.data.model.WidgetSnapshot;
+import com.dotmatrix.calendar.data.model.WidgetType;
+import com.dotmatrix.calendar.data.repository.WidgetRepository;
+import com.dotmatrix.calendar.util.DeviceCompatHelper;
+import com.dotmatrix.calendar.util.PowerModeDetector;
+import com.dotmatrix.calendar.widget.cache.WidgetBitmapCache;
+import com.dotmatrix.calendar.widget.cache.WidgetFrameStore;
+import com.dotmatrix.calendar.widget.renderer.DotRenderer;
+import com.dotmatrix.calendar.widget.renderer.NativeGridRenderer;
+import com.dotmatrix.calendar.widget.resize.LauncherDimensions;
+import com.dotmatrix.calendar.widget.resize.WidgetResizeHandler;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders a widget ahead of time at the cell spans it is most likely to be resized to,
+ * so the first resize to one of them finds both layers in the bitmap cache and on disk
+ * instead of paying for a full render and glass blur.
+ *
+ * Scheduled when the editor saves. Runs on a lowest-priority thread, only fills free
+ * cache space and stops as soon as the device is in power-save mode.
+ */
+public class SizePrewarmer {
+
+    private static final String TAG = "SizePrewarmer";
+    // Spans {columns, rows}, most likely first
+    private static final int[][] SPANS = { {4, 2}, {4, 3}, {4, 4}, {3, 2} };
+    private static final int[][] WEEK_SPANS = { {4, 1}, {4, 2}, {3, 1}, {3, 2} };
+    private static final int MAX_SIZES = 3;
+    private static volatile SizePrewarmer INSTANCE;
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        task.run();
+    }, TAG));
+    // Own renderer: the providers' one is used from their executor
+    private final DotRenderer renderer = new DotRenderer();
+    // Latest scheduled job per widget; older jobs stop at their next size
+    private final Map<Integer, Integer> generations = new ConcurrentHashMap<>();
+
+    private SizePrewarmer(Context context) {
+        this.context = context;
+    }
+
+    public static SizePrewarmer getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (SizePrewarmer.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SizePrewarmer(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Pre-render the likely sizes of a just-saved widget, replacing any job still
+     * running for it.
+     */
+    public void schedule(int widgetId) {
+        int generation = generations.merge(widgetId, 1, Integer::sum);
+        executor.execute(() -> {
+            try {
+                prewarm(widgetId, generation);
+            } catch (Exception e) {
+                Log.w(TAG, "Pre-rendering widget " + widgetId + " failed", e);
+            }
+        });
+    }
+
+    /**
+     * Stop pre-rendering a widget (call on widget delete).
+     */
+    public void cancel(int widgetId) {
+        generations.merge(widgetId, 1, Integer::sum);
+    }
+
+    private void prewarm(int widgetId, int generation) {
+        PowerModeDetector powerMode = new PowerModeDetector(context);
+        if (isCancelled(widgetId, generation, powerMode)) {
+            return;
+        }
+
+        WidgetRepository repository = WidgetRepository.getInstance(context);
+        WidgetSnapshot published = repository.getWidgetSnapshot(widgetId);
+        if (published == null) {
+            return;
+        }
+        // Same snapshot and keys as BaseWidgetProvider's regular updates
+        WidgetSnapshot snapshot = BaseWidgetProvider.resolveDynamicColors(context, published);
+        WidgetConfig config = snapshot.toRenderConfig();
+        if (NativeGridRenderer.supports(config)) {
+            return; // Drawn by the launcher, nothing to render
+        }
+        List<EmojiRule> rules = repository.getEmojiRules(widgetId);
+        LocalDate today = LocalDate.now();
+        WidgetBitmapCache cache = WidgetBitmapCache.getInstance(context);
+
+        for (int[] size : candidateSizes(widgetId, config.getWidgetType())) {
+            if (isCancelled(widgetId, generation, powerMode)) {
+                Log.d(TAG, "Pre-rendering widget " + widgetId + " cancelled");
+                return;
+            }
+            int width = size[0];
+            int height = size[1];
+            long bytes = (long) width * height * 4 * 2;
+            // Only free cache space, never evict frames in use
+            if (cache.getCurrentSize() + bytes > cache.getMaxSize()) {
+                continue;
+            }
+
+            String dotsKey = BaseWidgetProvider.frameKey(widgetId, width, height, today, snapshot);
+            if (cache.get(widgetId, dotsKey) == null) {
+                Bitmap dots;
+                renderer.setForegroundOnly(true);
+                try {
+                    dots = renderDots(width, height, config, rules, today);
+                } finally {
+                    renderer.setForegroundOnly(false);
+                }
+                cache.put(widgetId, dotsKey, dots);
+                WidgetFrameStore.store(context, dotsKey, dots);
+            }
+
+            String backgroundKey = BaseWidgetProvider.backgroundKey(widgetId, width, height, snapshot);
+            if (cache.get(widgetId, backgroundKey) == null) {
+                Bitmap background = renderer.renderBackground(context, width, height, config);
+                cache.put(widgetId, backgroundKey, background);
+                WidgetFrameStore.store(context, backgroundKey, background);
+            }
+        }
+    }
+
+    private boolean isCancelled(int widgetId, int generation, PowerModeDetector powerMode) {
+        Integer latest = generations.get(widgetId);
+        return latest == null || latest != generation || powerMode.isBatterySaveMode();
+    }
+
+    private Bitmap renderDots(int width, int height, WidgetConfig config, List<EmojiRule> rules,
+                              LocalDate today) {
+        switch (config.getWidgetType()) {
+            case MONTH:
+                return renderer.renderMonthView(context, width, height, config, rules, today);
+            case WEEK:
+                return renderer.renderWeekView(context, width, height, config, rules, today);
+            case YEAR:
+            default:
+                return renderer.renderYearView(context, width, height, config, rules, today);
+        }
+    }
+
+    /**
+     * Pixel sizes of the likely spans on the current launcher that the widget's resize
+     * range allows, excluding the size it has now.
+     */
+    private List<int[]> candidateSizes(int widgetId, WidgetType type) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        AppWidgetProviderInfo info = appWidgetManager.getAppWidgetInfo(widgetId);
+        int[] current = BaseWidgetProvider.widgetSize(context, appWidgetManager.getAppWidgetOptions(widgetId));
+        float density = context.getResources().getDisplayMetrics().density;
+        int[] cell = LauncherDimensions.cellSize(WidgetResizeHandler.detectLauncher(context));
+
+        List<int[]> sizes = new ArrayList<>();
+        for (int[] span : type == WidgetType.WEEK ? WEEK_SPANS : SPANS) {
+            int widthDp = span[0] * cell[0];
+            int heightDp = span[1] * cell[1];
+            if (info != null && !inResizeRange(info, widthDp * density, heightDp * density)) {
+                continue;
+            }
+            int[] size = pixelSize(widthDp, heightDp, density);
+            if (!contains(sizes, size) && (size[0] != current[0] || size[1] != current[1])) {
+                sizes.add(size);
+            }
+            if (sizes.size() == MAX_SIZES) {
+                break;
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Pixel size BaseWidgetProvider renders for a launcher-reported dp size.
+     */
+    private int[] pixelSize(int widthDp, int heightDp, float density) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            // Responsive path: one frame per reported size
+            return new int[] {
+                    BaseWidgetProvider.clampDimension(Math.round(widthDp * density)),
+                    BaseWidgetProvider.clampDimension(Math.round(heightDp * density))
+            };
+        }
+        int[] corrected = new DeviceCompatHelper(context)
+                .correctWidgetDimensions(widthDp, heightDp, density);
+        return new int[] {
+                BaseWidgetProvider.clampDimension(corrected[0]),
+                BaseWidgetProvider.clampDimension(corrected[1])
+        };
+    }
+
+    private static boolean inResizeRange(AppWidgetProviderInfo info, float widthPx, float heightPx) {
+        // Resize limits are in pixels; 0 means unset
+        int minWidth = info.minResizeWidth > 0 ? info.minResizeWidth : info.minWidth;
+        int minHeight = info.minResizeHeight > 0 ? info.minResizeHeight : info.minHeight;
+        if (widthPx < minWidth || heightPx < minHeight) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            if ((info.maxResizeWidth > 0 && widthPx > info.maxResizeWidth)
+                    || (info.maxResizeHeight > 0 && heightPx > info.maxResizeHeight)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(List<int[]> sizes, int[] size) {
+        for (int[] existing : sizes) {
+            if (existing[0] == size[0] && existing[1] == size[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
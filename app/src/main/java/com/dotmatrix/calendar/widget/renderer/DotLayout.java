@@ -1,10 +1,68 @@
 package com.dotmatrix.calendar.widget.renderer;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
 /**
  * Represents the calculated layout for dots in a widget.
+ *
+ * Layouts are immutable and memoized by geometry, so widgets of the same size and dot
+ * settings share one instance across renders and dates. Dot centers are precomputed
+ * per row and column.
  */
 public class DotLayout {
     
+    // Distinct geometries kept; a few per widget (sizes, drafts) is typical
+    private static final int MAX_CACHED = 64;
+    private static final Map<Key, DotLayout> cache = new LinkedHashMap<Key, DotLayout>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, DotLayout> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+    
+    private enum Kind { YEAR, MONTH, WEEK, PROGRESS }
+    
+    /**
+     * Everything a layout is computed from.
+     */
+    private static final class Key {
+        final Kind kind;
+        final int width;
+        final int height;
+        final float dotSize;
+        final float spacing;
+        final boolean hasHeader;
+        final int dotCount;
+        
+        Key(Kind kind, int width, int height, float dotSize, float spacing, boolean hasHeader, int dotCount) {
+            this.kind = kind;
+            this.width = width;
+            this.height = height;
+            this.dotSize = dotSize;
+            this.spacing = spacing;
+            this.hasHeader = hasHeader;
+            this.dotCount = dotCount;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return kind == key.kind && width == key.width && height == key.height
+                    && Float.compare(dotSize, key.dotSize) == 0
+                    && Float.compare(spacing, key.spacing) == 0
+                    && hasHeader == key.hasHeader && dotCount == key.dotCount;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, width, height, dotSize, spacing, hasHeader, dotCount);
+        }
+    }
+    
     private final int rows;
     private final int columns;
     private final float dotSize;
@@ -13,6 +71,8 @@ public class DotLayout {
     private final int totalHeight;
     private final float startX;
     private final float startY;
+    private final float[] centersX;
+    private final float[] centersY;
 
     public DotLayout(int rows, int columns, float dotSize, float spacing,
                      int totalWidth, int totalHeight, float startX, float startY) {
@@ -24,6 +84,31 @@ public class DotLayout {
         this.totalHeight = totalHeight;
         this.startX = startX;
         this.startY = startY;
+        
+        float step = dotSize + spacing;
+        centersX = new float[columns];
+        for (int column = 0; column < columns; column++) {
+            centersX[column] = startX + column * step + dotSize / 2;
+        }
+        centersY = new float[rows];
+        for (int row = 0; row < rows; row++) {
+            centersY[row] = startY + row * step + dotSize / 2;
+        }
+    }
+    
+    private interface Calculation {
+        DotLayout compute();
+    }
+    
+    private static DotLayout obtain(Key key, Calculation calculation) {
+        synchronized (cache) {
+            DotLayout layout = cache.get(key);
+            if (layout == null) {
+                layout = calculation.compute();
+                cache.put(key, layout);
+            }
+            return layout;
+        }
     }
 
     /**
@@ -35,6 +120,11 @@ public class DotLayout {
      * Respects user preference, scaling down ONLY if needed to fit.
      */
     public static DotLayout forYearView(int width, int height, float preferredDotSize, float preferredSpacing) {
+        return obtain(new Key(Kind.YEAR, width, height, preferredDotSize, preferredSpacing, false, 0),
+                () -> computeYearView(width, height, preferredDotSize, preferredSpacing));
+    }
+
+    private static DotLayout computeYearView(int width, int height, float preferredDotSize, float preferredSpacing) {
         int rows = 12;       // 12 months
         int columns = 31;    // Max 31 days
         
@@ -91,6 +181,12 @@ public class DotLayout {
      */
     public static DotLayout forMonthView(int width, int height, float preferredDotSize, 
                                           float preferredSpacing, boolean hasHeader) {
+        return obtain(new Key(Kind.MONTH, width, height, preferredDotSize, preferredSpacing, hasHeader, 0),
+                () -> computeMonthView(width, height, preferredDotSize, preferredSpacing, hasHeader));
+    }
+
+    private static DotLayout computeMonthView(int width, int height, float preferredDotSize,
+                                              float preferredSpacing, boolean hasHeader) {
         int rows = hasHeader ? 7 : 6;
         int columns = 7;
         
@@ -140,6 +236,12 @@ public class DotLayout {
      */
     public static DotLayout forProgressView(int width, int height, float preferredDotSize, 
                                              float preferredSpacing, int dotCount) {
+        return obtain(new Key(Kind.PROGRESS, width, height, preferredDotSize, preferredSpacing, false, dotCount),
+                () -> computeProgressView(width, height, preferredDotSize, preferredSpacing, dotCount));
+    }
+
+    private static DotLayout computeProgressView(int width, int height, float preferredDotSize,
+                                                 float preferredSpacing, int dotCount) {
         int columns = dotCount;
         int rows = 1;
         
@@ -177,6 +279,12 @@ public class DotLayout {
      */
     public static DotLayout forWeekView(int width, int height, float preferredDotSize, 
                                          float preferredSpacing, boolean hasHeader) {
+        return obtain(new Key(Kind.WEEK, width, height, preferredDotSize, preferredSpacing, hasHeader, 0),
+                () -> computeWeekView(width, height, preferredDotSize, preferredSpacing, hasHeader));
+    }
+
+    private static DotLayout computeWeekView(int width, int height, float preferredDotSize,
+                                             float preferredSpacing, boolean hasHeader) {
         int rows = hasHeader ? 2 : 1;
         int columns = 7;
         
@@ -231,14 +339,28 @@ public class DotLayout {
      * Get the center X position for a dot at given column.
      */
     public float getDotCenterX(int column) {
-        return startX + column * (dotSize + spacing) + dotSize / 2;
+        return centersX[column];
     }
 
     /**
      * Get the center Y position for a dot at given row.
      */
     public float getDotCenterY(int row) {
-        return startY + row * (dotSize + spacing) + dotSize / 2;
+        return centersY[row];
+    }
+
+    /**
+     * Center X of every column, for render loops. Shared between renders; do not modify.
+     */
+    float[] centersX() {
+        return centersX;
+    }
+
+    /**
+     * Center Y of every row, for render loops. Shared between renders; do not modify.
+     */
+    float[] centersY() {
+        return centersY;
     }
 
     /**
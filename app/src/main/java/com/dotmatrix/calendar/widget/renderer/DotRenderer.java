@@ -9,6 +9,7 @@ import android.graphics.Typeface;
 
 import com.dotmatrix.calendar.data.model.DotShape;
 import com.dotmatrix.calendar.data.model.DotStyle;
+import com.dotmatrix.calendar.data.model.EmojiDayIndex;
 import com.dotmatrix.calendar.data.model.EmojiRule;
 import com.dotmatrix.calendar.data.model.ProgressMode;
 import com.dotmatrix.calendar.data.model.RuleType;
@@ -26,10 +27,14 @@ import java.util.List;
  */
 public class DotRenderer {
 
+    // Fixed alpha of padding dots (days that don't exist in a month)
+    private static final int INACTIVE_DOT_ALPHA = 30;
+
     private final Paint dotPaint;
     private final Paint accentPaint;
     private final Paint pastDotPaint;
     private final Paint futureDotPaint;
+    private final Paint inactiveDotPaint;
     private final Paint textPaint;
     private final Paint emojiPaint;
     private final RectF rectF;
@@ -38,6 +43,16 @@ public class DotRenderer {
     private final Paint borderPaint;
     private final RectF borderRect;
 
+    // Indexed-frame mode: paints carry IndexedFrame role keys instead of theme colors
+    private boolean roleMode;
+    private boolean roleFrameHasEmoji;
+
+    // Draft mode (live resize): flat aliased dots and a rescaled cached background
+    private boolean draftMode;
+
+    // Dot layer only; the background is published as its own layer (see renderBackground)
+    private boolean foregroundOnly;
+
     public DotRenderer() {
         // PRESET: Premium Rendering Flags (iOS-quality)
         // ANTI_ALIAS: Smooth edges
@@ -58,6 +73,8 @@ public class DotRenderer {
         futureDotPaint = new Paint(flags);
         futureDotPaint.setSubpixelText(true);
         
+        inactiveDotPaint = new Paint(flags);
+        
         textPaint = new Paint(flags);
         textPaint.setTextAlign(Paint.Align.CENTER);
         textPaint.setSubpixelText(true);
@@ -86,14 +103,53 @@ public class DotRenderer {
     }
 
     /**
-     * Draw background with support for glassmorphism.
+     * Toggle cheap draft rendering for frames that are replaced shortly after,
+     * such as intermediate sizes during a resize drag.
+     * Drafts skip anti-aliasing and glow, and never blur the wallpaper.
      */
+    public void setDraftMode(boolean draft) {
+        this.draftMode = draft;
+    }
+
+    /**
+     * Toggle rendering of the dot layer alone, on a transparent bitmap.
+     * The background comes from {@link #renderBackground} and only changes with
+     * theme, size or wallpaper, while the dot layer changes every day.
+     */
+    public void setForegroundOnly(boolean foregroundOnly) {
+        this.foregroundOnly = foregroundOnly;
+    }
+
+    /**
+     * Render only the widget background (solid, blurred or glass).
+     */
+    public Bitmap renderBackground(android.content.Context context, int width, int height, WidgetConfig config) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        drawBackground(context, new Canvas(bitmap), width, height, config);
+        return bitmap;
+    }
+
     /**
      * Draw background with support for glassmorphism.
      */
     private void drawBackground(android.content.Context context, Canvas canvas, int width, int height, WidgetConfig config) {
+        if (roleMode || foregroundOnly) {
+            // Background coverage is captured separately (see renderIndexedFrame),
+            // background layers are rendered on their own
+            return;
+        }
         String themeId = config.getThemeId();
-        if (themeId != null && themeId.startsWith("glass_")) {
+        if (draftMode && themeId != null && themeId.startsWith("glass_")) {
+            // Stretch the last full-quality glass of this widget instead of re-blurring
+            Bitmap cached = com.dotmatrix.calendar.widget.glassmorphism.GlassEffectCache.INSTANCE
+                    .latestFor(config.getWidgetId());
+            if (cached != null) {
+                rectF.set(0, 0, width, height);
+                canvas.drawBitmap(cached, null, rectF, null);
+            } else {
+                drawStandardBackground(canvas, width, height, config);
+            }
+        } else if (themeId != null && themeId.startsWith("glass_")) {
             // Glassmorphism Effect
             try {
                 com.dotmatrix.calendar.widget.glassmorphism.GlassMaterial material;
@@ -122,9 +178,7 @@ public class DotRenderer {
     }
 
     private void drawStandardBackground(Canvas canvas, int width, int height, WidgetConfig config) {
-        // iOS-style corner radius (larger, more premium)
-        float cornerRadius = Math.min(width, height) * 0.12f; // 12% of smallest dimension
-        cornerRadius = Math.max(32f, Math.min(cornerRadius, 64f)); // Clamp between 32-64dp
+        float cornerRadius = backgroundCornerRadius(width, height);
         
         rectF.set(0, 0, width, height);
 
@@ -173,9 +227,12 @@ public class DotRenderer {
         }
     }
 
-    /**
-     * Render Year View widget.
-     */
+    private float backgroundCornerRadius(int width, int height) {
+        // iOS-style corner radius (larger, more premium)
+        float cornerRadius = Math.min(width, height) * 0.12f; // 12% of smallest dimension
+        return Math.max(32f, Math.min(cornerRadius, 64f)); // Clamp between 32-64dp
+    }
+
     /**
      * Render Year View widget.
      */
@@ -189,6 +246,7 @@ public class DotRenderer {
         
         // Setup paints
         setupPaints(config);
+        EmojiDayIndex emojiIndex = EmojiDayIndex.obtain(config.getWidgetId(), rules, currentDate.getYear());
         
         // Scale density proportionally to widget size
         // Base assumption: height of 500px = density 2.5 (standard widget)
@@ -213,7 +271,7 @@ public class DotRenderer {
         float footerHeight = displayMetricsAwareTextSize(24f); // Approx 24dp for footer area
         
         // Adjust text paint for footer
-        textPaint.setColor(config.getDotColor());
+        textPaint.setColor(textColor(config, 1f));
         // Footer Size: 13sp (slightly smaller, more elegant)
         textPaint.setTextSize(displayMetricsAwareTextSize(13f)); 
         // Footer Font: sans-serif-medium for "2026", sans-serif-light could be used for "days left" if we split styles
@@ -243,6 +301,9 @@ public class DotRenderer {
 
         int yearVal = currentDate.getYear();
         int currentDayOfYear = currentDate.getDayOfYear();
+        float[] centersX = layout.centersX();
+        float[] centersY = layout.centersY();
+        float dotRadius = layout.getDotSize() / 2;
         
         // Draw dots for each month and day
         for (int month = 1; month <= 12; month++) {
@@ -254,21 +315,20 @@ public class DotRenderer {
                 int col = day - 1;
                 
                 // Use offset coordinates (centered in top area)
-                float cx = layout.getDotCenterX(col) + padding; 
-                float cy = layout.getDotCenterY(row) + padding;
-                float radius = layout.getDotSize() / 2;
+                float cx = centersX[col] + padding;
+                float cy = centersY[row] + padding;
+                float radius = dotRadius;
                 
                 if (day > daysInMonth) {
-                    futureDotPaint.setAlpha(30);
                     // Force FILLED for background/future dots to keep noise low
-                    drawDot(canvas, cx, cy, radius, config.getDotShape(), futureDotPaint, DotStyle.FILLED);
+                    drawDot(canvas, cx, cy, radius, config.getDotShape(), inactiveDotPaint, DotStyle.FILLED);
                     continue;
                 }
                 
                 LocalDate date = LocalDate.of(yearVal, month, day);
                 int dayOfYear = date.getDayOfYear();
                 
-                String emoji = findEmoji(date, rules);
+                String emoji = findEmoji(emojiIndex, date, config, rules);
                 if (emoji != null) {
                     drawEmoji(canvas, cx, cy, radius, emoji);
                     continue;
@@ -318,6 +378,7 @@ public class DotRenderer {
         
         // Setup paints
         setupPaints(config);
+        EmojiDayIndex emojiIndex = EmojiDayIndex.obtain(config.getWidgetId(), rules, currentDate.getYear());
         
         
 
@@ -363,7 +424,7 @@ public class DotRenderer {
             }
             
             textPaint.setTextSize(layout.getDotSize() * 0.8f);
-            textPaint.setColor(applyOpacity(config.getDotColor(), 0.5f));
+            textPaint.setColor(textColor(config, 0.5f));
             
             for (int col = 0; col < 7; col++) {
                 float cx = layout.getDotCenterX(col) + padding;
@@ -375,15 +436,18 @@ public class DotRenderer {
         int currentDay = 1;
         int row = startRow;
         int col = firstDayOfWeek;
+        float[] centersX = layout.centersX();
+        float[] centersY = layout.centersY();
+        float dotRadius = layout.getDotSize() / 2;
         
         while (currentDay <= daysInMonth) {
-            float cx = layout.getDotCenterX(col) + padding;
-            float cy = layout.getDotCenterY(row) + padding;
-            float radius = layout.getDotSize() / 2;
+            float cx = centersX[col] + padding;
+            float cy = centersY[row] + padding;
+            float radius = dotRadius;
             
             LocalDate date = ym.atDay(currentDay);
             
-            String emoji = findEmoji(date, rules);
+            String emoji = findEmoji(emojiIndex, date, config, rules);
             if (emoji != null) {
                 drawEmoji(canvas, cx, cy, radius, emoji);
             } else {
@@ -479,10 +543,11 @@ public class DotRenderer {
         
         DotLayout layout = DotLayout.forProgressView(availableWidth, availableHeight, dotSizePx, spacingPx, dotCount);
         
+        float[] centersX = layout.centersX();
+        float cy = layout.getDotCenterY(0) + padding;
+        float radius = layout.getDotSize() / 2;
         for (int i = 0; i < dotCount; i++) {
-            float cx = layout.getDotCenterX(i) + padding;
-            float cy = layout.getDotCenterY(0) + padding;
-            float radius = layout.getDotSize() / 2;
+            float cx = centersX[i] + padding;
             
             Paint paint = (i < filledDots) ? dotPaint : futureDotPaint;
             DotStyle style = config.getDotStyle();
@@ -500,7 +565,7 @@ public class DotRenderer {
             String percentText = percentage + "%";
             
             textPaint.setTextSize(layout.getDotSize() * 2);
-            textPaint.setColor(config.getDotColor());
+            textPaint.setColor(textColor(config, 1f));
             
             float textX = width - padding - layout.getDotSize() * 2;
             float textY = height / 2f + layout.getDotSize() / 2;
@@ -526,6 +591,7 @@ public class DotRenderer {
         
         // Setup paints
         setupPaints(config);
+        EmojiDayIndex emojiIndex = EmojiDayIndex.obtain(config.getWidgetId(), rules, currentDate.getYear());
         
         
 
@@ -568,7 +634,7 @@ public class DotRenderer {
             }
             
             textPaint.setTextSize(layout.getDotSize() * 0.6f);
-            textPaint.setColor(applyOpacity(config.getDotColor(), 0.7f));
+            textPaint.setColor(textColor(config, 0.7f));
             
             for (int col = 0; col < 7; col++) {
                 float cx = layout.getDotCenterX(col) + padding;
@@ -579,14 +645,16 @@ public class DotRenderer {
         
         // Draw Dots
         int row = hasHeader ? 1 : 0;
+        float[] centersX = layout.centersX();
+        float cy = layout.getDotCenterY(row) + padding;
+        float dotRadius = layout.getDotSize() / 2;
         for (int col = 0; col < 7; col++) {
              LocalDate date = startOfWeek.plusDays(col);
              
-             float cx = layout.getDotCenterX(col) + padding;
-             float cy = layout.getDotCenterY(row) + padding;
-             float radius = layout.getDotSize() / 2;
+             float cx = centersX[col] + padding;
+             float radius = dotRadius;
              
-             String emoji = findEmoji(date, rules);
+             String emoji = findEmoji(emojiIndex, date, config, rules);
              if (emoji != null) {
                  drawEmoji(canvas, cx, cy, radius, emoji);
              } else {
@@ -608,7 +676,83 @@ public class DotRenderer {
         
         return bitmap;
     }
-    private void setupPaints(WidgetConfig config) {
+    /**
+     * Check whether a config can be rendered as an {@link IndexedFrame}.
+     * Glass and blurred backgrounds are wallpaper-dependent, so they need a full render.
+     */
+    public static boolean supportsIndexedFrame(WidgetConfig config) {
+        String themeId = config.getThemeId();
+        return !config.isHasBlur() && (themeId == null || !themeId.startsWith("glass_"));
+    }
+
+    /**
+     * Render the role map for a widget instead of a colored bitmap.
+     * Resolve it with {@link #resolvePalette} to get the regular render's colors,
+     * or with any interpolated palette for recolors and transitions.
+     * Glow dots are drawn without their halo, whose shadow would blend into the
+     * neighbouring dots' role keys.
+     *
+     * @return The frame, or null if the config or content (e.g. emoji) can't be indexed
+     */
+    public IndexedFrame renderIndexedFrame(android.content.Context context, int width, int height,
+                                           WidgetConfig config, List<EmojiRule> rules, LocalDate currentDate) {
+        if (!supportsIndexedFrame(config)) {
+            return null;
+        }
+        
+        Bitmap foreground;
+        roleMode = true;
+        roleFrameHasEmoji = false;
+        try {
+            switch (config.getWidgetType()) {
+                case MONTH:
+                    foreground = renderMonthView(context, width, height, config, rules, currentDate);
+                    break;
+                case WEEK:
+                    foreground = renderWeekView(context, width, height, config, rules, currentDate);
+                    break;
+                case PROGRESS:
+                    foreground = renderProgressView(context, width, height, config, currentDate);
+                    break;
+                case YEAR:
+                default:
+                    foreground = renderYearView(context, width, height, config, rules, currentDate);
+                    break;
+            }
+        } finally {
+            roleMode = false;
+        }
+        
+        if (roleFrameHasEmoji) {
+            foreground.recycle();
+            return null;
+        }
+        
+        // Background coverage: the rounded rect drawn fully opaque
+        Bitmap mask = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas maskCanvas = new Canvas(mask);
+        float cornerRadius = backgroundCornerRadius(width, height);
+        bgPaint.reset();
+        bgPaint.setAntiAlias(true);
+        bgPaint.setColor(Color.BLACK);
+        rectF.set(0, 0, width, height);
+        maskCanvas.drawRoundRect(rectF, cornerRadius, cornerRadius, bgPaint);
+        
+        int[] fgPixels = new int[width * height];
+        int[] bgPixels = new int[width * height];
+        foreground.getPixels(fgPixels, 0, width, 0, 0, width, height);
+        mask.getPixels(bgPixels, 0, width, 0, 0, width, height);
+        foreground.recycle();
+        mask.recycle();
+        
+        return IndexedFrame.decode(fgPixels, bgPixels, width, height);
+    }
+
+    /**
+     * Role colors for a config, indexed by the IndexedFrame ROLE_* constants.
+     * The same colors {@link #setupPaints} gives the dot paints.
+     */
+    public int[] resolvePalette(WidgetConfig config) {
         int dotColor = config.getDotColor();
         int accentColor = config.getAccentColor();
         
@@ -622,10 +766,50 @@ public class DotRenderer {
         
         float opacity = config.getDotOpacity();
         
-        dotPaint.setColor(applyOpacity(dotColor, opacity));
-        accentPaint.setColor(accentColor);
-        pastDotPaint.setColor(applyOpacity(dotColor, opacity * 0.7f));
-        futureDotPaint.setColor(applyOpacity(dotColor, opacity * 0.3f));
+        int[] palette = new int[IndexedFrame.ROLE_COUNT];
+        palette[IndexedFrame.ROLE_BACKGROUND] = applyOpacity(config.getBackgroundColor(), config.getBackgroundOpacity());
+        palette[IndexedFrame.ROLE_PAST] = applyOpacity(dotColor, opacity);
+        palette[IndexedFrame.ROLE_FUTURE] = applyOpacity(dotColor, opacity * 0.3f);
+        palette[IndexedFrame.ROLE_ACCENT] = accentColor;
+        // Text isn't contrast-enhanced (see textColor)
+        palette[IndexedFrame.ROLE_TEXT] = config.getDotColor();
+        palette[IndexedFrame.ROLE_INACTIVE] = INACTIVE_DOT_ALPHA << 24 | (dotColor & 0x00FFFFFF);
+        return palette;
+    }
+
+    private void setupPaints(WidgetConfig config) {
+        boolean antiAlias = !draftMode;
+        dotPaint.setAntiAlias(antiAlias);
+        accentPaint.setAntiAlias(antiAlias);
+        futureDotPaint.setAntiAlias(antiAlias);
+        inactiveDotPaint.setAntiAlias(antiAlias);
+        
+        if (roleMode) {
+            // Opacity lives in the palette, so role keys are drawn fully opaque
+            dotPaint.setColor(IndexedFrame.keyColor(IndexedFrame.ROLE_PAST, 255));
+            pastDotPaint.setColor(IndexedFrame.keyColor(IndexedFrame.ROLE_PAST, 255));
+            futureDotPaint.setColor(IndexedFrame.keyColor(IndexedFrame.ROLE_FUTURE, 255));
+            inactiveDotPaint.setColor(IndexedFrame.keyColor(IndexedFrame.ROLE_INACTIVE, 255));
+            accentPaint.setColor(IndexedFrame.keyColor(IndexedFrame.ROLE_ACCENT, 255));
+            return;
+        }
+        
+        int[] palette = resolvePalette(config);
+        dotPaint.setColor(palette[IndexedFrame.ROLE_PAST]);
+        accentPaint.setColor(palette[IndexedFrame.ROLE_ACCENT]);
+        pastDotPaint.setColor(applyOpacity(palette[IndexedFrame.ROLE_PAST], 0.7f));
+        futureDotPaint.setColor(palette[IndexedFrame.ROLE_FUTURE]);
+        inactiveDotPaint.setColor(palette[IndexedFrame.ROLE_INACTIVE]);
+    }
+
+    /**
+     * Text color at the given opacity; a TEXT role key while rendering an indexed frame.
+     */
+    private int textColor(WidgetConfig config, float opacity) {
+        if (roleMode) {
+            return IndexedFrame.keyColor(IndexedFrame.ROLE_TEXT, Math.round(255 * opacity));
+        }
+        return applyOpacity(config.getDotColor(), opacity);
     }
     
     /**
@@ -694,6 +878,14 @@ public class DotRenderer {
                 break;
             case GLOW:
                 paint.setStyle(Paint.Style.FILL);
+                if (draftMode) {
+                    // Shadow layers are the most expensive part of a dot
+                    break;
+                }
+                if (roleMode) {
+                    // The halo would blend into neighbouring role keys and decode as another role
+                    break;
+                }
                 // paint.setShadowLayer(radius, 0, 0, paint.getColor()); // Glow effect
                 // Note: setShadowLayer is expensive on hardware acceleration, 
                 // but bitmaps are software rendered so it's fine.
@@ -711,6 +903,11 @@ public class DotRenderer {
      * Draw an emoji at the specified position.
      */
     private void drawEmoji(Canvas canvas, float cx, float cy, float radius, String emoji) {
+        if (roleMode) {
+            // Color glyphs ignore paint color, so the frame can't be palette-indexed
+            roleFrameHasEmoji = true;
+            return;
+        }
         emojiPaint.setTextSize(radius * 2);
         canvas.drawText(emoji, cx, cy + radius * 0.4f, emojiPaint);
     }
@@ -724,70 +921,17 @@ public class DotRenderer {
     }
 
     /**
-     * Find matching emoji for a date from rules.
-     * DISABLED - Emoji rules feature removed.
-     */
-    private String findEmoji(LocalDate date, List<EmojiRule> rules) {
-        // Emoji rules feature disabled
-        return null;
-    }
-
-    /**
-     * Check if a date matches a rule.
+     * Find matching emoji for a date from the widget's compiled rules.
+     * Week and month views can cross into another year, which has its own index.
      */
-    private boolean matchesRule(LocalDate date, EmojiRule rule) {
-        if (rule.getRuleType() == null) {
-            return false;
+    private String findEmoji(EmojiDayIndex emojiIndex, LocalDate date, WidgetConfig config,
+                             List<EmojiRule> rules) {
+        if (emojiIndex.isEmpty()) {
+            return null;
         }
-        switch (rule.getRuleType()) {
-            case SPECIFIC_DATE:
-                if (rule.getStartDate() != null) {
-                    // MaterialDatePicker returns UTC timestamps, convert to LocalDate properly
-                    java.time.Instant instant = java.time.Instant.ofEpochMilli(rule.getStartDate());
-                    LocalDate ruleDate = instant.atZone(java.time.ZoneId.of("UTC")).toLocalDate();
-                    return date.equals(ruleDate);
-                }
-                break;
-                
-            case RECURRING_DAY:
-                String daysOfWeek = rule.getDaysOfWeek();
-                if (daysOfWeek != null && !daysOfWeek.isEmpty()) {
-                    try {
-                        int dayValue = date.getDayOfWeek().getValue() % 7; // 0 = Sunday
-                        String[] days = daysOfWeek.split(",");
-                        for (String day : days) {
-                            if (Integer.parseInt(day.trim()) == dayValue) {
-                                return true;
-                            }
-                        }
-                    } catch (NumberFormatException ignored) {
-                        // Invalid day format in daysOfWeek string
-                    }
-                }
-                break;
-                
-            case RECURRING_DATE:
-                if (rule.getDayOfMonth() != null && 
-                    rule.getDayOfMonth() == date.getDayOfMonth()) {
-                    if (rule.getMonthOfYear() == null || 
-                        rule.getMonthOfYear() == date.getMonthValue()) {
-                        return true;
-                    }
-                }
-                break;
-                
-            case DATE_RANGE:
-                if (rule.getStartDate() != null && rule.getEndDate() != null) {
-                    // Convert UTC timestamps to LocalDate for comparison
-                    LocalDate startDate = java.time.Instant.ofEpochMilli(rule.getStartDate())
-                            .atZone(java.time.ZoneId.of("UTC")).toLocalDate();
-                    LocalDate endDate = java.time.Instant.ofEpochMilli(rule.getEndDate())
-                            .atZone(java.time.ZoneId.of("UTC")).toLocalDate();
-                    return !date.isBefore(startDate) && !date.isAfter(endDate);
-                }
-                break;
+        if (date.getYear() != emojiIndex.getYear()) {
+            emojiIndex = EmojiDayIndex.obtain(config.getWidgetId(), rules, date.getYear());
         }
-        
-        return false;
+        return emojiIndex.emojiAt(date.getDayOfYear());
     }
 }
@@ -0,0 +1,170 @@
+package com.dotmatrix.calendar.widget.renderer;
+
+import android.graphics.Bitmap;
+
+/**
+ * Palette-indexed widget frame.
+ * Stores which theme role covers each pixel (one byte) plus that role's coverage (one byte),
+ * so a recolor or animation frame is a single lookup-table pass instead of a full re-render.
+ *
+ * Produced by {@link DotRenderer#renderIndexedFrame}. Only solid (non-glass) backgrounds
+ * can be indexed, since a blurred wallpaper has no single background color, and glow dots
+ * are indexed without their halo.
+ */
+public class IndexedFrame {
+
+    // Theme roles (palette indices)
+    public static final int ROLE_BACKGROUND = 0;
+    public static final int ROLE_PAST = 1;
+    public static final int ROLE_FUTURE = 2;
+    public static final int ROLE_ACCENT = 3;
+    public static final int ROLE_TEXT = 4;
+    public static final int ROLE_INACTIVE = 5;  // Padding cells (e.g. Feb 30 in year view)
+    public static final int ROLE_COUNT = 6;
+
+    // While rasterizing roles, the role is encoded in the red channel in steps of this size.
+    // Wide steps keep decoding stable where anti-aliased edges of neighbouring roles blend;
+    // wider blends, like glow shadows, aren't drawn into role layers at all.
+    private static final int ROLE_KEY_STEP = 48;
+
+    private final int width;
+    private final int height;
+    private final byte[] roles;
+    private final byte[] coverage;
+
+    private IndexedFrame(int width, int height, byte[] roles, byte[] coverage) {
+        this.width = width;
+        this.height = height;
+        this.roles = roles;
+        this.coverage = coverage;
+    }
+
+    /**
+     * Opaque-by-default key color the renderer draws a role with.
+     */
+    static int keyColor(int role, int alpha) {
+        return (alpha << 24) | ((role * ROLE_KEY_STEP) << 16);
+    }
+
+    /**
+     * Decode a frame from the rasterized role layer and the background coverage mask.
+     *
+     * @param foreground Unpremultiplied pixels drawn with {@link #keyColor} paints on transparent
+     * @param background Unpremultiplied pixels of the background shape (only alpha is used)
+     */
+    static IndexedFrame decode(int[] foreground, int[] background, int width, int height) {
+        int count = width * height;
+        byte[] roles = new byte[count];
+        byte[] coverage = new byte[count];
+
+        for (int i = 0; i < count; i++) {
+            int fg = foreground[i];
+            int fgAlpha = fg >>> 24;
+            if (fgAlpha > 0) {
+                int role = (((fg >> 16) & 0xFF) + ROLE_KEY_STEP / 2) / ROLE_KEY_STEP;
+                roles[i] = (byte) Math.max(ROLE_PAST, Math.min(ROLE_COUNT - 1, role));
+                coverage[i] = (byte) fgAlpha;
+            } else {
+                roles[i] = ROLE_BACKGROUND;
+                coverage[i] = (byte) (background[i] >>> 24);
+            }
+        }
+
+        return new IndexedFrame(width, height, roles, coverage);
+    }
+
+    /**
+     * Build the lookup table for a palette of {@link #ROLE_COUNT} ARGB role colors.
+     * Entry {@code (role << 8) | coverage} holds the final composited pixel, so the
+     * per-pixel work in {@link #resolve} is a single array read.
+     *
+     * @param lutOut Reusable table of at least {@code ROLE_COUNT * 256} entries, or null
+     */
+    public static int[] buildLut(int[] palette, int[] lutOut) {
+        int[] lut = (lutOut != null && lutOut.length >= ROLE_COUNT * 256)
+                ? lutOut : new int[ROLE_COUNT * 256];
+
+        int background = palette[ROLE_BACKGROUND];
+        for (int cov = 0; cov < 256; cov++) {
+            lut[(ROLE_BACKGROUND << 8) | cov] = scaleAlpha(background, cov);
+        }
+        for (int role = ROLE_BACKGROUND + 1; role < ROLE_COUNT; role++) {
+            int color = palette[role];
+            for (int cov = 0; cov < 256; cov++) {
+                lut[(role << 8) | cov] = compositeOver(scaleAlpha(color, cov), background);
+            }
+        }
+        return lut;
+    }
+
+    /**
+     * Resolve the frame into unpremultiplied ARGB pixels with one linear pass.
+     */
+    public void resolve(int[] lut, int[] pixelsOut) {
+        int count = width * height;
+        for (int i = 0; i < count; i++) {
+            pixelsOut[i] = lut[(roles[i] << 8) | (coverage[i] & 0xFF)];
+        }
+    }
+
+    /**
+     * Resolve the frame into a new bitmap.
+     */
+    public Bitmap toBitmap(int[] lut) {
+        int[] pixels = new int[width * height];
+        resolve(lut, pixels);
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Interpolate two palettes component-wise (ARGB) into {@code out}.
+     */
+    public static int[] lerpPalette(int[] from, int[] to, float fraction, int[] out) {
+        int[] result = (out != null && out.length >= ROLE_COUNT) ? out : new int[ROLE_COUNT];
+        for (int i = 0; i < ROLE_COUNT; i++) {
+            result[i] = lerpColor(from[i], to[i], fraction);
+        }
+        return result;
+    }
+
+    // ==================== Color math ====================
+
+    private static int scaleAlpha(int color, int coverage) {
+        int alpha = ((color >>> 24) * coverage + 127) / 255;
+        return (alpha << 24) | (color & 0x00FFFFFF);
+    }
+
+    /**
+     * Source-over composite of two unpremultiplied colors, returning unpremultiplied ARGB.
+     */
+    private static int compositeOver(int src, int dst) {
+        int srcA = src >>> 24;
+        int dstA = dst >>> 24;
+        int outA = srcA + dstA * (255 - srcA) / 255;
+        if (outA == 0) {
+            return 0;
+        }
+        int dstWeight = dstA * (255 - srcA) / 255;
+        int r = (((src >> 16) & 0xFF) * srcA + ((dst >> 16) & 0xFF) * dstWeight) / outA;
+        int g = (((src >> 8) & 0xFF) * srcA + ((dst >> 8) & 0xFF) * dstWeight) / outA;
+        int b = ((src & 0xFF) * srcA + (dst & 0xFF) * dstWeight) / outA;
+        return (outA << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int lerpColor(int start, int end, float fraction) {
+        int a = lerp(start >>> 24, end >>> 24, fraction);
+        int r = lerp((start >> 16) & 0xFF, (end >> 16) & 0xFF, fraction);
+        int g = lerp((start >> 8) & 0xFF, (end >> 8) & 0xFF, fraction);
+        int b = lerp(start & 0xFF, end & 0xFF, fraction);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int lerp(int start, int end, float fraction) {
+        return Math.round(start + (end - start) * fraction);
+    }
+
+    // Getters
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getByteCount() { return roles.length + coverage.length; }
+}
@@ -0,0 +1,245 @@
+package com.dotmatrix.calendar.widget.renderer;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.util.TypedValue;
+import android.view.View;
+import android.widget.RemoteViews;
+
+import com.dotmatrix.calendar.R;
+import com.dotmatrix.calendar.data.model.DotStyle;
+import com.dotmatrix.calendar.data.model.EmojiDayIndex;
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.model.WidgetConfig;
+import com.dotmatrix.calendar.data.model.WidgetType;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Builds week and month widgets from RemoteViews primitives instead of a bitmap.
+ * Each day is a tinted vector dot (or an emoji TextView) in a fixed grid layout, so an
+ * update carries a few hundred bytes of view actions and the launcher draws the dots
+ * crisply at any size.
+ *
+ * Only configs whose look the primitives can reproduce are supported; glass, blur,
+ * outlined and glowing dots still go through {@link DotRenderer}. Today's dot keeps its
+ * glow through a drawable with a built-in halo, kept within the cell.
+ */
+public final class NativeGridRenderer {
+
+    private static final int COLUMNS = 7;
+    private static final int MONTH_ROWS = 6;
+    // Share of a glow drawable's width taken by the dot itself
+    private static final float GLOW_DOT_SHARE = 0.75f;
+
+    private static int[] dotIds;
+    private static int[] emojiIds;
+    private static int[] headerIds;
+
+    private NativeGridRenderer() {
+    }
+
+    /**
+     * Whether a config can be shown by the native grid with the same look.
+     */
+    public static boolean supports(WidgetConfig config) {
+        WidgetType type = config.getWidgetType();
+        if (type != WidgetType.WEEK && type != WidgetType.MONTH) {
+            return false;
+        }
+        // Glowing dots spill their halo onto the spacing, which a cell can't
+        return DotRenderer.supportsIndexedFrame(config) && config.getDotStyle() == DotStyle.FILLED;
+    }
+
+    /**
+     * Layout used for a supported config.
+     */
+    public static int layoutFor(WidgetType type) {
+        return type == WidgetType.WEEK ? R.layout.widget_week_grid : R.layout.widget_month_grid;
+    }
+
+    /**
+     * Build the views of a supported config. Width and height (pixels) only size the
+     * padding, dots and text; the grid itself stretches with the launcher.
+     */
+    public static RemoteViews build(Context context, WidgetConfig config, List<EmojiRule> rules,
+                                    LocalDate currentDate, int width, int height) {
+        loadIds(context);
+        boolean week = config.getWidgetType() == WidgetType.WEEK;
+        RemoteViews views = new RemoteViews(context.getPackageName(), layoutFor(config.getWidgetType()));
+
+        // Background card
+        int background = config.getBackgroundColor();
+        int backgroundAlpha = Math.round(Color.alpha(background) * config.getBackgroundOpacity());
+        views.setInt(R.id.grid_background, "setColorFilter", background | 0xFF000000);
+        views.setInt(R.id.grid_background, "setImageAlpha", backgroundAlpha);
+
+        // Same proportional padding as the bitmap render
+        int padding = Math.round(16f * height / 200f);
+        views.setViewPadding(R.id.grid_content, padding, padding, padding, padding);
+
+        boolean hasHeader = config.isShowWeekHeaders();
+        int rows = (week ? 1 : MONTH_ROWS) + (hasHeader ? 1 : 0);
+        float cellWidth = (width - 2f * padding) / COLUMNS;
+        float cellHeight = (height - 2f * padding) / rows;
+        float cell = Math.min(cellWidth, cellHeight);
+
+        // The dot takes the same share of its cell as in DotLayout
+        float spacingRatio = config.getDotSpacing() / config.getDotSize();
+        if (Float.isNaN(spacingRatio) || spacingRatio <= 0) spacingRatio = 0.5f;
+        float dotSize = cell / (1f + spacingRatio);
+        int dotInset = Math.max(0, Math.round((cell - dotSize) / 2f));
+
+        if (hasHeader) {
+            String[] headers = config.getWeekStartDay() == 0
+                    ? new String[]{"S", "M", "T", "W", "T", "F", "S"}
+                    : new String[]{"M", "T", "W", "T", "F", "S", "S"};
+            int headerColor = applyOpacity(config.getDotColor(), week ? 0.7f : 0.5f);
+            float headerSize = dotSize * (week ? 0.6f : 0.8f);
+            for (int col = 0; col < COLUMNS; col++) {
+                views.setTextViewText(headerIds[col], headers[col]);
+                views.setTextColor(headerIds[col], headerColor);
+                views.setTextViewTextSize(headerIds[col], TypedValue.COMPLEX_UNIT_PX, headerSize);
+            }
+        } else {
+            views.setViewVisibility(R.id.grid_header_row, View.GONE);
+        }
+
+        int dotDrawable = dotDrawable(config);
+        int glowDrawable = glowDrawable(config);
+        int pastColor = applyOpacity(config.getDotColor(), config.getDotOpacity());
+        int futureColor = applyOpacity(config.getDotColor(), config.getDotOpacity() * 0.3f);
+        int accentColor = config.getAccentColor();
+        EmojiDayIndex emojiIndex = EmojiDayIndex.obtain(config.getWidgetId(), rules, currentDate.getYear());
+
+        // First grid cell and the days shown
+        LocalDate firstDate;
+        int firstCell;
+        int dayCount;
+        if (week) {
+            firstDate = currentDate.minusDays(columnOf(currentDate, config));
+            firstCell = 0;
+            dayCount = COLUMNS;
+        } else {
+            YearMonth month = YearMonth.from(currentDate);
+            firstDate = month.atDay(1);
+            firstCell = columnOf(firstDate, config);
+            dayCount = month.lengthOfMonth();
+        }
+        int cells = week ? COLUMNS : COLUMNS * MONTH_ROWS;
+
+        for (int i = 0; i < cells; i++) {
+            int dotId = dotIds[i];
+            int emojiId = emojiIds[i];
+            int day = i - firstCell;
+            if (day < 0 || day >= dayCount) {
+                views.setViewVisibility(dotId, View.INVISIBLE);
+                continue;
+            }
+            LocalDate date = firstDate.plusDays(day);
+
+            String emoji = emojiAt(emojiIndex, date, config, rules);
+            if (emoji != null) {
+                views.setViewVisibility(dotId, View.INVISIBLE);
+                views.setViewVisibility(emojiId, View.VISIBLE);
+                views.setTextViewText(emojiId, emoji);
+                views.setTextViewTextSize(emojiId, TypedValue.COMPLEX_UNIT_PX, dotSize * 0.8f);
+                continue;
+            }
+
+            int color;
+            int drawable = dotDrawable;
+            int inset = dotInset;
+            if (date.isEqual(currentDate)) {
+                color = accentColor;
+                // Today is drawn 1.2x larger and glowing, as in the bitmap render
+                drawable = glowDrawable;
+                inset = Math.max(0, Math.round((cell - dotSize * 1.2f / GLOW_DOT_SHARE) / 2f));
+            } else if (date.isBefore(currentDate)) {
+                color = pastColor;
+            } else {
+                color = futureColor;
+            }
+            if (drawable != R.drawable.widget_dot_circle) {
+                views.setImageViewResource(dotId, drawable);
+            }
+            views.setViewPadding(dotId, inset, inset, inset, inset);
+            views.setInt(dotId, "setColorFilter", color | 0xFF000000);
+            views.setInt(dotId, "setImageAlpha", Color.alpha(color));
+        }
+        return views;
+    }
+
+    /**
+     * Column of a date in a week starting on the configured day.
+     */
+    private static int columnOf(LocalDate date, WidgetConfig config) {
+        int dayOfWeek = date.getDayOfWeek().getValue(); // 1=Mon...7=Sun
+        return config.getWeekStartDay() == 0 ? dayOfWeek % 7 : dayOfWeek - 1;
+    }
+
+    private static int dotDrawable(WidgetConfig config) {
+        switch (config.getDotShape()) {
+            case SQUARE:
+                return R.drawable.widget_dot_square;
+            case ROUNDED_SQUARE:
+                return R.drawable.widget_dot_rounded_square;
+            case CIRCLE:
+            default:
+                return R.drawable.widget_dot_circle;
+        }
+    }
+
+    private static int glowDrawable(WidgetConfig config) {
+        switch (config.getDotShape()) {
+            case SQUARE:
+                return R.drawable.widget_dot_glow_square;
+            case ROUNDED_SQUARE:
+                return R.drawable.widget_dot_glow_rounded_square;
+            case CIRCLE:
+            default:
+                return R.drawable.widget_dot_glow_circle;
+        }
+    }
+
+    private static String emojiAt(EmojiDayIndex emojiIndex, LocalDate date, WidgetConfig config,
+                                  List<EmojiRule> rules) {
+        if (emojiIndex.isEmpty()) {
+            return null;
+        }
+        if (date.getYear() != emojiIndex.getYear()) {
+            emojiIndex = EmojiDayIndex.obtain(config.getWidgetId(), rules, date.getYear());
+        }
+        return emojiIndex.emojiAt(date.getDayOfYear());
+    }
+
+    private static int applyOpacity(int color, float opacity) {
+        int alpha = Math.round(Color.alpha(color) * opacity);
+        return Color.argb(alpha, Color.red(color), Color.green(color), Color.blue(color));
+    }
+
+    private static synchronized void loadIds(Context context) {
+        if (dotIds != null) {
+            return;
+        }
+        emojiIds = readIds(context, R.array.grid_emoji_ids);
+        headerIds = readIds(context, R.array.grid_header_ids);
+        dotIds = readIds(context, R.array.grid_dot_ids);
+    }
+
+    private static int[] readIds(Context context, int arrayId) {
+        TypedArray array = context.getResources().obtainTypedArray(arrayId);
+        try {
+            int[] ids = new int[array.length()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = array.getResourceId(i, 0);
+            }
+            return ids;
+        } finally {
+            array.recycle();
+        }
+    }
+}
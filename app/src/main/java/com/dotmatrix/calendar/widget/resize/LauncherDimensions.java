@@ -0,0 +1,89 @@
+package com.dotmatrix.calendar.widget.resize;
+
+/**
+ * Which of the reported option dimensions each launcher's widgets actually get.
+ * Free of Android types so resize traces can be replayed off-device.
+ */
+public final class LauncherDimensions {
+
+    public static final String NOVA = "nova";
+    public static final String ONEUI = "oneui";
+    public static final String PIXEL = "pixel";
+    public static final String MIUI = "miui";
+
+    private LauncherDimensions() {
+    }
+
+    /**
+     * Typical portrait cell size {width, height} in dp with the launcher's default grid
+     * on a phone. Only an estimate, for guessing the sizes a widget will be resized to.
+     */
+    public static int[] cellSize(String launcher) {
+        switch (launcher) {
+            case NOVA:
+                // 5x5 default grid
+                return new int[] { 76, 96 };
+            case ONEUI:
+                // 4x5 default grid
+                return new int[] { 88, 112 };
+            case PIXEL:
+                return new int[] { 78, 110 };
+            case MIUI:
+                // Dense 4x6 grid
+                return new int[] { 84, 100 };
+            default:
+                return new int[] { 80, 100 };
+        }
+    }
+
+    /**
+     * Widget size in dp from the reported min/max dimensions, before OEM corrections.
+     *
+     * @param samsungFoldable Whether the device is a Samsung Fold or Flip
+     */
+    public static int[] resolve(String launcher, boolean samsungFoldable,
+                                int minWidth, int minHeight, int maxWidth, int maxHeight) {
+        int width, height;
+
+        switch (launcher) {
+            case NOVA:
+                // Nova Launcher: Use max dimensions when available (better for grid-snapping)
+                width = maxWidth > 0 ? maxWidth : minWidth;
+                height = maxHeight > 0 ? maxHeight : minHeight;
+                break;
+
+            case ONEUI:
+                // Samsung OneUI: Sometimes reports 0 for max dimensions
+                // Also has unique handling for foldable devices
+                width = minWidth > 0 ? minWidth : 200;
+                height = minHeight > 0 ? minHeight : 200;
+
+                // Check for foldable mode
+                if (samsungFoldable) {
+                    // Foldables report different dimensions - use larger of the two
+                    width = Math.max(minWidth, maxWidth);
+                    height = Math.max(minHeight, maxHeight);
+                }
+                break;
+
+            case PIXEL:
+                // Pixel Launcher: Well-behaved, use min dimensions
+                width = minWidth;
+                height = minHeight;
+                break;
+
+            case MIUI:
+                // MIUI Launcher: Can report very small values
+                width = Math.max(minWidth, 100);
+                height = Math.max(minHeight, 80);
+                break;
+
+            default:
+                // Default: Use min dimensions
+                width = minWidth > 0 ? minWidth : 200;
+                height = minHeight > 0 ? minHeight : 200;
+                break;
+        }
+        return new int[] { width, height };
+    }
+}
@@ -0,0 +1,234 @@
+package com.dotmatrix.calendar.widget.resize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Replays a {@link ResizeTrace} against {@link ResizeThrottle} on a virtual clock, to
+ * evaluate throttle policies offline. Plain Java, so it runs in JVM unit tests, against
+ * synthetic traces or recorded ones loaded with {@link ResizeTrace#read}.
+ *
+ * Each launcher profile resolves the recorded option dimensions its own way, which
+ * changes which events count as significant. OEM corrections from DeviceCompatHelper
+ * are not applied, only its universal clamps.
+ */
+public final class ResizeReplay {
+
+    public static final String[] PROFILES = {
+            LauncherDimensions.NOVA, LauncherDimensions.ONEUI, LauncherDimensions.PIXEL, LauncherDimensions.MIUI
+    };
+    // Draft render plus publish; a render superseded sooner never made it to the screen
+    public static final long DEFAULT_RENDER_COST_MS = 48;
+
+    private ResizeReplay() {
+    }
+
+    /**
+     * Outcome of one replay.
+     */
+    public static final class Report {
+        public final String profile;
+        public final ResizeThrottle.Policy policy;
+        public final int events;
+        public final int draftRenders;
+        public final int fullRenders;
+        /** Renders with unchanged dimensions, or superseded within the render cost */
+        public final int rendersWasted;
+        /** Longest time an event waited for a render showing it */
+        public final long worstStalenessMs;
+
+        Report(String profile, ResizeThrottle.Policy policy, int events, int draftRenders,
+               int fullRenders, int rendersWasted, long worstStalenessMs) {
+            this.profile = profile;
+            this.policy = policy;
+            this.events = events;
+            this.draftRenders = draftRenders;
+            this.fullRenders = fullRenders;
+            this.rendersWasted = rendersWasted;
+            this.worstStalenessMs = worstStalenessMs;
+        }
+
+        public int getRendersIssued() {
+            return draftRenders + fullRenders;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%-6s %d events: %d renders (%d drafts, %d full), %d wasted, worst staleness %d ms",
+                    profile, events, getRendersIssued(), draftRenders, fullRenders,
+                    rendersWasted, worstStalenessMs);
+        }
+    }
+
+    private static final class Render {
+        final int widgetId;
+        final long time;
+        final int[] dimensions;
+        // Number of trace events applied when the render ran
+        final int eventsApplied;
+
+        Render(int widgetId, long time, int[] dimensions, int eventsApplied) {
+            this.widgetId = widgetId;
+            this.time = time;
+            this.dimensions = dimensions;
+            this.eventsApplied = eventsApplied;
+        }
+    }
+
+    /**
+     * Virtual clock; tasks run in time order as the replay advances it.
+     */
+    private static final class VirtualScheduler implements ResizeThrottle.Scheduler {
+        private final PriorityQueue<long[]> queue = new PriorityQueue<>(
+                (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        private final Map<Long, Runnable> tasks = new HashMap<>();
+        private long now;
+        private long sequence;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            long id = sequence++;
+            tasks.put(id, task);
+            queue.add(new long[] { now + delayMs, id });
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            tasks.values().removeIf(pending -> pending == task);
+        }
+
+        /**
+         * Run every task due up to the given time, then move the clock there.
+         */
+        void advanceTo(long time) {
+            while (!queue.isEmpty() && queue.peek()[0] <= time) {
+                long[] next = queue.poll();
+                Runnable task = tasks.remove(next[1]);
+                if (task != null) {
+                    now = next[0];
+                    task.run();
+                }
+            }
+            now = Math.max(now, time);
+        }
+
+        void drain() {
+            advanceTo(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Replay a trace with the given launcher profile and policy.
+     */
+    public static Report replay(ResizeTrace trace, String profile, ResizeThrottle.Policy policy,
+                                long renderCostMs) {
+        List<ResizeTrace.Event> events = trace.getEvents();
+        float density = trace.getDensity();
+        VirtualScheduler scheduler = new VirtualScheduler();
+        Map<Integer, ResizeTrace.Event> latest = new HashMap<>();
+        List<Render> renders = new ArrayList<>();
+        int[] applied = new int[1];
+        int[] draftRenders = new int[1];
+        int[] fullRenders = new int[1];
+
+        ResizeThrottle throttle = new ResizeThrottle(policy, scheduler, (widgetId, draft) -> {
+            ResizeTrace.Event event = latest.get(widgetId);
+            if (event == null) {
+                return null;
+            }
+            int[] dp = LauncherDimensions.resolve(profile, false,
+                    event.minWidth, event.minHeight, event.maxWidth, event.maxHeight);
+            int[] px = { clampPx((int) (dp[0] * density)), clampPx((int) (dp[1] * density)) };
+            renders.add(new Render(widgetId, scheduler.now(), px, applied[0]));
+            if (draft) {
+                draftRenders[0]++;
+            } else {
+                fullRenders[0]++;
+            }
+            return px;
+        });
+
+        for (ResizeTrace.Event event : events) {
+            scheduler.advanceTo(event.timeMs);
+            latest.put(event.widgetId, event);
+            applied[0]++;
+            throttle.onEvent(event.widgetId, event.minWidth, event.minHeight, density);
+        }
+        scheduler.drain();
+
+        return new Report(profile, policy, events.size(), draftRenders[0], fullRenders[0],
+                countWasted(renders, renderCostMs), worstStaleness(events, renders));
+    }
+
+    /**
+     * Replay a trace with every launcher profile.
+     */
+    public static List<Report> replayProfiles(ResizeTrace trace, ResizeThrottle.Policy policy) {
+        List<Report> reports = new ArrayList<>();
+        for (String profile : PROFILES) {
+            reports.add(replay(trace, profile, policy, DEFAULT_RENDER_COST_MS));
+        }
+        return reports;
+    }
+
+    private static int countWasted(List<Render> renders, long renderCostMs) {
+        Map<Integer, Render> previous = new HashMap<>();
+        Map<Integer, Render> pending = new HashMap<>();
+        int wasted = 0;
+        for (Render render : renders) {
+            Render before = previous.put(render.widgetId, render);
+            if (before != null && Arrays.equals(before.dimensions, render.dimensions)) {
+                wasted++;
+                continue;
+            }
+            // The earlier render counts once, when superseded before it could show
+            Render superseded = pending.put(render.widgetId, render);
+            if (superseded != null && render.time - superseded.time < renderCostMs) {
+                wasted++;
+            }
+        }
+        return wasted;
+    }
+
+    private static long worstStaleness(List<ResizeTrace.Event> events, List<Render> renders) {
+        Map<Integer, List<Render>> rendersByWidget = new HashMap<>();
+        for (Render render : renders) {
+            rendersByWidget.computeIfAbsent(render.widgetId, id -> new ArrayList<>()).add(render);
+        }
+        // Events and renders are both in time order, so one cursor per widget suffices
+        Map<Integer, Integer> cursors = new HashMap<>();
+        long worst = 0;
+        for (int i = 0; i < events.size(); i++) {
+            ResizeTrace.Event event = events.get(i);
+            List<Render> widgetRenders = rendersByWidget.get(event.widgetId);
+            if (widgetRenders == null) {
+                continue;
+            }
+            int cursor = cursors.getOrDefault(event.widgetId, 0);
+            while (cursor < widgetRenders.size() && widgetRenders.get(cursor).eventsApplied <= i) {
+                cursor++;
+            }
+            cursors.put(event.widgetId, cursor);
+            if (cursor < widgetRenders.size()) {
+                worst = Math.max(worst, widgetRenders.get(cursor).time - event.timeMs);
+            }
+        }
+        return worst;
+    }
+
+    private static int clampPx(int px) {
+        // Universal safety clamps of DeviceCompatHelper
+        return Math.max(100, Math.min(px, 2048));
+    }
+}
@@ -0,0 +1,269 @@
+package com.dotmatrix.calendar.widget.resize;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Throttle policy behind {@link WidgetResizeHandler}: decides when a resize gesture gets
+ * draft renders and when it settles into the full-quality one.
+ *
+ * Time and scheduling come from a {@link Scheduler}, so the same state machine runs on
+ * the main looper in the app and on a virtual clock in {@link ResizeReplay}.
+ */
+public class ResizeThrottle {
+
+    /**
+     * Clock and delayed execution.
+     */
+    public interface Scheduler {
+        long now();
+
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+    }
+
+    /**
+     * Renders a widget at its latest reported size.
+     */
+    public interface Renderer {
+        /**
+         * @return rendered dimensions in pixels, or null if nothing was rendered
+         */
+        int[] render(int widgetId, boolean draft);
+    }
+
+    /**
+     * Throttle constants, so alternatives can be evaluated against recorded traces.
+     */
+    public static final class Policy {
+        /** Current policy: 20 FPS while dragging, 12.5 FPS by default, 5 FPS for sporadic events */
+        public static final Policy DEFAULT = new Policy(50, 80, 200, 300, 8);
+
+        public final long minThrottleMs;
+        public final long defaultThrottleMs;
+        public final long maxThrottleMs;
+        // Quiet time after the last event before the full-quality render
+        public final long settleMs;
+        // Dimension change threshold (in dp) to trigger re-render
+        public final int minDimensionChangeDp;
+
+        public Policy(long minThrottleMs, long defaultThrottleMs, long maxThrottleMs,
+                      long settleMs, int minDimensionChangeDp) {
+            this.minThrottleMs = minThrottleMs;
+            this.defaultThrottleMs = defaultThrottleMs;
+            this.maxThrottleMs = maxThrottleMs;
+            this.settleMs = settleMs;
+            this.minDimensionChangeDp = minDimensionChangeDp;
+        }
+
+        @Override
+        public String toString() {
+            return "throttle " + minThrottleMs + "/" + defaultThrottleMs + "/" + maxThrottleMs
+                    + " ms, settle " + settleMs + " ms, min change " + minDimensionChangeDp + " dp";
+        }
+    }
+
+    /**
+     * Instrumentation of one resize gesture, from its first event until it settled.
+     */
+    public static final class ResizeStats {
+        public final long startedAt;
+        public int events;
+        public int draftRenders;
+        public int fullRenders;
+        // Time from the first event to the first render handed to the renderer, -1 if none yet
+        public long firstFeedbackMs = -1;
+        public long settledAfterMs = -1;
+
+        ResizeStats(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        void recordRender(boolean draft, long now) {
+            if (draft) {
+                draftRenders++;
+            } else {
+                fullRenders++;
+            }
+            if (firstFeedbackMs < 0) {
+                firstFeedbackMs = now - startedAt;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return events + " events, " + draftRenders + " drafts, " + fullRenders + " full, first feedback "
+                    + firstFeedbackMs + " ms, settled after " + settledAfterMs + " ms";
+        }
+    }
+
+    private final Policy policy;
+    private final Scheduler scheduler;
+    private final Renderer renderer;
+
+    // Pending draft and full-quality renders (widget ID -> Runnable)
+    private final Map<Integer, Runnable> pendingDrafts = new ConcurrentHashMap<>();
+    private final Map<Integer, Runnable> pendingSettles = new ConcurrentHashMap<>();
+
+    // Last rendered dimensions and render time (widget ID -> value)
+    private final Map<Integer, int[]> lastDimensions = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> lastRenderTime = new ConcurrentHashMap<>();
+
+    // Active resize gestures and the stats of the last finished one per widget
+    private final Map<Integer, ResizeStats> activeResizes = new ConcurrentHashMap<>();
+    private final Map<Integer, ResizeStats> lastResizeStats = new ConcurrentHashMap<>();
+
+    public ResizeThrottle(Policy policy, Scheduler scheduler, Renderer renderer) {
+        this.policy = policy;
+        this.scheduler = scheduler;
+        this.renderer = renderer;
+    }
+
+    /**
+     * A resize event reported the given minimum size (dp).
+     */
+    public void onEvent(int widgetId, int minWidthDp, int minHeightDp, float density) {
+        ResizeStats stats = activeResizes.get(widgetId);
+        boolean dragging = stats != null;
+        if (stats == null) {
+            stats = new ResizeStats(scheduler.now());
+            activeResizes.put(widgetId, stats);
+        }
+        stats.events++;
+
+        // Phase 2: (re)schedule the single full-quality render for when events stop
+        Runnable existingSettle = pendingSettles.get(widgetId);
+        if (existingSettle != null) {
+            scheduler.cancel(existingSettle);
+        }
+        Runnable settleTask = () -> settle(widgetId);
+        pendingSettles.put(widgetId, settleTask);
+        scheduler.postDelayed(settleTask, policy.settleMs);
+
+        // Phase 1: drafts only once a second event shows this is a drag, not a one-off resize
+        if (!dragging) {
+            return;
+        }
+
+        // Check if resize is significant enough to warrant re-render
+        if (!isSignificantResize(widgetId, minWidthDp, minHeightDp, density)) {
+            return;
+        }
+
+        // Throttle, don't debounce: a running drag keeps producing drafts
+        if (pendingDrafts.containsKey(widgetId)) {
+            return;
+        }
+
+        Runnable draftTask = () -> {
+            pendingDrafts.remove(widgetId);
+            ResizeStats active = activeResizes.get(widgetId);
+            if (active == null) {
+                return; // Already settled
+            }
+            active.recordRender(true, scheduler.now());
+            rendered(widgetId, renderer.render(widgetId, true));
+        };
+        pendingDrafts.put(widgetId, draftTask);
+        scheduler.postDelayed(draftTask, calculateAdaptiveThrottle(widgetId));
+    }
+
+    /**
+     * Events have stopped: drop any pending draft and render once at full quality.
+     */
+    private void settle(int widgetId) {
+        pendingSettles.remove(widgetId);
+        Runnable pendingDraft = pendingDrafts.remove(widgetId);
+        if (pendingDraft != null) {
+            scheduler.cancel(pendingDraft);
+        }
+
+        ResizeStats stats = activeResizes.remove(widgetId);
+        if (stats != null) {
+            stats.recordRender(false, scheduler.now());
+            stats.settledAfterMs = scheduler.now() - stats.startedAt;
+            lastResizeStats.put(widgetId, stats);
+        }
+        rendered(widgetId, renderer.render(widgetId, false));
+    }
+
+    private void rendered(int widgetId, int[] dimensions) {
+        if (dimensions != null) {
+            // Store for future comparison
+            lastDimensions.put(widgetId, dimensions);
+            lastRenderTime.put(widgetId, scheduler.now());
+        }
+    }
+
+    /**
+     * Checks if the resize is significant enough to warrant a re-render.
+     */
+    private boolean isSignificantResize(int widgetId, int minWidthDp, int minHeightDp, float density) {
+        int[] lastDims = lastDimensions.get(widgetId);
+        if (lastDims == null) {
+            return true; // First resize, always significant
+        }
+
+        int thresholdPx = (int) (policy.minDimensionChangeDp * density);
+        int widthDiff = Math.abs((int) (minWidthDp * density) - lastDims[0]);
+        int heightDiff = Math.abs((int) (minHeightDp * density) - lastDims[1]);
+
+        return widthDiff >= thresholdPx || heightDiff >= thresholdPx;
+    }
+
+    /**
+     * Calculates adaptive throttle based on resize frequency.
+     * More frequent resizes = faster updates (smoother)
+     * Sporadic resizes = slower updates (more efficient)
+     */
+    private long calculateAdaptiveThrottle(int widgetId) {
+        Long lastTime = lastRenderTime.get(widgetId);
+        if (lastTime == null) {
+            return policy.defaultThrottleMs;
+        }
+
+        long timeSinceLastResize = scheduler.now() - lastTime;
+
+        if (timeSinceLastResize < 100) {
+            // User is actively dragging - use fastest throttle
+            return policy.minThrottleMs;
+        } else if (timeSinceLastResize < 500) {
+            // Recent resize - use medium throttle
+            return policy.defaultThrottleMs;
+        } else {
+            // Sporadic resize - use slower throttle for efficiency
+            return policy.maxThrottleMs;
+        }
+    }
+
+    /**
+     * Drop all state of a widget, cancelling its pending renders.
+     */
+    public void clear(int widgetId) {
+        Runnable pending = pendingDrafts.remove(widgetId);
+        if (pending != null) {
+            scheduler.cancel(pending);
+        }
+        Runnable settle = pendingSettles.remove(widgetId);
+        if (settle != null) {
+            scheduler.cancel(settle);
+        }
+        activeResizes.remove(widgetId);
+        lastResizeStats.remove(widgetId);
+        lastDimensions.remove(widgetId);
+        lastRenderTime.remove(widgetId);
+    }
+
+    public int[] getLastDimensions(int widgetId) {
+        return lastDimensions.get(widgetId);
+    }
+
+    public boolean hasPending(int widgetId) {
+        return pendingDrafts.containsKey(widgetId) || pendingSettles.containsKey(widgetId);
+    }
+
+    public ResizeStats getLastResizeStats(int widgetId) {
+        return lastResizeStats.get(widgetId);
+    }
+}
@@ -0,0 +1,129 @@
+package com.dotmatrix.calendar.widget.resize;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recorded sequence of resize events, in the compact format written by
+ * {@link ResizeTraceRecorder}.
+ *
+ * A trace starts with a header (magic, version, launcher, density). Each event is
+ * 16 bytes: widget id, milliseconds since the previous event and the four reported
+ * option dimensions in dp. A negative delta marks the first event after a process start.
+ */
+public final class ResizeTrace {
+
+    static final int MAGIC = 0x444D5254; // "DMRT"
+    static final int VERSION = 1;
+    // Virtual gap replayed between events of different processes
+    static final long SESSION_GAP_MS = 60_000L;
+
+    /**
+     * One onAppWidgetOptionsChanged call.
+     */
+    public static final class Event {
+        public final int widgetId;
+        /** Time from the start of the trace */
+        public final long timeMs;
+        public final int minWidth;
+        public final int minHeight;
+        public final int maxWidth;
+        public final int maxHeight;
+
+        public Event(int widgetId, long timeMs, int minWidth, int minHeight, int maxWidth, int maxHeight) {
+            this.widgetId = widgetId;
+            this.timeMs = timeMs;
+            this.minWidth = minWidth;
+            this.minHeight = minHeight;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+        }
+    }
+
+    private final String launcher;
+    private final float density;
+    private final List<Event> events;
+
+    public ResizeTrace(String launcher, float density, List<Event> events) {
+        this.launcher = launcher;
+        this.density = density;
+        this.events = Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    /** Launcher the trace was recorded on, as detected by {@link WidgetResizeHandler} */
+    public String getLauncher() {
+        return launcher;
+    }
+
+    public float getDensity() {
+        return density;
+    }
+
+    /** Events in recorded order, with monotonic times */
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Read a trace. A truncated last event (the app was killed mid-write) is dropped.
+     */
+    public static ResizeTrace read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a resize trace");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported resize trace version " + version);
+        }
+        String launcher = in.readUTF();
+        float density = in.readFloat();
+
+        List<Event> events = new ArrayList<>();
+        long time = 0;
+        while (true) {
+            try {
+                int widgetId = in.readInt();
+                int deltaMs = in.readInt();
+                int minWidth = in.readUnsignedShort();
+                int minHeight = in.readUnsignedShort();
+                int maxWidth = in.readUnsignedShort();
+                int maxHeight = in.readUnsignedShort();
+                if (!events.isEmpty()) {
+                    time += deltaMs >= 0 ? deltaMs : SESSION_GAP_MS;
+                }
+                events.add(new Event(widgetId, time, minWidth, minHeight, maxWidth, maxHeight));
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        return new ResizeTrace(launcher, density, events);
+    }
+
+    static void writeHeader(DataOutputStream out, String launcher, float density) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(launcher);
+        out.writeFloat(density);
+    }
+
+    static void writeEvent(DataOutputStream out, int widgetId, int deltaMs,
+                           int minWidth, int minHeight, int maxWidth, int maxHeight) throws IOException {
+        out.writeInt(widgetId);
+        out.writeInt(deltaMs);
+        out.writeShort(clampDp(minWidth));
+        out.writeShort(clampDp(minHeight));
+        out.writeShort(clampDp(maxWidth));
+        out.writeShort(clampDp(maxHeight));
+    }
+
+    private static int clampDp(int dp) {
+        return Math.max(0, Math.min(dp, 0xFFFF));
+    }
+}
@@ -0,0 +1,122 @@
+package com.dotmatrix.calendar.widget.resize;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records onAppWidgetOptionsChanged sequences to a {@link ResizeTrace} file, so throttle
+ * policy changes can be evaluated offline with {@link ResizeReplay}.
+ *
+ * Off by default. Once enabled, events are appended to {@link #getTraceFile} (pull it
+ * with adb) until the file reaches {@link #MAX_TRACE_BYTES}.
+ */
+public class ResizeTraceRecorder {
+
+    private static final String TAG = "ResizeTraceRecorder";
+    private static final String PREFS_NAME = "resize_trace";
+    private static final String KEY_ENABLED = "enabled";
+    private static final String TRACE_FILE = "resize_trace.bin";
+    // About 32k events
+    private static final long MAX_TRACE_BYTES = 512 * 1024;
+    private static volatile ResizeTraceRecorder INSTANCE;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean enabled;
+    // Uptime of the previous event written by this process, -1 before the first
+    private long lastEventAt = -1;
+
+    private ResizeTraceRecorder(Context context) {
+        this.context = context;
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        enabled = prefs.getBoolean(KEY_ENABLED, false);
+    }
+
+    public static ResizeTraceRecorder getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (ResizeTraceRecorder.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ResizeTraceRecorder(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turn recording on or off; persists across restarts.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        prefs.edit().putBoolean(KEY_ENABLED, enabled).apply();
+    }
+
+    /**
+     * Record an options change, if recording is enabled.
+     */
+    public void record(int widgetId, Bundle options) {
+        if (!enabled || options == null) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        int minWidth = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, 0);
+        int minHeight = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT, 0);
+        int maxWidth = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_WIDTH, 0);
+        int maxHeight = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT, 0);
+        executor.execute(() -> append(widgetId, now, minWidth, minHeight, maxWidth, maxHeight));
+    }
+
+    private void append(int widgetId, long now, int minWidth, int minHeight, int maxWidth, int maxHeight) {
+        File file = getTraceFile();
+        if (file.length() >= MAX_TRACE_BYTES) {
+            return;
+        }
+        int deltaMs = lastEventAt < 0 ? -1 : (int) Math.min(now - lastEventAt, Integer.MAX_VALUE);
+        boolean newFile = file.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if (newFile) {
+                ResizeTrace.writeHeader(out, WidgetResizeHandler.detectLauncher(context),
+                        context.getResources().getDisplayMetrics().density);
+            }
+            ResizeTrace.writeEvent(out, widgetId, deltaMs, minWidth, minHeight, maxWidth, maxHeight);
+            lastEventAt = now;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not record resize event", e);
+        }
+    }
+
+    /**
+     * The trace being recorded.
+     */
+    public File getTraceFile() {
+        return new File(context.getFilesDir(), TRACE_FILE);
+    }
+
+    /**
+     * Delete the recorded trace; the next event starts a new one.
+     */
+    public void clear() {
+        executor.execute(() -> {
+            getTraceFile().delete();
+            lastEventAt = -1;
+        });
+    }
+}
@@ -6,6 +6,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.util.Map;
@@ -14,6 +15,10 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Handles widget resize events with launcher-specific optimizations.
  * Provides smooth, jank-free resizing across all Android devices and launchers.
+ *
+ * Resizing is two-phase: while events keep arriving the callback is asked for throttled
+ * draft renders, and once they have settled for {@link ResizeThrottle.Policy#settleMs}
+ * for a single full-quality one. The timing policy lives in {@link ResizeThrottle}.
  */
 public class WidgetResizeHandler {
     
@@ -25,25 +30,35 @@ public class WidgetResizeHandler {
     // Handler for main thread operations
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     
-    // Pending resize operations (widget ID -> Runnable)
-    private final Map<Integer, Runnable> pendingResizes = new ConcurrentHashMap<>();
-    
     // Latest resize options (widget ID -> Bundle)
     private final Map<Integer, Bundle> latestOptions = new ConcurrentHashMap<>();
     
-    // Last resize dimensions (widget ID -> int[]{width, height})
-    private final Map<Integer, int[]> lastDimensions = new ConcurrentHashMap<>();
-    
-    // Last resize timestamps (widget ID -> timestamp)
-    private final Map<Integer, Long> lastResizeTime = new ConcurrentHashMap<>();
+    // Callback of the latest resize event (widget ID -> callback)
+    private final Map<Integer, ResizeCallback> callbacks = new ConcurrentHashMap<>();
     
-    // Adaptive throttle values
-    private static final long MIN_THROTTLE_MS = 50;   // Fastest: 20 FPS
-    private static final long MAX_THROTTLE_MS = 200;  // Slowest: 5 FPS
-    private static final long DEFAULT_THROTTLE_MS = 80; // Default: 12.5 FPS
+    // Context of the latest resize event
+    private volatile Context appContext;
     
-    // Dimension change threshold (in dp) to trigger re-render
-    private static final int MIN_DIMENSION_CHANGE_DP = 8;
+    // Throttle state machine, scheduled on the main thread
+    private final ResizeThrottle throttle = new ResizeThrottle(
+            ResizeThrottle.Policy.DEFAULT,
+            new ResizeThrottle.Scheduler() {
+                @Override
+                public long now() {
+                    return SystemClock.uptimeMillis();
+                }
+                
+                @Override
+                public void postDelayed(Runnable task, long delayMs) {
+                    mainHandler.postDelayed(task, delayMs);
+                }
+                
+                @Override
+                public void cancel(Runnable task) {
+                    mainHandler.removeCallbacks(task);
+                }
+            },
+            this::render);
     
     private WidgetResizeHandler() {}
     
@@ -58,7 +73,11 @@ public class WidgetResizeHandler {
      * Callback interface for resize completion.
      */
     public interface ResizeCallback {
-        void onResize(int widgetId, int width, int height, Bundle options);
+        /**
+         * @param draft True for intermediate frames during a drag, which are replaced by a
+         *              full-quality render (draft == false) once the resize settles
+         */
+        void onResize(int widgetId, int width, int height, Bundle options, boolean draft);
     }
     
     /**
@@ -74,95 +93,39 @@ public class WidgetResizeHandler {
             return;
         }
         
-        final Context appContext = context.getApplicationContext();
+        appContext = context.getApplicationContext();
+        ResizeTraceRecorder.getInstance(appContext).record(widgetId, newOptions);
         
         // Store latest options
         latestOptions.put(widgetId, newOptions);
+        callbacks.put(widgetId, callback);
         
-        // Check if resize is significant enough to warrant re-render
-        if (!isSignificantResize(appContext, widgetId, newOptions)) {
-            Log.d(TAG, "Resize ignored: dimension change too small for widget " + widgetId);
-            return;
-        }
-        
-        // Cancel any pending resize for this widget
-        Runnable existingTask = pendingResizes.get(widgetId);
-        if (existingTask != null) {
-            mainHandler.removeCallbacks(existingTask);
-        }
-        
-        // Calculate adaptive throttle based on resize frequency
-        long throttleMs = calculateAdaptiveThrottle(widgetId);
-        
-        // Create new resize task
-        Runnable resizeTask = () -> {
-            pendingResizes.remove(widgetId);
-            
-            // Get freshest options
-            Bundle finalOptions = latestOptions.remove(widgetId);
-            if (finalOptions == null) {
-                finalOptions = newOptions;
-            }
-            
-            // Calculate final dimensions with launcher quirk handling
-            int[] dimensions = calculateDimensions(appContext, finalOptions);
-            
-            // Store for future comparison
-            lastDimensions.put(widgetId, dimensions);
-            lastResizeTime.put(widgetId, System.currentTimeMillis());
-            
-            // Execute callback
-            callback.onResize(widgetId, dimensions[0], dimensions[1], finalOptions);
-        };
-        
-        pendingResizes.put(widgetId, resizeTask);
-        mainHandler.postDelayed(resizeTask, throttleMs);
+        float density = appContext.getResources().getDisplayMetrics().density;
+        throttle.onEvent(widgetId,
+                newOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, 0),
+                newOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT, 0),
+                density);
     }
     
     /**
-     * Checks if the resize is significant enough to warrant a re-render.
+     * Hand a draft or, once the resize settled, the full-quality render to the callback.
      */
-    private boolean isSignificantResize(Context context, int widgetId, Bundle newOptions) {
-        int[] lastDims = lastDimensions.get(widgetId);
-        if (lastDims == null) {
-            return true; // First resize, always significant
+    private int[] render(int widgetId, boolean draft) {
+        // Get freshest options; the full render consumes them
+        Bundle finalOptions = draft ? latestOptions.get(widgetId) : latestOptions.remove(widgetId);
+        ResizeCallback callback = draft ? callbacks.get(widgetId) : callbacks.remove(widgetId);
+        if (finalOptions == null || callback == null) {
+            return null;
         }
         
-        float density = context.getResources().getDisplayMetrics().density;
-        int thresholdPx = (int) (MIN_DIMENSION_CHANGE_DP * density);
-        
-        int newWidth = newOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, 0);
-        int newHeight = newOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT, 0);
-        
-        int widthDiff = Math.abs((int)(newWidth * density) - lastDims[0]);
-        int heightDiff = Math.abs((int)(newHeight * density) - lastDims[1]);
+        // Calculate final dimensions with launcher quirk handling
+        int[] dimensions = calculateDimensions(appContext, finalOptions);
         
-        return widthDiff >= thresholdPx || heightDiff >= thresholdPx;
-    }
-    
-    /**
-     * Calculates adaptive throttle based on resize frequency.
-     * More frequent resizes = faster updates (smoother)
-     * Sporadic resizes = slower updates (more efficient)
-     */
-    private long calculateAdaptiveThrottle(int widgetId) {
-        Long lastTime = lastResizeTime.get(widgetId);
-        if (lastTime == null) {
-            return DEFAULT_THROTTLE_MS;
-        }
-        
-        long timeSinceLastResize = System.currentTimeMillis() - lastTime;
-        
-        if (timeSinceLastResize < 100) {
-            // User is actively dragging - use fastest throttle
-            return MIN_THROTTLE_MS;
-        } else if (timeSinceLastResize < 500) {
-            // Recent resize - use medium throttle
-            return DEFAULT_THROTTLE_MS;
-        } else {
-            // Sporadic resize - use slower throttle for efficiency
-            return MAX_THROTTLE_MS;
+        if (!draft) {
+            Log.d(TAG, "Resize of widget " + widgetId + ": " + throttle.getLastResizeStats(widgetId));
         }
+        callback.onResize(widgetId, dimensions[0], dimensions[1], finalOptions, draft);
+        return dimensions;
     }
     
     /**
@@ -180,53 +143,12 @@ public class WidgetResizeHandler {
         com.dotmatrix.calendar.util.DeviceCompatHelper compatHelper = 
             new com.dotmatrix.calendar.util.DeviceCompatHelper(context);
         
-        int width, height;
-        
         // Launcher-specific handling
-        String launcher = detectLauncher(context);
-        
-        switch (launcher) {
-            case "nova":
-                // Nova Launcher: Use max dimensions when available (better for grid-snapping)
-                width = maxWidth > 0 ? maxWidth : minWidth;
-                height = maxHeight > 0 ? maxHeight : minHeight;
-                break;
-                
-            case "oneui":
-                // Samsung OneUI: Sometimes reports 0 for max dimensions
-                // Also has unique handling for foldable devices
-                width = minWidth > 0 ? minWidth : 200;
-                height = minHeight > 0 ? minHeight : 200;
-                
-                // Check for foldable mode
-                if (isSamsungFoldable(context)) {
-                    // Foldables report different dimensions - use larger of the two
-                    width = Math.max(minWidth, maxWidth);
-                    height = Math.max(minHeight, maxHeight);
-                }
-                break;
-                
-            case "pixel":
-                // Pixel Launcher: Well-behaved, use min dimensions
-                width = minWidth;
-                height = minHeight;
-                break;
-                
-            case "miui":
-                // MIUI Launcher: Can report very small values
-                width = Math.max(minWidth, 100);
-                height = Math.max(minHeight, 80);
-                break;
-                
-            default:
-                // Default: Use min dimensions
-                width = minWidth > 0 ? minWidth : 200;
-                height = minHeight > 0 ? minHeight : 200;
-                break;
-        }
+        int[] dimensions = LauncherDimensions.resolve(detectLauncher(context), isSamsungFoldable(),
+                minWidth, minHeight, maxWidth, maxHeight);
         
         // Apply OEM-specific corrections
-        int[] corrected = compatHelper.correctWidgetDimensions(width, height, density);
+        int[] corrected = compatHelper.correctWidgetDimensions(dimensions[0], dimensions[1], density);
         
         return corrected;
     }
@@ -234,7 +156,7 @@ public class WidgetResizeHandler {
     /**
      * Detects the current launcher for launcher-specific handling.
      */
-    private String detectLauncher(Context context) {
+    public static String detectLauncher(Context context) {
         try {
             android.content.Intent intent = new android.content.Intent(android.content.Intent.ACTION_MAIN);
             intent.addCategory(android.content.Intent.CATEGORY_HOME);
@@ -245,15 +167,15 @@ public class WidgetResizeHandler {
                 String packageName = resolveInfo.activityInfo.packageName.toLowerCase();
                 
                 if (packageName.contains("nova")) {
-                    return "nova";
+                    return LauncherDimensions.NOVA;
                 } else if (packageName.contains("sec.android.app.launcher") || 
                            packageName.contains("samsung")) {
-                    return "oneui";
+                    return LauncherDimensions.ONEUI;
                 } else if (packageName.contains("google.android.apps.nexuslauncher") ||
                            packageName.contains("pixel")) {
-                    return "pixel";
+                    return LauncherDimensions.PIXEL;
                 } else if (packageName.contains("miui") || packageName.contains("xiaomi")) {
-                    return "miui";
+                    return LauncherDimensions.MIUI;
                 } else if (packageName.contains("oneplus")) {
                     return "oneplus";
                 } else if (packageName.contains("huawei") || packageName.contains("emui")) {
@@ -270,7 +192,7 @@ public class WidgetResizeHandler {
     /**
      * Checks if this is a Samsung foldable device.
      */
-    private boolean isSamsungFoldable(Context context) {
+    private static boolean isSamsungFoldable() {
         String model = Build.MODEL.toLowerCase();
         return Build.MANUFACTURER.toLowerCase().contains("samsung") &&
                (model.contains("fold") || model.contains("flip"));
@@ -280,26 +202,29 @@ public class WidgetResizeHandler {
      * Clears all pending resizes for a widget (call on widget delete).
      */
     public void clearPendingResizes(int widgetId) {
-        Runnable pending = pendingResizes.remove(widgetId);
-        if (pending != null) {
-            mainHandler.removeCallbacks(pending);
-        }
+        throttle.clear(widgetId);
         latestOptions.remove(widgetId);
-        lastDimensions.remove(widgetId);
-        lastResizeTime.remove(widgetId);
+        callbacks.remove(widgetId);
     }
     
     /**
      * Gets the last known dimensions for a widget.
      */
     public int[] getLastDimensions(int widgetId) {
-        return lastDimensions.get(widgetId);
+        return throttle.getLastDimensions(widgetId);
     }
     
     /**
      * Checks if there are pending resizes for a widget.
      */
     public boolean hasPendingResize(int widgetId) {
-        return pendingResizes.containsKey(widgetId);
+        return throttle.hasPending(widgetId);
+    }
+    
+    /**
+     * Stats of the widget's last completed resize gesture, or null.
+     */
+    public ResizeThrottle.ResizeStats getLastResizeStats(int widgetId) {
+        return throttle.getLastResizeStats(widgetId);
     }
 }
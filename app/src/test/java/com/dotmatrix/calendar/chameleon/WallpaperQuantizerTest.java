@@ -0,0 +1,169 @@
+package com.dotmatrix.calendar.chameleon;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class WallpaperQuantizerTest {
+
+    private static final int SIZE = WallpaperQuantizer.THUMBNAIL_SIZE;
+    private static final int PIXELS = SIZE * SIZE;
+
+    // Values that survive the 5-bit round trip unchanged
+    private static final int ORANGE = 0xFFE77B10;
+    private static final int WHITE = 0xFFF7F7F7;
+    private static final int BLACK = 0xFF101010;
+    private static final int RED = 0xFFFF0000;
+    private static final int BLUE = 0xFF0000FF;
+
+    @Test
+    public void picksRolesByPopulationAndLightness() {
+        int[] pixels = bands(new int[] { ORANGE, WHITE, BLACK }, new int[] { 60, 25, 15 });
+
+        QuantizedPalette palette = new WallpaperQuantizer(16).quantize(pixels, pixels.length);
+
+        assertArrayEquals(new int[] { ORANGE, WHITE, BLACK }, palette.getSwatchColors());
+        assertEquals(PIXELS, sum(palette.getSwatchPopulations()));
+        assertEquals(ORANGE, palette.getPrimary());
+        assertEquals(WHITE, palette.getSecondary());
+        assertEquals(BLACK, palette.getTertiary());
+    }
+
+    @Test
+    public void twoColorsGiveTwoSwatches() {
+        int[] pixels = bands(new int[] { RED, BLUE }, new int[] { 50, 50 });
+
+        QuantizedPalette palette = new WallpaperQuantizer(16).quantize(pixels, pixels.length);
+
+        int[] swatches = palette.getSwatchColors().clone();
+        Arrays.sort(swatches);
+        assertArrayEquals(new int[] { BLUE, RED }, swatches);
+        // Rec. 709 luminance of the average of pure red and pure blue
+        assertEquals((0.2126f + 0.0722f) / 2, palette.getLuminance(), 1e-3f);
+        assertTrue(palette.isDark());
+    }
+
+    @Test
+    public void grayHasNoVibrantOrLightnessRoles() {
+        int[] pixels = new int[PIXELS];
+        Arrays.fill(pixels, 0xFF808080);
+
+        QuantizedPalette palette = new WallpaperQuantizer(16).quantize(pixels, pixels.length);
+
+        assertEquals(1, palette.getSwatchColors().length);
+        // Falls back to the dominant swatch
+        assertEquals(0xFF848484, palette.getPrimary());
+        assertEquals(WallpaperQuantizer.NO_COLOR, palette.getSecondary());
+        assertEquals(WallpaperQuantizer.NO_COLOR, palette.getTertiary());
+    }
+
+    @Test
+    public void ignoresTranslucentPixels() {
+        int[] pixels = new int[PIXELS];
+        Arrays.fill(pixels, 0x40FF0000);
+
+        assertTrue(new WallpaperQuantizer(16).quantize(pixels, pixels.length).isEmpty());
+
+        // Only the opaque half counts
+        Arrays.fill(pixels, 0, PIXELS / 2, BLUE);
+        QuantizedPalette palette = new WallpaperQuantizer(16).quantize(pixels, pixels.length);
+        assertArrayEquals(new int[] { BLUE }, palette.getSwatchColors());
+        assertArrayEquals(new int[] { PIXELS / 2 }, palette.getSwatchPopulations());
+    }
+
+    @Test
+    public void quantizesOnlyTheGivenCount() {
+        int[] pixels = bands(new int[] { RED, BLUE }, new int[] { 50, 50 });
+
+        QuantizedPalette palette = new WallpaperQuantizer(16).quantize(pixels, PIXELS / 4);
+
+        assertArrayEquals(new int[] { RED }, palette.getSwatchColors());
+    }
+
+    @Test
+    public void noisyWallpaperStaysWithinMaxColors() {
+        int[] pixels = noisyGradient(new Random(27));
+
+        QuantizedPalette palette = new WallpaperQuantizer(8).quantize(pixels, pixels.length);
+
+        assertEquals(8, palette.getSwatchColors().length);
+        assertEquals(PIXELS, sum(palette.getSwatchPopulations()));
+        int[] populations = palette.getSwatchPopulations();
+        for (int i = 0; i < populations.length; i++) {
+            assertEquals(0xFF, palette.getSwatchColors()[i] >>> 24);
+            if (i > 0) {
+                assertTrue(populations[i - 1] >= populations[i]);
+            }
+        }
+        assertFalse(palette.getPrimary() == WallpaperQuantizer.NO_COLOR);
+    }
+
+    @Test
+    public void reusedInstanceIsDeterministic() {
+        WallpaperQuantizer quantizer = new WallpaperQuantizer(16);
+        int[] first = noisyGradient(new Random(270));
+        int[] other = bands(new int[] { ORANGE, WHITE, BLACK }, new int[] { 40, 40, 20 });
+
+        QuantizedPalette expected = quantizer.quantize(first, first.length);
+        // Buffers left over from another image must not leak into the next result
+        quantizer.quantize(other, other.length);
+        QuantizedPalette again = quantizer.quantize(first, first.length);
+
+        assertArrayEquals(expected.getSwatchColors(), again.getSwatchColors());
+        assertArrayEquals(expected.getSwatchPopulations(), again.getSwatchPopulations());
+        assertEquals(expected.getPrimary(), again.getPrimary());
+        assertEquals(expected.getSecondary(), again.getSecondary());
+        assertEquals(expected.getTertiary(), again.getTertiary());
+    }
+
+    // ==================== Helpers ====================
+
+    /**
+     * Horizontal bands of solid colors, sized by percentage of the thumbnail.
+     */
+    private static int[] bands(int[] colors, int[] percentages) {
+        int[] pixels = new int[PIXELS];
+        int offset = 0;
+        for (int i = 0; i < colors.length; i++) {
+            int end = i == colors.length - 1 ? PIXELS : offset + PIXELS * percentages[i] / 100;
+            Arrays.fill(pixels, offset, end, colors[i]);
+            offset = end;
+        }
+        return pixels;
+    }
+
+    /**
+     * Sky-like diagonal gradient with per-pixel noise, like a downsampled photo.
+     */
+    private static int[] noisyGradient(Random random) {
+        int[] pixels = new int[PIXELS];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int t = (x + y) * 255 / (2 * SIZE - 2);
+                int r = clamp(40 + t * 3 / 4 + random.nextInt(25) - 12);
+                int g = clamp(90 + t / 2 + random.nextInt(25) - 12);
+                int b = clamp(200 - t / 3 + random.nextInt(25) - 12);
+                pixels[y * SIZE + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return pixels;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static int sum(int[] values) {
+        int sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,119 @@
+package com.dotmatrix.calendar.data.importer;
+
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A large .ics calendar generated while it is read, so tests stream it the way the
+ * importer streams a real file instead of holding it in memory.
+ *
+ * Events cycle through {@link #KINDS} shapes, starting at {@link #FIRST_DAY} and one day apart.
+ */
+class GeneratedIcs extends Reader {
+
+    static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    static final int KINDS = 10;
+    // Occurrences of the DAILY;COUNT rule
+    static final int DAILY_COUNT = 3;
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final int events;
+    private final StringBuilder chunk = new StringBuilder();
+    private int nextEvent = -1; // -1: header still to come
+    private int position;
+    private boolean footerWritten;
+
+    GeneratedIcs(int events) {
+        this.events = events;
+    }
+
+    /**
+     * Start day of event {@code index}.
+     */
+    static LocalDate day(int index) {
+        return FIRST_DAY.plusDays(index);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (position == chunk.length() && !fill()) {
+            return -1;
+        }
+        int count = Math.min(length, chunk.length() - position);
+        chunk.getChars(position, position + count, buffer, offset);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private boolean fill() {
+        chunk.setLength(0);
+        position = 0;
+        if (nextEvent < 0) {
+            line("BEGIN:VCALENDAR");
+            line("VERSION:2.0");
+            line("PRODID:-//DotMatrix//Test//EN");
+            nextEvent = 0;
+        } else if (nextEvent < events) {
+            writeEvent(nextEvent++);
+        } else if (!footerWritten) {
+            line("END:VCALENDAR");
+            footerWritten = true;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void writeEvent(int index) {
+        LocalDate start = day(index);
+        String date = start.format(DATE);
+        line("BEGIN:VEVENT");
+        line("UID:event-" + index + "@dotmatrix.test");
+        switch (index % KINDS) {
+            case 6:
+                // Three-day all-day event, exclusive end
+                line("SUMMARY:Trip " + index);
+                line("DTSTART;VALUE=DATE:" + date);
+                line("DTEND;VALUE=DATE:" + start.plusDays(3).format(DATE));
+                break;
+            case 7:
+                line("SUMMARY:Gym");
+                line("DTSTART;VALUE=DATE:" + date);
+                line("RRULE:FREQ=WEEKLY;BYDAY=MO,WE");
+                break;
+            case 8:
+                // Timed in UTC, a folded summary and an alarm with its own properties
+                line("SUMMARY:Standup with a summary long enough that the exporter fol");
+                line(" ded it over ");
+                line("\ttwo continuation lines");
+                line("DTSTART:" + date + "T090000Z");
+                line("DTEND:" + date + "T093000Z");
+                line("BEGIN:VALARM");
+                line("TRIGGER:-PT15M");
+                line("DESCRIPTION:Reminder");
+                line("END:VALARM");
+                break;
+            case 9:
+                line("SUMMARY:Course " + index);
+                line("DTSTART;VALUE=DATE:" + date);
+                line("RRULE:FREQ=DAILY;COUNT=" + DAILY_COUNT);
+                break;
+            default:
+                line("SUMMARY:Birthday " + index);
+                line("DTSTART;VALUE=DATE:" + date);
+                line("DTEND;VALUE=DATE:" + start.plusDays(1).format(DATE));
+                break;
+        }
+        line("END:VEVENT");
+    }
+
+    private void line(String text) {
+        chunk.append(text).append("\r\n");
+    }
+}
@@ -0,0 +1,189 @@
+package com.dotmatrix.calendar.data.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IcsEventReaderTest {
+
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final int EVENT_COUNT = 10_000;
+
+    @Test
+    public void streamsTenThousandEvents() throws IOException {
+        IcsEventReader reader = new IcsEventReader(new GeneratedIcs(EVENT_COUNT), UTC);
+        IcsEventReader.Event event = new IcsEventReader.Event();
+
+        int count = 0;
+        while (reader.next(event)) {
+            LocalDate day = GeneratedIcs.day(count);
+            assertEquals("Event " + count, day, event.start);
+            switch (count % GeneratedIcs.KINDS) {
+                case 6:
+                    assertEquals(day.plusDays(2), event.end);
+                    break;
+                case 7:
+                    assertEquals("FREQ=WEEKLY;BYDAY=MO,WE", event.rrule);
+                    break;
+                case 8:
+                    // The alarm's DESCRIPTION doesn't leak into the event
+                    assertEquals("Standup with a summary long enough that the exporter folded it over "
+                            + "two continuation lines", event.summary);
+                    assertEquals(day, event.end);
+                    break;
+                default:
+                    break;
+            }
+            count++;
+        }
+
+        assertEquals(EVENT_COUNT, count);
+        assertFalse(reader.next(event));
+    }
+
+    @Test
+    public void unfoldsLines() throws IOException {
+        List<IcsEventReader.Event> events = readAll(calendar(
+                "BEGIN:VEVENT",
+                "SUMMARY:Team",
+                "  offsite",
+                "DTSTART;VALUE=DATE:2025",
+                "\t0314",
+                "END:VEVENT"));
+
+        assertEquals(1, events.size());
+        assertEquals("Team offsite", events.get(0).summary);
+        assertEquals(LocalDate.of(2025, 3, 14), events.get(0).start);
+    }
+
+    @Test
+    public void skipsMalformedEvents() throws IOException {
+        List<IcsEventReader.Event> events = readAll(calendar(
+                // No DTSTART
+                "BEGIN:VEVENT",
+                "SUMMARY:Missing start",
+                "END:VEVENT",
+                // Unparseable dates
+                "BEGIN:VEVENT",
+                "DTSTART:2025-03-14",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "DTSTART:20251340T100000",
+                "END:VEVENT",
+                // Lines without a value separator are ignored
+                "BEGIN:VEVENT",
+                "this line has no colon",
+                "DTSTART;VALUE=DATE:20250314",
+                "SUMMARY:Valid",
+                "END:VEVENT",
+                // Properties outside an event are ignored
+                "DTSTART;VALUE=DATE:20990101",
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250315",
+                "END:VEVENT"));
+
+        assertEquals(2, events.size());
+        assertEquals("Valid", events.get(0).summary);
+        assertEquals(LocalDate.of(2025, 3, 14), events.get(0).start);
+        assertEquals(LocalDate.of(2025, 3, 15), events.get(1).start);
+        assertNull(events.get(1).summary);
+    }
+
+    @Test
+    public void dropsUnterminatedEventAtEndOfStream() throws IOException {
+        List<IcsEventReader.Event> events = readAll(
+                "BEGIN:VCALENDAR\r\nBEGIN:VEVENT\r\nDTSTART;VALUE=DATE:20250314\r\nSUMMARY:Cut off");
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void truncatesOverlongLines() throws IOException {
+        StringBuilder attachment = new StringBuilder("ATTACH;ENCODING=BASE64;VALUE=BINARY:");
+        for (int i = 0; i < 100_000; i++) {
+            attachment.append('A');
+        }
+        StringBuilder folded = new StringBuilder("X-DATA:");
+        for (int i = 0; i < 2_000; i++) {
+            folded.append("\r\n ").append("BBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBB");
+        }
+
+        List<IcsEventReader.Event> events = readAll(calendar(
+                "BEGIN:VEVENT",
+                attachment.toString(),
+                folded.toString(),
+                "DTSTART;VALUE=DATE:20250314",
+                "END:VEVENT"));
+
+        assertEquals(1, events.size());
+        assertEquals(LocalDate.of(2025, 3, 14), events.get(0).start);
+    }
+
+    @Test
+    public void resolvesEndsAndZones() throws IOException {
+        List<IcsEventReader.Event> events = readAll(calendar(
+                // All-day end is exclusive
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250314",
+                "DTEND;VALUE=DATE:20250317",
+                "END:VEVENT",
+                // Timed end at midnight ends the day before
+                "BEGIN:VEVENT",
+                "DTSTART:20250314T220000",
+                "DTEND:20250315T000000",
+                "END:VEVENT",
+                // 23:00 in New York (EDT) is the next day in UTC; the quoted colon isn't the separator
+                "BEGIN:VEVENT",
+                "DTSTART;X-NOTE=\"a:b\";TZID=America/New_York:20250314T230000",
+                "END:VEVENT",
+                // End before start is clamped
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250314",
+                "DTEND;VALUE=DATE:20250310",
+                "SUMMARY:Lunch\\, then\\nnap",
+                "END:VEVENT"));
+
+        assertEquals(4, events.size());
+        assertEquals(LocalDate.of(2025, 3, 16), events.get(0).end);
+        assertEquals(LocalDate.of(2025, 3, 14), events.get(1).end);
+        assertEquals(LocalDate.of(2025, 3, 15), events.get(2).start);
+        assertEquals(LocalDate.of(2025, 3, 14), events.get(3).end);
+        assertEquals("Lunch, then\nnap", events.get(3).summary);
+    }
+
+    // ==================== Helpers ====================
+
+    private static String calendar(String... lines) {
+        StringBuilder sb = new StringBuilder("BEGIN:VCALENDAR\r\n");
+        for (String line : lines) {
+            sb.append(line).append("\r\n");
+        }
+        return sb.append("END:VCALENDAR\r\n").toString();
+    }
+
+    private static List<IcsEventReader.Event> readAll(String ics) throws IOException {
+        IcsEventReader reader = new IcsEventReader(new StringReader(ics), UTC);
+        List<IcsEventReader.Event> events = new ArrayList<>();
+        IcsEventReader.Event event = new IcsEventReader.Event();
+        while (reader.next(event)) {
+            IcsEventReader.Event copy = new IcsEventReader.Event();
+            copy.summary = event.summary;
+            copy.start = event.start;
+            copy.end = event.end;
+            copy.rrule = event.rrule;
+            events.add(copy);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,161 @@
+package com.dotmatrix.calendar.data.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.dotmatrix.calendar.data.model.EmojiRule;
+import com.dotmatrix.calendar.data.model.RuleType;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public class IcsRuleImporterTest {
+
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final int WIDGET_ID = 3301;
+    private static final String EMOJI = "📅";
+    private static final int EVENT_COUNT = 10_000;
+
+    /**
+     * The import loop without the database: stream events, map them, count by type.
+     */
+    @Test
+    public void streamsTenThousandEventsIntoRules() throws IOException {
+        IcsEventReader reader = new IcsEventReader(new GeneratedIcs(EVENT_COUNT), UTC);
+        IcsEventReader.Event event = new IcsEventReader.Event();
+        List<EmojiRule> batch = new ArrayList<>();
+        Map<RuleType, Integer> byType = new EnumMap<>(RuleType.class);
+        int events = 0;
+        int rules = 0;
+
+        while (reader.next(event)) {
+            events++;
+            IcsRuleImporter.toRules(event, UTC, WIDGET_ID, EMOJI, batch);
+            for (EmojiRule rule : batch) {
+                byType.merge(rule.getRuleType(), 1, Integer::sum);
+            }
+            rules += batch.size();
+            // Flushed like the importer's batches
+            batch.clear();
+        }
+        int perKind = EVENT_COUNT / GeneratedIcs.KINDS;
+        assertEquals(EVENT_COUNT, events);
+        // Six single-day kinds plus the timed one, and DAILY;COUNT expanded
+        assertEquals(Integer.valueOf(perKind * (7 + GeneratedIcs.DAILY_COUNT)), byType.get(RuleType.SPECIFIC_DATE));
+        assertEquals(Integer.valueOf(perKind), byType.get(RuleType.DATE_RANGE));
+        assertEquals(Integer.valueOf(perKind), byType.get(RuleType.RECURRING_DAY));
+        assertNull(byType.get(RuleType.RECURRING_DATE));
+        assertEquals(perKind * (9 + GeneratedIcs.DAILY_COUNT), rules);
+    }
+
+    @Test
+    public void mapsEventShapes() throws IOException {
+        List<EmojiRule> rules = rulesOf(
+                "BEGIN:VEVENT",
+                "SUMMARY:Trip",
+                "DTSTART;VALUE=DATE:20250314",
+                "DTEND;VALUE=DATE:20250317",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250301",
+                "RRULE:FREQ=WEEKLY;BYDAY=MO,WE,FR",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250315",
+                "RRULE:FREQ=MONTHLY",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250704",
+                "RRULE:FREQ=YEARLY",
+                "END:VEVENT");
+
+        assertEquals(4, rules.size());
+        assertEquals(RuleType.DATE_RANGE, rules.get(0).getRuleType());
+        assertEquals(Integer.valueOf((int) LocalDate.of(2025, 3, 14).toEpochDay()), rules.get(0).getStartDay());
+        assertEquals(Integer.valueOf((int) LocalDate.of(2025, 3, 16).toEpochDay()), rules.get(0).getEndDay());
+        assertEquals("Trip", rules.get(0).getLabel());
+
+        assertEquals(RuleType.RECURRING_DAY, rules.get(1).getRuleType());
+        assertEquals(1 << 1 | 1 << 3 | 1 << 5, rules.get(1).getDaysOfWeek());
+        // Applies from DTSTART on
+        assertEquals(LocalDate.of(2025, 3, 1), startOf(rules.get(1)));
+
+        assertEquals(RuleType.RECURRING_DATE, rules.get(2).getRuleType());
+        assertEquals(Integer.valueOf(15), rules.get(2).getDayOfMonth());
+        assertNull(rules.get(2).getMonthOfYear());
+        assertEquals(LocalDate.of(2025, 3, 15), startOf(rules.get(2)));
+
+        assertEquals(Integer.valueOf(4), rules.get(3).getDayOfMonth());
+        assertEquals(Integer.valueOf(7), rules.get(3).getMonthOfYear());
+    }
+
+    @Test
+    public void expandsBoundedRecurrences() throws IOException {
+        List<EmojiRule> rules = rulesOf(
+                // Monthly on the 31st skips the shorter months
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250131",
+                "RRULE:FREQ=MONTHLY;COUNT=3",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250310",
+                "RRULE:FREQ=DAILY;UNTIL=20250312T235959Z",
+                "END:VEVENT");
+
+        assertEquals(6, rules.size());
+        assertEquals(LocalDate.of(2025, 1, 31), startOf(rules.get(0)));
+        assertEquals(LocalDate.of(2025, 3, 31), startOf(rules.get(1)));
+        assertEquals(LocalDate.of(2025, 5, 31), startOf(rules.get(2)));
+        assertEquals(LocalDate.of(2025, 3, 10), startOf(rules.get(3)));
+        assertEquals(LocalDate.of(2025, 3, 12), startOf(rules.get(5)));
+    }
+
+    @Test
+    public void unsupportedRecurrenceImportsFirstOccurrence() throws IOException {
+        List<EmojiRule> rules = rulesOf(
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250309",
+                "RRULE:FREQ=MONTHLY;BYDAY=2SU",
+                "END:VEVENT",
+                "BEGIN:VEVENT",
+                "DTSTART;VALUE=DATE:20250101",
+                "RRULE:FREQ=YEARLY;BYMONTHDAY=1,15",
+                "END:VEVENT");
+
+        assertEquals(2, rules.size());
+        assertEquals(RuleType.SPECIFIC_DATE, rules.get(0).getRuleType());
+        assertEquals(LocalDate.of(2025, 3, 9), startOf(rules.get(0)));
+        assertEquals(RuleType.SPECIFIC_DATE, rules.get(1).getRuleType());
+    }
+
+    // ==================== Helpers ====================
+
+    private static List<EmojiRule> rulesOf(String... lines) throws IOException {
+        StringBuilder ics = new StringBuilder("BEGIN:VCALENDAR\r\n");
+        for (String line : lines) {
+            ics.append(line).append("\r\n");
+        }
+        ics.append("END:VCALENDAR\r\n");
+
+        IcsEventReader reader = new IcsEventReader(new StringReader(ics.toString()), UTC);
+        IcsEventReader.Event event = new IcsEventReader.Event();
+        List<EmojiRule> rules = new ArrayList<>();
+        while (reader.next(event)) {
+            IcsRuleImporter.toRules(event, UTC, WIDGET_ID, EMOJI, rules);
+        }
+        return rules;
+    }
+
+    private static LocalDate startOf(EmojiRule rule) {
+        return LocalDate.ofEpochDay(rule.getStartDay());
+    }
+}
@@ -0,0 +1,233 @@
+package com.dotmatrix.calendar.data.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EmojiRuleEngineTest {
+
+    private static final String[] EMOJIS = { "🎂", "🏖", "💼", "🎄", "🏃", "🎉", "🩺", "✈" };
+    private static final int YEAR = 2025;
+    private static final int RULE_COUNT = 10_000;
+
+    // Engines are cached statically, so every test uses its own widget and rule ids
+    private static int nextWidgetId = 10_000;
+    private static long nextRuleId = 1;
+
+    @Test
+    public void resolvesHigherPriorityThenOlderRule() {
+        int widgetId = nextWidgetId++;
+        int firstOfMay = (int) LocalDate.of(YEAR, 5, 1).toEpochDay();
+        List<EmojiRule> rules = new ArrayList<>();
+        rules.add(rule(EmojiRule.createDateRange(widgetId, "A", firstOfMay, firstOfMay + 9, null), nextRuleId++, 0));
+        rules.add(rule(EmojiRule.createSpecificDate(widgetId, "B", firstOfMay + 3, null), nextRuleId++, 5));
+        rules.add(rule(EmojiRule.createDateRange(widgetId, "C", firstOfMay + 5, firstOfMay + 20, null), nextRuleId++, 0));
+
+        EmojiDayIndex index = EmojiRuleEngine.forWidget(widgetId, rules).indexFor(YEAR);
+        int dayOfYear = LocalDate.of(YEAR, 5, 1).getDayOfYear();
+
+        assertEquals("A", index.emojiAt(dayOfYear));
+        assertEquals("B", index.emojiAt(dayOfYear + 3));
+        // Same priority: the older rule keeps the overlap
+        assertEquals("A", index.emojiAt(dayOfYear + 5));
+        assertEquals("C", index.emojiAt(dayOfYear + 15));
+        assertNull(index.emojiAt(dayOfYear + 30));
+    }
+
+    @Test
+    public void recurringRulesApplyFromTheirStartDay() {
+        int widgetId = nextWidgetId++;
+        LocalDate start = LocalDate.of(YEAR, 3, 3); // A Monday
+        List<EmojiRule> rules = new ArrayList<>();
+        EmojiRule mondays = EmojiRule.createRecurringDay(widgetId, "A", 1 << 1, null);
+        mondays.setStartDay((int) start.toEpochDay());
+        rules.add(rule(mondays, nextRuleId++, 5));
+        // Lower priority, always on
+        rules.add(rule(EmojiRule.createRecurringDay(widgetId, "B", 1 << 1, null), nextRuleId++, 0));
+
+        EmojiDayIndex index = EmojiRuleEngine.forWidget(widgetId, rules).indexFor(YEAR);
+
+        assertEquals("B", index.emojiAt(start.minusWeeks(1).getDayOfYear()));
+        assertEquals("A", index.emojiAt(start.getDayOfYear()));
+        assertMatchesLinearScan(rules, index);
+    }
+
+    @Test
+    public void tenThousandRulesMatchLinearScan() {
+        int widgetId = nextWidgetId++;
+        List<EmojiRule> rules = randomRules(widgetId, RULE_COUNT, new Random(34));
+
+        EmojiDayIndex index = EmojiRuleEngine.forWidget(widgetId, rules).indexFor(YEAR);
+
+        assertMatchesLinearScan(rules, index);
+    }
+
+    @Test
+    public void incrementalChangesMatchRebuild() {
+        int widgetId = nextWidgetId++;
+        Random random = new Random(340);
+        List<EmojiRule> rules = randomRules(widgetId, RULE_COUNT, random);
+        EmojiRuleEngine engine = EmojiRuleEngine.forWidget(widgetId, rules);
+        engine.indexFor(YEAR);
+
+        for (int i = 0; i < 200; i++) {
+            int change = random.nextInt(3);
+            if (change == 0) {
+                EmojiRule added = randomRule(widgetId, random);
+                rules.add(added);
+                EmojiRuleEngine.ruleAdded(added);
+            } else if (change == 1) {
+                EmojiRule updated = rules.get(random.nextInt(rules.size()));
+                updated.setPriority(random.nextInt(10));
+                updated.setEmoji(EMOJIS[random.nextInt(EMOJIS.length)]);
+                EmojiRuleEngine.ruleUpdated(updated);
+            } else {
+                EmojiRule removed = rules.remove(random.nextInt(rules.size()));
+                EmojiRuleEngine.ruleRemoved(removed.getId());
+            }
+        }
+
+        // Patched in place, not rebuilt
+        assertSame(engine, EmojiRuleEngine.forWidget(widgetId, rules));
+        assertMatchesLinearScan(rules, engine.indexFor(YEAR));
+    }
+
+    @Test
+    public void patchesWhileRendering() throws Exception {
+        int widgetId = nextWidgetId++;
+        Random random = new Random(3400);
+        List<EmojiRule> rules = randomRules(widgetId, 2_000, random);
+        EmojiRuleEngine engine = EmojiRuleEngine.forWidget(widgetId, rules);
+        List<EmojiRule> added = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            added.add(randomRule(widgetId, random));
+        }
+
+        // Renders resolve other years while the repository patches rules
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                while (done.getCount() > 0) {
+                    for (int year = YEAR - 2; year <= YEAR + 2; year++) {
+                        engine.indexFor(year);
+                    }
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        for (EmojiRule rule : added) {
+            EmojiRuleEngine.ruleAdded(rule);
+        }
+        done.countDown();
+        reader.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertNull(failure.get());
+        rules.addAll(added);
+        assertSame(engine, EmojiRuleEngine.forWidget(widgetId, rules));
+        assertMatchesLinearScan(rules, engine.indexFor(YEAR));
+    }
+
+    // ==================== Helpers ====================
+
+    private static void assertMatchesLinearScan(List<EmojiRule> rules, EmojiDayIndex index) {
+        LocalDate date = LocalDate.ofYearDay(YEAR, 1);
+        for (int day = 1; day <= date.lengthOfYear(); day++, date = date.plusDays(1)) {
+            assertEquals("Day " + date, linearScan(rules, date), index.emojiAt(day));
+        }
+    }
+
+    /**
+     * Reference resolution: every rule checked against the day.
+     */
+    private static String linearScan(List<EmojiRule> rules, LocalDate date) {
+        EmojiRule best = null;
+        for (EmojiRule rule : rules) {
+            if (!rule.isEnabled() || !matches(rule, date)) {
+                continue;
+            }
+            if (best == null || rule.getPriority() > best.getPriority()
+                    || (rule.getPriority() == best.getPriority() && rule.getId() < best.getId())) {
+                best = rule;
+            }
+        }
+        return best != null ? best.getEmoji() : null;
+    }
+
+    private static boolean matches(EmojiRule rule, LocalDate date) {
+        int epochDay = (int) date.toEpochDay();
+        switch (rule.getRuleType()) {
+            case SPECIFIC_DATE:
+                return rule.getStartDay() == epochDay;
+            case DATE_RANGE:
+                return epochDay >= rule.getStartDay() && epochDay <= rule.getEndDay();
+            case RECURRING_DAY:
+                return started(rule, epochDay)
+                        && (rule.getDaysOfWeek() & (1 << (date.getDayOfWeek().getValue() % 7))) != 0;
+            case RECURRING_DATE:
+                return started(rule, epochDay) && rule.getDayOfMonth() == date.getDayOfMonth()
+                        && (rule.getMonthOfYear() == null || rule.getMonthOfYear() == date.getMonthValue());
+            default:
+                return false;
+        }
+    }
+
+    private static boolean started(EmojiRule rule, int epochDay) {
+        return rule.getStartDay() == null || rule.getStartDay() <= epochDay;
+    }
+
+    /**
+     * Mostly imported-style dated rules, a few recurring ones and some multi-year ranges.
+     */
+    private static List<EmojiRule> randomRules(int widgetId, int count, Random random) {
+        List<EmojiRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(randomRule(widgetId, random));
+        }
+        return rules;
+    }
+
+    private static EmojiRule randomRule(int widgetId, Random random) {
+        String emoji = EMOJIS[random.nextInt(EMOJIS.length)];
+        int yearStart = (int) LocalDate.of(YEAR - 1, 1, 1).toEpochDay();
+        int start = yearStart + random.nextInt(3 * 365);
+        int kind = random.nextInt(100);
+        EmojiRule rule;
+        if (kind < 55) {
+            rule = EmojiRule.createSpecificDate(widgetId, emoji, start, null);
+        } else if (kind < 93) {
+            rule = EmojiRule.createDateRange(widgetId, emoji, start, start + random.nextInt(21), null);
+        } else if (kind < 95) {
+            // Spans more years than are bucketed
+            rule = EmojiRule.createDateRange(widgetId, emoji, start - 3 * 365, start + 3 * 365, null);
+        } else if (kind < 98) {
+            rule = EmojiRule.createRecurringDay(widgetId, emoji, 1 + random.nextInt(0x7F), null);
+        } else {
+            Integer month = random.nextBoolean() ? null : 1 + random.nextInt(12);
+            rule = EmojiRule.createRecurringDate(widgetId, emoji, 1 + random.nextInt(31), month, null);
+        }
+        if (kind >= 95 && random.nextBoolean()) {
+            // Imported recurrences start at DTSTART
+            rule.setStartDay(start);
+        }
+        return rule(rule, nextRuleId++, random.nextInt(10));
+    }
+
+    private static EmojiRule rule(EmojiRule rule, long id, int priority) {
+        rule.setId(id);
+        rule.setPriority(priority);
+        return rule;
+    }
+}
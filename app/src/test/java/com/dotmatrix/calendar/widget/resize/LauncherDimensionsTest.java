@@ -0,0 +1,66 @@
+package com.dotmatrix.calendar.widget.resize;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class LauncherDimensionsTest {
+
+    @Test
+    public void novaUsesMaxDimensions() {
+        assertArrayEquals(new int[] { 320, 160 }, resolve(LauncherDimensions.NOVA, 250, 110, 320, 160));
+        // Falls back to min when max isn't reported
+        assertArrayEquals(new int[] { 250, 110 }, resolve(LauncherDimensions.NOVA, 250, 110, 0, 0));
+    }
+
+    @Test
+    public void oneUiReplacesMissingMinDimensions() {
+        assertArrayEquals(new int[] { 250, 110 }, resolve(LauncherDimensions.ONEUI, 250, 110, 320, 160));
+        assertArrayEquals(new int[] { 200, 200 }, resolve(LauncherDimensions.ONEUI, 0, 0, 320, 160));
+    }
+
+    @Test
+    public void oneUiFoldablesUseTheLargerDimensions() {
+        assertArrayEquals(new int[] { 320, 160 },
+                LauncherDimensions.resolve(LauncherDimensions.ONEUI, true, 250, 110, 320, 160));
+        // Unlike the unfolded case, missing dimensions aren't replaced
+        assertArrayEquals(new int[] { 400, 0 },
+                LauncherDimensions.resolve(LauncherDimensions.ONEUI, true, 400, 0, 0, 0));
+        // Only OneUI looks at the foldable flag
+        assertArrayEquals(new int[] { 250, 110 },
+                LauncherDimensions.resolve(LauncherDimensions.PIXEL, true, 250, 110, 320, 160));
+    }
+
+    @Test
+    public void pixelUsesMinDimensions() {
+        assertArrayEquals(new int[] { 250, 110 }, resolve(LauncherDimensions.PIXEL, 250, 110, 320, 160));
+        assertArrayEquals(new int[] { 0, 0 }, resolve(LauncherDimensions.PIXEL, 0, 0, 320, 160));
+    }
+
+    @Test
+    public void miuiRaisesSmallDimensions() {
+        assertArrayEquals(new int[] { 250, 110 }, resolve(LauncherDimensions.MIUI, 250, 110, 320, 160));
+        assertArrayEquals(new int[] { 100, 80 }, resolve(LauncherDimensions.MIUI, 40, 30, 320, 160));
+    }
+
+    @Test
+    public void otherLaunchersUseMinDimensions() {
+        assertArrayEquals(new int[] { 250, 110 }, resolve("lawnchair", 250, 110, 320, 160));
+        assertArrayEquals(new int[] { 200, 200 }, resolve("lawnchair", 0, 0, 320, 160));
+    }
+
+    @Test
+    public void cellSizes() {
+        assertArrayEquals(new int[] { 76, 96 }, LauncherDimensions.cellSize(LauncherDimensions.NOVA));
+        assertArrayEquals(new int[] { 88, 112 }, LauncherDimensions.cellSize(LauncherDimensions.ONEUI));
+        assertArrayEquals(new int[] { 78, 110 }, LauncherDimensions.cellSize(LauncherDimensions.PIXEL));
+        assertArrayEquals(new int[] { 84, 100 }, LauncherDimensions.cellSize(LauncherDimensions.MIUI));
+        assertArrayEquals(new int[] { 80, 100 }, LauncherDimensions.cellSize("lawnchair"));
+    }
+
+    // ==================== Helpers ====================
+
+    private static int[] resolve(String launcher, int minWidth, int minHeight, int maxWidth, int maxHeight) {
+        return LauncherDimensions.resolve(launcher, false, minWidth, minHeight, maxWidth, maxHeight);
+    }
+}
@@ -0,0 +1,112 @@
+package com.dotmatrix.calendar.widget.resize;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ResizeReplayTest {
+
+    private static final int WIDGET_ID = 4801;
+    private static final ResizeThrottle.Policy POLICY = ResizeThrottle.Policy.DEFAULT;
+
+    @Test
+    public void oneOffResizeRendersOnceAfterSettling() {
+        ResizeTrace trace = trace(new ResizeTrace.Event(WIDGET_ID, 0, 250, 110, 320, 160));
+
+        ResizeReplay.Report report = replay(trace, ResizeReplay.DEFAULT_RENDER_COST_MS);
+
+        assertEquals(1, report.events);
+        assertEquals(0, report.draftRenders);
+        assertEquals(1, report.fullRenders);
+        assertEquals(0, report.rendersWasted);
+        assertEquals(POLICY.settleMs, report.worstStalenessMs);
+    }
+
+    /**
+     * One second of drag at 50 Hz, 2 dp per event. The first draft comes after the default
+     * throttle; later ones wait for the next 8 dp change plus the minimum throttle.
+     */
+    @Test
+    public void dragRendersDraftsThenSettles() {
+        ResizeReplay.Report report = replay(drag(), ResizeReplay.DEFAULT_RENDER_COST_MS);
+
+        assertEquals(51, report.events);
+        // At 100 ms, then every 120 ms from 210 to 1050
+        assertEquals(9, report.draftRenders);
+        assertEquals(1, report.fullRenders);
+        // The settle render repeats the last draft's size
+        assertEquals(1, report.rendersWasted);
+        // An event just after a draft waits for the next one
+        assertEquals(110, report.worstStalenessMs);
+    }
+
+    @Test
+    public void slowRendersCountAsWasted() {
+        // Every draft is superseded before a 150 ms render could show
+        ResizeReplay.Report report = replay(drag(), 150);
+
+        assertEquals(10, report.getRendersIssued());
+        assertEquals(9, report.rendersWasted);
+    }
+
+    @Test
+    public void widgetsAreThrottledIndependently() {
+        List<ResizeTrace.Event> events = new ArrayList<>();
+        for (ResizeTrace.Event event : drag().getEvents()) {
+            events.add(event);
+            // A second widget, resized in the same gesture timeline, but only once
+            if (event.timeMs == 500) {
+                events.add(new ResizeTrace.Event(WIDGET_ID + 1, 500, 180, 180, 240, 240));
+            }
+        }
+
+        ResizeReplay.Report report = replay(trace(events.toArray(new ResizeTrace.Event[0])),
+                ResizeReplay.DEFAULT_RENDER_COST_MS);
+
+        assertEquals(52, report.events);
+        assertEquals(9, report.draftRenders);
+        assertEquals(2, report.fullRenders);
+        assertEquals(POLICY.settleMs, report.worstStalenessMs);
+    }
+
+    @Test
+    public void replaysEveryProfile() {
+        List<ResizeReplay.Report> reports = ResizeReplay.replayProfiles(drag(), POLICY);
+
+        assertEquals(ResizeReplay.PROFILES.length, reports.size());
+        for (int i = 0; i < reports.size(); i++) {
+            ResizeReplay.Report report = reports.get(i);
+            assertEquals(ResizeReplay.PROFILES[i], report.profile);
+            assertEquals(51, report.events);
+            assertEquals(1, report.fullRenders);
+        }
+        // Nova renders the constant max size, so every render after the first repeats it
+        ResizeReplay.Report nova = reports.get(0);
+        assertEquals(nova.getRendersIssued() - 1, nova.rendersWasted);
+    }
+
+    // ==================== Helpers ====================
+
+    private static ResizeReplay.Report replay(ResizeTrace trace, long renderCostMs) {
+        return ResizeReplay.replay(trace, LauncherDimensions.PIXEL, POLICY, renderCostMs);
+    }
+
+    /**
+     * Width from 200 to 300 dp, an event every 20 ms, at density 1.
+     */
+    private static ResizeTrace drag() {
+        ResizeTrace.Event[] events = new ResizeTrace.Event[51];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new ResizeTrace.Event(WIDGET_ID, i * 20L, 200 + 2 * i, 150, 320, 200);
+        }
+        return trace(events);
+    }
+
+    private static ResizeTrace trace(ResizeTrace.Event... events) {
+        return new ResizeTrace(LauncherDimensions.PIXEL, 1f, Arrays.asList(events));
+    }
+}
@@ -0,0 +1,130 @@
+package com.dotmatrix.calendar.widget.resize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class ResizeTraceTest {
+
+    private static final int WIDGET_ID = 4802;
+
+    @Test
+    public void readsHeaderAndEvents() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ResizeTrace.writeHeader(out, LauncherDimensions.ONEUI, 2.625f);
+        // The first event's delta is from whenever recording started
+        ResizeTrace.writeEvent(out, WIDGET_ID, 12_345, 250, 110, 320, 160);
+        ResizeTrace.writeEvent(out, WIDGET_ID, 16, 258, 110, 330, 160);
+        ResizeTrace.writeEvent(out, WIDGET_ID + 1, 40, 180, 180, 240, 240);
+
+        ResizeTrace trace = ResizeTrace.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(LauncherDimensions.ONEUI, trace.getLauncher());
+        assertEquals(2.625f, trace.getDensity(), 0f);
+        List<ResizeTrace.Event> events = trace.getEvents();
+        assertEquals(3, events.size());
+        assertEquals(0, events.get(0).timeMs);
+        assertEquals(16, events.get(1).timeMs);
+        assertEquals(56, events.get(2).timeMs);
+        ResizeTrace.Event last = events.get(2);
+        assertEquals(WIDGET_ID + 1, last.widgetId);
+        assertEquals(180, last.minWidth);
+        assertEquals(180, last.minHeight);
+        assertEquals(240, last.maxWidth);
+        assertEquals(240, last.maxHeight);
+    }
+
+    @Test
+    public void processRestartsAreReplayedAfterAGap() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ResizeTrace.writeHeader(out, LauncherDimensions.PIXEL, 3f);
+        ResizeTrace.writeEvent(out, WIDGET_ID, -1, 250, 110, 320, 160);
+        ResizeTrace.writeEvent(out, WIDGET_ID, 20, 250, 110, 320, 160);
+        ResizeTrace.writeEvent(out, WIDGET_ID, -1, 250, 110, 320, 160);
+
+        List<ResizeTrace.Event> events = ResizeTrace.read(new ByteArrayInputStream(bytes.toByteArray())).getEvents();
+
+        assertEquals(0, events.get(0).timeMs);
+        assertEquals(20, events.get(1).timeMs);
+        assertEquals(20 + ResizeTrace.SESSION_GAP_MS, events.get(2).timeMs);
+    }
+
+    @Test
+    public void dropsTruncatedLastEvent() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ResizeTrace.writeHeader(out, LauncherDimensions.PIXEL, 3f);
+        ResizeTrace.writeEvent(out, WIDGET_ID, 0, 250, 110, 320, 160);
+        ResizeTrace.writeEvent(out, WIDGET_ID, 20, 258, 110, 330, 160);
+        byte[] written = bytes.toByteArray();
+
+        // Killed 6 bytes into the second event
+        byte[] truncated = Arrays.copyOf(written, written.length - 10);
+        List<ResizeTrace.Event> events = ResizeTrace.read(new ByteArrayInputStream(truncated)).getEvents();
+
+        assertEquals(1, events.size());
+        assertEquals(250, events.get(0).minWidth);
+    }
+
+    @Test
+    public void headerOnlyTraceIsEmpty() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ResizeTrace.writeHeader(new DataOutputStream(bytes), LauncherDimensions.MIUI, 2f);
+
+        assertTrue(ResizeTrace.read(new ByteArrayInputStream(bytes.toByteArray())).getEvents().isEmpty());
+    }
+
+    @Test
+    public void clampsDimensionsToUnsignedShorts() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ResizeTrace.writeHeader(out, LauncherDimensions.NOVA, 2f);
+        ResizeTrace.writeEvent(out, WIDGET_ID, 0, -5, 0, 70_000, 0xFFFF);
+
+        ResizeTrace.Event event = ResizeTrace.read(new ByteArrayInputStream(bytes.toByteArray())).getEvents().get(0);
+
+        assertEquals(0, event.minWidth);
+        assertEquals(0, event.minHeight);
+        assertEquals(0xFFFF, event.maxWidth);
+        assertEquals(0xFFFF, event.maxHeight);
+    }
+
+    @Test
+    public void rejectsOtherFormats() {
+        assertRejected(new byte[] { 'P', 'K', 3, 4, 0, 0, 0, 0 });
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(ResizeTrace.MAGIC);
+            out.writeByte(ResizeTrace.VERSION + 1);
+            out.writeUTF(LauncherDimensions.PIXEL);
+            out.writeFloat(3f);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        assertRejected(bytes.toByteArray());
+    }
+
+    // ==================== Helpers ====================
+
+    private static void assertRejected(byte[] data) {
+        try {
+            ResizeTrace.read(new ByteArrayInputStream(data));
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // Not a trace this version can read
+        }
+    }
+}